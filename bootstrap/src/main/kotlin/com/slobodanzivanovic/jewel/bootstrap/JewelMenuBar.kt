@@ -1,5 +1,6 @@
 package com.slobodanzivanovic.jewel.bootstrap
 
+import com.slobodanzivanovic.jewel.coreui.components.logviewer.JWLLogViewer
 import com.slobodanzivanovic.jewel.laf.UIPreferences
 import java.awt.event.InputEvent
 import java.awt.event.KeyEvent
@@ -29,7 +30,14 @@ class JewelMenuBar : JMenuBar() {
 			}
 		}
 
+		val logViewerItem = JMenuItem("Log Viewer...").apply {
+			addActionListener {
+				JWLLogViewer.showDialog(this@JewelMenuBar)
+			}
+		}
+
 		viewMenu.add(toggleThemeItem)
+		viewMenu.add(logViewerItem)
 		return viewMenu
 	}
 }
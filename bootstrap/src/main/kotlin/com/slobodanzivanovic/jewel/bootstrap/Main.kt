@@ -17,18 +17,56 @@
 package com.slobodanzivanovic.jewel.bootstrap
 
 import com.slobodanzivanovic.jewel.coreui.EditorWindow
+import com.slobodanzivanovic.jewel.laf.EdtWatchdog
 import com.slobodanzivanovic.jewel.laf.FontManager
 import com.slobodanzivanovic.jewel.laf.UIPreferences
+import com.slobodanzivanovic.jewel.util.logging.AsyncOptions
+import com.slobodanzivanovic.jewel.util.logging.LogFormat
 import com.slobodanzivanovic.jewel.util.logging.Logger
+import com.slobodanzivanovic.jewel.util.logging.RetentionPolicy
 import com.slobodanzivanovic.jewel.util.platform.PlatformInfo
+import com.slobodanzivanovic.jewel.util.platform.RuntimeMonitor
+import java.awt.BorderLayout
+import java.awt.Container
 import java.awt.Dimension
+import java.awt.Graphics
+import java.awt.GraphicsEnvironment
+import java.awt.event.WindowAdapter
+import java.awt.event.WindowEvent
+import java.awt.image.BufferedImage
 import java.io.IOException
 import java.time.LocalDateTime
 import java.time.format.DateTimeFormatter
+import java.util.concurrent.CompletableFuture
 import javax.swing.JDialog
 import javax.swing.JFrame
-import javax.swing.SwingUtilities
+import javax.swing.JPanel
 import javax.swing.WindowConstants
+import kotlin.system.exitProcess
+
+private const val STARTUP_REPORT = "startup.txt"
+
+// Set by the training and benchmark launches of the build, which print the report and exit once painted
+private const val EXIT_AFTER_STARTUP_PROPERTY = "jewel.startup.exit"
+
+// "binary" writes the session log in the format of the log viewer, anything else writes text
+private const val LOG_FORMAT_PROPERTY = "jewel.log.format"
+
+// Loaded, without initialisation, while the look and feel is set up
+private val PRELOADED_CLASSES = listOf(
+	"com.formdev.flatlaf.FlatLightLaf",
+	"com.formdev.flatlaf.FlatDarkLaf",
+	"javax.swing.JTextArea",
+	"javax.swing.JScrollPane",
+	"javax.swing.JMenuBar",
+	"javax.swing.text.PlainView",
+	"com.slobodanzivanovic.jewel.coreui.EditorWindow",
+	"com.slobodanzivanovic.jewel.coreui.components.textarea.JWLTextArea",
+	"com.slobodanzivanovic.jewel.coreui.components.textarea.JWLFoldingViewFactory",
+	"com.slobodanzivanovic.jewel.laf.TextAreaUIs",
+	"com.slobodanzivanovic.jewel.coreui.components.textarea.JWLFoldingView",
+	"com.slobodanzivanovic.jewel.bootstrap.JewelMenuBar"
+)
 
 /**
  * @author Slobodan Zivanovic
@@ -50,33 +88,63 @@ fun main() {
 	System.setProperty("flatlaf.uiScale", System.getProperty("sun.java2d.uiScale", "1"))
 	System.setProperty("swing.defaultlaf.useSystemScale", "true")
 
-	UIPreferences.init()
-	UIPreferences.initSystemScale()
-
-	PlatformInfo.getInstance().logSystemInfo()
-
-	SwingUtilities.invokeLater {
-		FontManager.setupFonts()
-		UIPreferences.setupLaf()
-
-		JFrame().apply {
-			createBufferStrategy(1)
-			jMenuBar = JewelMenuBar()
-			add(EditorWindow())
-			defaultCloseOperation = WindowConstants.EXIT_ON_CLOSE
-			isResizable = true
-			title = "Jewel"
-			minimumSize = Dimension(800, 600)
-			pack()
-			setLocationRelativeTo(null)
-			UIPreferences.registerSystemScaleFactors(this)
-			isVisible = true
+	// The scale properties set by the preferences phase must be in place before AWT initialises,
+	// so the phases that may run before it stay clear of AWT
+	var logger: Logger? = null
+	var watchdog: EdtWatchdog? = null
+	val startup = StartupSequence()
+	startup.phase("logger") { logger = createLogger() }
+	startup.phase("system-info", "logger") { logger?.let { PlatformInfo.getInstance().logSystemInfo(it) } }
+	startup.phase("runtime-monitor", "logger") { RuntimeMonitor.getInstance().start(logger?.getChild("runtime")) }
+	startup.phase("preferences") {
+		UIPreferences.init()
+		UIPreferences.initSystemScale()
+	}
+	startup.phase("fonts") { FontManager.setupFonts() }
+	startup.phase("classes") { preloadClasses() }
+	startup.edtPhase("laf", "preferences", "fonts") { UIPreferences.setupLaf() }
+	startup.edtPhase("frame", "laf") { createFrame(startup) }
+	// Posting the heartbeats initialises AWT, so the watchdog waits for the look and feel
+	startup.phase("edt-watchdog", "logger", "laf") {
+		logger?.let { watchdog = EdtWatchdog(it.getChild("edt"), EdtWatchdog.Options.defaults()).apply { start() } }
+	}
+
+	Runtime.getRuntime().addShutdownHook(Thread {
+		logger?.let {
+			it.info("Application shutting down")
+			watchdog?.close()
+			val runtime = RuntimeMonitor.getInstance().snapshot()
+			it.info("GC: ${runtime.collections()} pauses, total ${runtime.totalPauseMillis()}ms, " +
+				"longest ${runtime.longestPauseMillis()}ms")
+			it.close()
+		}
+	})
+
+	val phases = startup.start()
+	CompletableFuture.allOf(phases, startup.whenFirstPainted()).thenRun {
+		logger?.let {
+			startup.writeReport(it.sessionDirectory.resolve(STARTUP_REPORT))
+			it.info("Startup finished, report written to $STARTUP_REPORT")
+		}
+		if (java.lang.Boolean.getBoolean(EXIT_AFTER_STARTUP_PROPERTY)) {
+			print(startup.report())
+			exitProcess(0)
 		}
 	}
 
+	// The startup threads are daemons, keep the JVM alive until the EDT has taken over
+	phases.join()
+}
+
+private fun createLogger(): Logger? {
 	try {
 		val file = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss"))
-		val logger = Logger(file)
+		val format = if ("binary".equals(System.getProperty(LOG_FORMAT_PROPERTY), ignoreCase = true)) {
+			LogFormat.BINARY
+		} else {
+			LogFormat.TEXT
+		}
+		val logger = Logger(file, AsyncOptions.defaults(), RetentionPolicy.defaults(), format)
 		logger.info("Application started")
 		logger.info("Max memory: ${Runtime.getRuntime().maxMemory() / 1024 / 1024}MB")
 
@@ -85,11 +153,86 @@ fun main() {
 
 		val logFilePath = logger.logFilePath
 		println("Log file is located at: $logFilePath")
-
-		Runtime.getRuntime().addShutdownHook(Thread {
-			logger.info("Application shutting down")
-		})
+		return logger
 	} catch (e: IOException) {
 		System.err.println("Failed to initialize logger: " + e.message)
+		return null
+	}
+}
+
+private fun preloadClasses() {
+	val loader = Thread.currentThread().contextClassLoader ?: StartupSequence::class.java.classLoader
+	for (name in PRELOADED_CLASSES) {
+		try {
+			Class.forName(name, false, loader)
+		} catch (e: ClassNotFoundException) {
+			System.err.println("Failed to preload $name")
+		}
+	}
+}
+
+private fun createFrame(startup: StartupSequence) {
+	if (GraphicsEnvironment.isHeadless()) {
+		paintOffscreen(startup)
+		return
+	}
+
+	object : JFrame() {
+		override fun paint(g: Graphics) {
+			super.paint(g)
+			startup.markFirstPaint()
+		}
+	}.apply {
+		createBufferStrategy(1)
+		val editor = EditorWindow()
+		jMenuBar = JewelMenuBar()
+		add(editor)
+		// Runs before the exit of EXIT_ON_CLOSE
+		addWindowListener(object : WindowAdapter() {
+			override fun windowClosing(e: WindowEvent) {
+				editor.close()
+			}
+		})
+		defaultCloseOperation = WindowConstants.EXIT_ON_CLOSE
+		isResizable = true
+		title = "Jewel"
+		minimumSize = Dimension(800, 600)
+		pack()
+		setLocationRelativeTo(null)
+		UIPreferences.registerSystemScaleFactors(this)
+		isVisible = true
+	}
+}
+
+/**
+ * Builds the window content without a window and paints it into an image, so training and
+ * benchmark launches without a display still run the editor classes of a normal start.
+ */
+private fun paintOffscreen(startup: StartupSequence) {
+	val editor = EditorWindow()
+	val content = JPanel(BorderLayout()).apply {
+		add(JewelMenuBar(), BorderLayout.NORTH)
+		add(editor, BorderLayout.CENTER)
+		setSize(800, 600)
+	}
+	layoutTree(content)
+
+	val image = BufferedImage(content.width, content.height, BufferedImage.TYPE_INT_RGB)
+	val graphics = image.createGraphics()
+	try {
+		content.paint(graphics)
+	} finally {
+		graphics.dispose()
+		editor.close()
+	}
+	startup.markFirstPaint()
+}
+
+private fun layoutTree(container: Container) {
+	container.doLayout()
+	for (child in container.components) {
+		if (child is Container) {
+			layoutTree(child)
+		}
 	}
 }
@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.bootstrap
+
+import java.io.IOException
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.time.Duration
+import java.time.Instant
+import java.util.Locale
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.Executor
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+import javax.swing.SwingUtilities
+
+/**
+ * Runs the startup phases of the application as a dependency graph.
+ *
+ * Each phase starts as soon as the phases it depends on have finished, on a small pool of
+ * background threads or on the EDT, so independent phases run concurrently. Phases are timed from
+ * the start of the JVM and [report] lists them together with the first paint of the main window.
+ * A failing phase is reported and does not hold back the phases depending on it.
+ *
+ * @author Slobodan Zivanovic
+ */
+class StartupSequence {
+
+	private class Phase(
+		val name: String,
+		val dependencies: List<String>,
+		val onEdt: Boolean,
+		val action: () -> Unit
+	) {
+		@Volatile
+		var thread = ""
+
+		@Volatile
+		var startNanos = 0L
+
+		@Volatile
+		var endNanos = 0L
+
+		@Volatile
+		var failure: Exception? = null
+	}
+
+	// System.nanoTime() at the start of the JVM, or at the creation of the sequence if unknown
+	private val originNanos: Long = run {
+		val sinceStart = ProcessHandle.current().info().startInstant()
+			.map { Duration.between(it, Instant.now()).toNanos() }
+			.orElse(0L)
+		System.nanoTime() - sinceStart.coerceAtLeast(0L)
+	}
+
+	private val phases = LinkedHashMap<String, Phase>()
+	private val futures = HashMap<String, CompletableFuture<Void>>()
+	private val firstPaint = CompletableFuture<Void>()
+	private val threadCount = AtomicInteger()
+
+	@Volatile
+	private var firstPaintNanos = 0L
+
+	/**
+	 * Adds a phase running on a background thread.
+	 *
+	 * @param name         The name of the phase
+	 * @param dependencies The names of the phases that must finish first
+	 * @param action       The work of the phase
+	 */
+	fun phase(name: String, vararg dependencies: String, action: () -> Unit) {
+		add(Phase(name, dependencies.toList(), false, action))
+	}
+
+	/**
+	 * Adds a phase running on the EDT.
+	 *
+	 * @param name         The name of the phase
+	 * @param dependencies The names of the phases that must finish first
+	 * @param action       The work of the phase
+	 */
+	fun edtPhase(name: String, vararg dependencies: String, action: () -> Unit) {
+		add(Phase(name, dependencies.toList(), true, action))
+	}
+
+	/**
+	 * Starts every phase whose dependencies are met, the others as their dependencies finish.
+	 *
+	 * @return A future completed once every phase has finished
+	 */
+	fun start(): CompletableFuture<Void> {
+		val pool: ExecutorService = Executors.newFixedThreadPool(POOL_SIZE) { runnable ->
+			Thread(runnable, "jewel-startup-${threadCount.incrementAndGet()}").apply { isDaemon = true }
+		}
+		val edt = Executor { SwingUtilities.invokeLater(it) }
+
+		for (phase in phases.values) {
+			schedule(phase, pool, edt, ArrayList())
+		}
+		val all = CompletableFuture.allOf(*futures.values.toTypedArray())
+		all.whenComplete { _, _ -> pool.shutdown() }
+		return all
+	}
+
+	/**
+	 * Records the first paint of the main window. Later calls are ignored.
+	 */
+	fun markFirstPaint() {
+		if (firstPaintNanos == 0L) {
+			firstPaintNanos = System.nanoTime()
+			firstPaint.complete(null)
+		}
+	}
+
+	/**
+	 * Returns a future completed on the first paint of the main window.
+	 */
+	fun whenFirstPainted(): CompletableFuture<Void> = firstPaint
+
+	/**
+	 * Formats the timings of the phases in milliseconds since the start of the JVM. The last
+	 * column is the time left between the end of the phase and the first paint, negative for
+	 * phases that finished after it.
+	 */
+	fun report(): String {
+		val report = StringBuilder()
+		report.append("Startup phases, in ms since JVM start").append(System.lineSeparator())
+		report.append(String.format(Locale.ROOT, "%-14s %-18s %9s %9s %9s %16s%n",
+			"phase", "thread", "start", "end", "duration", "to first paint"))
+		for (phase in phases.values) {
+			val toFirstPaint = if (firstPaintNanos != 0L) millis(firstPaintNanos - phase.endNanos) else "-"
+			report.append(String.format(Locale.ROOT, "%-14s %-18s %9s %9s %9s %16s%n",
+				phase.name, phase.thread, millis(phase.startNanos - originNanos), millis(phase.endNanos - originNanos),
+				millis(phase.endNanos - phase.startNanos), toFirstPaint))
+			phase.failure?.let { report.append("  failed: ").append(it).append(System.lineSeparator()) }
+		}
+		val firstPaintTime = if (firstPaintNanos != 0L) millis(firstPaintNanos - originNanos) else "-"
+		report.append("First paint: ").append(firstPaintTime).append(System.lineSeparator())
+		return report.toString()
+	}
+
+	/**
+	 * Writes the [report] to a file, replacing it atomically.
+	 *
+	 * @param file The report file
+	 */
+	fun writeReport(file: Path) {
+		val temp = file.resolveSibling("${file.fileName}.tmp")
+		try {
+			Files.writeString(temp, report())
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+		} catch (e: IOException) {
+			System.err.println("Failed to write startup report: " + e.message)
+		}
+	}
+
+	private fun add(phase: Phase) {
+		require(phase.name !in phases) { "Duplicate startup phase: ${phase.name}" }
+		phases[phase.name] = phase
+	}
+
+	private fun schedule(
+		phase: Phase,
+		pool: Executor,
+		edt: Executor,
+		path: MutableList<String>
+	): CompletableFuture<Void> {
+		futures[phase.name]?.let { return it }
+		check(phase.name !in path) { "Cycle in startup phases: ${(path + phase.name).joinToString(" -> ")}" }
+
+		path.add(phase.name)
+		val dependencies = phase.dependencies.map { name ->
+			val dependency = phases[name] ?: error("Unknown startup phase $name required by ${phase.name}")
+			schedule(dependency, pool, edt, path)
+		}
+		path.removeAt(path.size - 1)
+
+		// Phases record their own failures, so the dependencies always complete normally
+		val future = CompletableFuture.allOf(*dependencies.toTypedArray())
+			.thenRunAsync({ run(phase) }, if (phase.onEdt) edt else pool)
+		futures[phase.name] = future
+		return future
+	}
+
+	private fun run(phase: Phase) {
+		phase.thread = Thread.currentThread().name
+		phase.startNanos = System.nanoTime()
+		try {
+			phase.action()
+		} catch (e: Exception) {
+			phase.failure = e
+			System.err.println("Startup phase ${phase.name} failed: " + e.message)
+			e.printStackTrace()
+		} finally {
+			phase.endNanos = System.nanoTime()
+		}
+	}
+
+	private fun millis(nanos: Long): String = String.format(Locale.ROOT, "%.1f", nanos / 1_000_000.0)
+
+	private companion object {
+		const val POOL_SIZE = 4
+	}
+}
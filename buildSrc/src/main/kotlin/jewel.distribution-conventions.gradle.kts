@@ -1,7 +1,9 @@
 package buildsrc.convention
 
 import org.panteleyev.jpackage.ImageType
+import java.io.ByteArrayOutputStream
 import java.util.*
+import javax.inject.Inject
 
 plugins {
 	id("org.panteleyev.jpackageplugin")
@@ -12,7 +14,30 @@ val rootBuildDir: File = project.rootProject.layout.buildDirectory.get().asFile
 val cacheDir = file("$rootBuildDir/cache/jpackage")
 val libsDir = file("$cacheDir/libs")
 
+// AppCDS archive of the classes loaded during startup, shipped next to the jars
+val cdsArchiveName = "jewel.jsa"
+val cdsArchive = file("$libsDir/$cdsArchiveName")
+val mainClassName = "com.slobodanzivanovic.jewel.bootstrap.MainKt"
 val os = System.getProperty("os.name").lowercase(Locale.getDefault())
+
+// Home of the startup launches, so their logs, preferences and journals stay out of ~/.jewel
+val startupHome = file("$rootBuildDir/tmp/startup-home")
+// Launches open a real frame, loading the toolkit, window peers and Java2D pipeline of the packaged
+// app, unless there is no display (run CI under xvfb-run) or -PstartupHeadless=true asks for the
+// offscreen paint, which neither trains nor measures those classes
+val startupHeadless = providers.gradleProperty("startupHeadless").map { it.toBoolean() }.getOrElse(
+	!os.contains("windows") && !os.contains("mac")
+		&& System.getenv("DISPLAY") == null && System.getenv("WAYLAND_DISPLAY") == null)
+// Makes the app print its startup report and exit once the window content is painted
+val startupExitOptions = listOfNotNull(if (startupHeadless) "-Djava.awt.headless=true" else null,
+	"-Djewel.startup.exit=true", "-Duser.home=${startupHome.absolutePath}")
+
+// Starts the launches of a task from an empty home rather than the state left by earlier builds
+fun Task.cleanStartupHome() = doFirst {
+	startupHome.deleteRecursively()
+	startupHome.mkdirs()
+}
+
 val osDir = when {
 	os.contains("windows") -> file("$rootBuildDir/windows")
 	os.contains("mac") -> file("$rootBuildDir/macos")
@@ -33,9 +58,102 @@ tasks.register<Copy>("prepareInstallerFiles") {
 	dependsOn(tasks.jar)
 }
 
-tasks.jpackage {
+// The archive is only used with the same JVM and the same jars in the same order,
+// so the training launch runs from the installer input directory like the packaged app
+fun installerClasspath(): List<File> {
+	val mainJar = file("$libsDir/${tasks.jar.get().archiveFileName.get()}")
+	return listOf(mainJar) + (libsDir.listFiles { file -> file.name.endsWith(".jar") && file != mainJar }
+		?.sortedBy { it.name } ?: emptyList())
+}
+
+tasks.register<JavaExec>("trainCdsArchive") {
+	group = "distribution"
+	description = "Runs a training launch and archives the classes loaded during startup."
 	dependsOn("prepareInstallerFiles")
 
+	classpath = files(provider { installerClasspath() })
+	mainClass.set(mainClassName)
+	jvmArgs(listOf("-XX:ArchiveClassesAtExit=${cdsArchive.absolutePath}") + startupExitOptions)
+	outputs.file(cdsArchive)
+	cleanStartupHome()
+}
+
+/**
+ * Launches the app several times, with and without the AppCDS archive,
+ * and reports the time to the first painted frame.
+ */
+abstract class StartupBenchmark @Inject constructor(private val execOperations: ExecOperations) : DefaultTask() {
+
+	@get:Classpath
+	abstract val classpath: ConfigurableFileCollection
+
+	@get:InputFile
+	abstract val archive: RegularFileProperty
+
+	@get:Input
+	abstract val mainClass: Property<String>
+
+	@get:Input
+	abstract val jvmOptions: ListProperty<String>
+
+	@get:Input
+	abstract val runs: Property<Int>
+
+	// Headless launches paint offscreen, their times are not those of the packaged app
+	@get:Input
+	abstract val headless: Property<Boolean>
+
+	@get:Nested
+	abstract val launcher: Property<JavaLauncher>
+
+	@TaskAction
+	fun benchmark() {
+		val withoutArchive = measure(emptyList())
+		val withArchive = measure(listOf("-XX:SharedArchiveFile=${archive.get().asFile.absolutePath}"))
+		val mode = if (headless.get()) "headless, offscreen paint" else "on screen"
+		logger.lifecycle("Time to first frame ($mode) over ${runs.get()} runs, in ms since JVM start:")
+		logger.lifecycle(summary("default CDS", withoutArchive))
+		logger.lifecycle(summary("AppCDS archive", withArchive))
+	}
+
+	private fun measure(options: List<String>): List<Double> = (1..runs.get()).map {
+		val output = ByteArrayOutputStream()
+		execOperations.exec {
+			executable = launcher.get().executablePath.asFile.absolutePath
+			args(options + jvmOptions.get() + listOf("-cp", classpath.asPath, mainClass.get()))
+			standardOutput = output
+		}
+		val firstPaint = Regex("First paint: ([0-9.]+)").find(output.toString())
+			?: throw GradleException("No startup report in the output of the benchmark launch")
+		firstPaint.groupValues[1].toDouble()
+	}
+
+	private fun summary(name: String, times: List<Double>): String {
+		val sorted = times.sorted()
+		return String.format(Locale.ROOT, "  %-15s median %7.1f  min %7.1f  max %7.1f",
+			name, sorted[sorted.size / 2], sorted.first(), sorted.last())
+	}
+}
+
+tasks.register<StartupBenchmark>("startupBenchmark") {
+	group = "distribution"
+	description = "Measures the time to first frame of launches with and without the AppCDS archive."
+	dependsOn("trainCdsArchive")
+
+	classpath.from(provider { installerClasspath() })
+	archive.set(cdsArchive)
+	mainClass.set(mainClassName)
+	jvmOptions.set(startupExitOptions)
+	runs.set(providers.gradleProperty("startupBenchmarkRuns").map { it.toInt() }.orElse(5))
+	headless.set(startupHeadless)
+	launcher.set(javaToolchains.launcherFor(java.toolchain))
+	outputs.upToDateWhen { false }
+	cleanStartupHome()
+}
+
+tasks.jpackage {
+	dependsOn("prepareInstallerFiles", "trainCdsArchive")
+
 	input = libsDir.absolutePath
 	destination = osDir.absolutePath
 	appName = "Jewel"
@@ -43,6 +161,7 @@ tasks.jpackage {
 	mainClass = "com.slobodanzivanovic.jewel.bootstrap.MainKt"
 	appVersion = "1.0.0"
 	copyright = "Copyright (C) 2024 Slobodan Zivanovic"
+	javaOptions = listOf("-XX:SharedArchiveFile=\$APPDIR/$cdsArchiveName")
 //  licenseFile = "${project.rootDir}/LICENSE"
 //  icon = currentIcon
 
@@ -61,7 +180,7 @@ tasks.jpackage {
 		macPackageIdentifier = "com.slobodanzivanovic.jewel"
 		macPackageName = "Jewel"
 		macPackageSigningPrefix = "com.slobodanzivanovic"
-		javaOptions = listOf("-Xdock:name=Jewel")
+		javaOptions = listOf("-Xdock:name=Jewel", "-XX:SharedArchiveFile=\$APPDIR/$cdsArchiveName")
 	}
 
 	linux {
@@ -16,19 +16,26 @@
 
 package com.slobodanzivanovic.jewel.coreui;
 
+import com.slobodanzivanovic.jewel.coreui.components.textarea.JWLDocumentJournal;
+import com.slobodanzivanovic.jewel.coreui.components.textarea.JWLFoldGutter;
 import com.slobodanzivanovic.jewel.coreui.components.textarea.JWLTextArea;
 import com.slobodanzivanovic.jewel.laf.FontManager;
 
 import javax.swing.*;
 import java.awt.*;
+import java.io.IOException;
 
 /**
  * @author Slobodan Zivanovic
  */
 public class EditorWindow extends JPanel {
 
+	// Identifies the unsaved buffer across sessions, each window locks its own journal of it
+	private static final String DOCUMENT_ID = "untitled";
+
 	private final JWLTextArea textArea;
 	private final JScrollPane scrollPane;
+	private final JWLDocumentJournal journal;
 
 	public EditorWindow() {
 		setLayout(new BorderLayout());
@@ -40,6 +47,14 @@ public class EditorWindow extends JPanel {
 		scrollPane = createScrollPane(textArea);
 
 		add(scrollPane, BorderLayout.CENTER);
+
+		JWLDocumentJournal documentJournal = null;
+		try {
+			documentJournal = JWLDocumentJournal.attach(textArea, DOCUMENT_ID);
+		} catch (IOException e) {
+			System.err.println("Failed to open edit journal: " + e.getMessage());
+		}
+		journal = documentJournal;
 	}
 
 	private JWLTextArea createTextArea() {
@@ -60,6 +75,7 @@ public class EditorWindow extends JPanel {
 		JScrollPane pane = new JScrollPane(editor);
 
 		pane.setBorder(BorderFactory.createEmptyBorder());
+		pane.setRowHeaderView(new JWLFoldGutter(editor));
 
 		pane.setVerticalScrollBarPolicy(ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED);
 		pane.setHorizontalScrollBarPolicy(ScrollPaneConstants.HORIZONTAL_SCROLLBAR_AS_NEEDED);
@@ -76,6 +92,24 @@ public class EditorWindow extends JPanel {
 		return textArea;
 	}
 
+	/**
+	 * Gets the crash recovery journal of the text area.
+	 *
+	 * @return The journal, or null if it could not be opened
+	 */
+	public JWLDocumentJournal getJournal() {
+		return journal;
+	}
+
+	/**
+	 * Closes the window cleanly. Nothing is left to recover, so the journal is deleted.
+	 */
+	public void close() {
+		if (journal != null) {
+			journal.discard();
+		}
+	}
+
 	/**
 	 * Gets the scroll pane containing the text area.
 	 *
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.coreui.components.logviewer;
+
+import com.slobodanzivanovic.jewel.util.logging.BinaryLogReader;
+import com.slobodanzivanovic.jewel.util.logging.LogEntry;
+import com.slobodanzivanovic.jewel.util.platform.RuntimeMonitor;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+
+/**
+ * Table model over the entries of a binary log matching the current filter. Only the entry
+ * offsets are held in memory, rows are decoded when the table asks for them and the most
+ * recently decoded rows are cached.
+ *
+ * @author Slobodan Zivanovic
+ */
+class JWLLogTableModel extends AbstractTableModel {
+
+	static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS")
+		.withZone(ZoneId.systemDefault());
+
+	private static final String[] COLUMNS = {"Time", "Level", "Logger", "Message"};
+	private static final int CACHE_SIZE = 256;
+
+	private final BinaryLogReader reader;
+	private long[] offsets = new long[0];
+	private int rowCount;
+
+	private final LogEntry[] cache = new LogEntry[CACHE_SIZE];
+	private final int[] cachedRows = new int[CACHE_SIZE];
+
+	JWLLogTableModel(BinaryLogReader reader) {
+		this.reader = reader;
+		// The decoded rows are read back from the log on demand
+		RuntimeMonitor.getInstance().register("log viewer rows", this,
+			(model, pressure) -> SwingUtilities.invokeLater(model::clearCache));
+	}
+
+	/**
+	 * Replaces the rows with the entries at the given offsets.
+	 */
+	void setOffsets(long[] offsets, int count) {
+		this.offsets = offsets;
+		this.rowCount = count;
+		clearCache();
+		fireTableDataChanged();
+	}
+
+	/**
+	 * Returns the decoded entry shown in a row.
+	 */
+	LogEntry getEntry(int row) {
+		int slot = row & (CACHE_SIZE - 1);
+		LogEntry entry = cache[slot];
+		if (entry == null || cachedRows[slot] != row) {
+			entry = reader.read(offsets[row]);
+			cache[slot] = entry;
+			cachedRows[slot] = row;
+		}
+		return entry;
+	}
+
+	@Override
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	@Override
+	public int getColumnCount() {
+		return COLUMNS.length;
+	}
+
+	@Override
+	public String getColumnName(int column) {
+		return COLUMNS[column];
+	}
+
+	@Override
+	public Object getValueAt(int row, int column) {
+		LogEntry entry = getEntry(row);
+		return switch (column) {
+			case 0 -> TIME_FORMATTER.format(Instant.ofEpochMilli(entry.timestamp()));
+			case 1 -> entry.level();
+			case 2 -> entry.name();
+			default -> entry.throwable() != null ? entry.message() + " [exception]" : entry.message();
+		};
+	}
+
+	private void clearCache() {
+		Arrays.fill(cache, null);
+	}
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.coreui.components.logviewer;
+
+import com.slobodanzivanovic.jewel.util.logging.BinaryLogReader;
+import com.slobodanzivanovic.jewel.util.logging.LogEntry;
+import com.slobodanzivanovic.jewel.util.logging.LogFormat;
+import com.slobodanzivanovic.jewel.util.logging.LogQuery;
+import com.slobodanzivanovic.jewel.util.logging.Logger;
+import com.slobodanzivanovic.jewel.util.task.CancellationScope;
+import com.slobodanzivanovic.jewel.util.task.CancellationToken;
+import com.slobodanzivanovic.jewel.util.task.TaskLane;
+import com.slobodanzivanovic.jewel.util.task.TaskScheduler;
+
+import javax.swing.*;
+import javax.swing.filechooser.FileNameExtensionFilter;
+import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Panel listing the entries of a {@link LogFormat#BINARY} log, filtered by minimum level and time range.
+ * <p>
+ * Filtering runs on a background thread through {@link BinaryLogReader#scan}, which skips index
+ * blocks outside the filter and only collects entry offsets, so logs with millions of entries stay
+ * responsive. The table decodes just the visible rows. Applying the filter again also picks up
+ * entries written since the last time.
+ *
+ * @author Slobodan Zivanovic
+ */
+public class JWLLogViewer extends JPanel {
+
+	private static final DateTimeFormatter INPUT_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+	private static final Logger.LogLevel[] LEVELS_BY_SEVERITY = {
+		Logger.LogLevel.DEBUG, Logger.LogLevel.INFO, Logger.LogLevel.WARNING, Logger.LogLevel.ERROR
+	};
+	// How often the scan checks whether it was superseded, in matching entries
+	private static final int CANCEL_CHECK_INTERVAL = 1 << 16;
+
+	private final BinaryLogReader reader;
+	private final JWLLogTableModel model;
+	private final JTable table;
+	private final JTextArea details;
+	private final JComboBox<Logger.LogLevel> levelBox;
+	private final JTextField fromField;
+	private final JTextField toField;
+	private final JLabel statusLabel;
+
+	private final CancellationScope filters = new CancellationScope();
+
+	/**
+	 * Creates a viewer of the given binary log file.
+	 *
+	 * @param logFile The log file to view
+	 * @throws IOException If the file cannot be read or is not a binary log
+	 */
+	public JWLLogViewer(Path logFile) throws IOException {
+		super(new BorderLayout());
+		reader = BinaryLogReader.open(logFile);
+		model = new JWLLogTableModel(reader);
+
+		levelBox = new JComboBox<>(LEVELS_BY_SEVERITY);
+		levelBox.setSelectedItem(Logger.LogLevel.DEBUG);
+		fromField = createTimeField();
+		toField = createTimeField();
+		statusLabel = new JLabel();
+
+		JButton applyButton = new JButton("Apply");
+		applyButton.addActionListener(e -> applyFilter());
+		levelBox.addActionListener(e -> applyFilter());
+
+		JPanel toolbar = new JPanel(new FlowLayout(FlowLayout.LEADING));
+		toolbar.add(new JLabel("Level"));
+		toolbar.add(levelBox);
+		toolbar.add(new JLabel("From"));
+		toolbar.add(fromField);
+		toolbar.add(new JLabel("To"));
+		toolbar.add(toField);
+		toolbar.add(applyButton);
+		toolbar.add(statusLabel);
+
+		table = new JTable(model);
+		table.setFillsViewportHeight(true);
+		table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		table.getColumnModel().getColumn(0).setPreferredWidth(170);
+		table.getColumnModel().getColumn(1).setPreferredWidth(70);
+		table.getColumnModel().getColumn(2).setPreferredWidth(120);
+		table.getColumnModel().getColumn(3).setPreferredWidth(700);
+		table.getSelectionModel().addListSelectionListener(e -> {
+			if (!e.getValueIsAdjusting()) {
+				showDetails();
+			}
+		});
+
+		details = new JTextArea(6, 80);
+		details.setEditable(false);
+
+		JSplitPane splitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT, new JScrollPane(table),
+			new JScrollPane(details));
+		splitPane.setResizeWeight(0.8);
+
+		add(toolbar, BorderLayout.NORTH);
+		add(splitPane, BorderLayout.CENTER);
+
+		applyFilter();
+	}
+
+	/**
+	 * Lets the user pick a binary log from the log directory and shows it in a dialog.
+	 *
+	 * @param parent The component the dialogs are shown over
+	 */
+	public static void showDialog(Component parent) {
+		JFileChooser chooser = new JFileChooser(Logger.getSystemLogDirectory().toFile());
+		chooser.setFileFilter(new FileNameExtensionFilter("Binary logs", LogFormat.BINARY.getExtension().substring(1)));
+		if (chooser.showOpenDialog(parent) != JFileChooser.APPROVE_OPTION) {
+			return;
+		}
+
+		File file = chooser.getSelectedFile();
+		JWLLogViewer viewer;
+		try {
+			viewer = new JWLLogViewer(file.toPath());
+		} catch (IOException e) {
+			JOptionPane.showMessageDialog(parent, "Cannot open " + file + ": " + e.getMessage(), "Log Viewer",
+				JOptionPane.ERROR_MESSAGE);
+			return;
+		}
+
+		JDialog dialog = new JDialog(SwingUtilities.getWindowAncestor(parent), "Log Viewer - " + file.getName());
+		dialog.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+		dialog.addWindowListener(new WindowAdapter() {
+			@Override
+			public void windowClosed(WindowEvent e) {
+				viewer.close();
+			}
+		});
+		dialog.setContentPane(viewer);
+		dialog.setSize(1100, 700);
+		dialog.setLocationRelativeTo(parent);
+		dialog.setVisible(true);
+	}
+
+	/**
+	 * Scans the log again with the current filter, including entries written since the last scan.
+	 */
+	public void applyFilter() {
+		LogQuery query;
+		try {
+			query = new LogQuery((Logger.LogLevel) levelBox.getSelectedItem(), parseTime(fromField, Long.MIN_VALUE),
+				parseTime(toField, Long.MAX_VALUE));
+		} catch (DateTimeParseException e) {
+			statusLabel.setText("Invalid time: " + e.getParsedString());
+			return;
+		}
+
+		statusLabel.setText("Filtering...");
+		CancellationToken token = filters.next();
+		TaskScheduler.getInstance().submit(TaskLane.INTERACTIVE, token, t -> filter(query, t), matches -> {
+			model.setOffsets(matches.offsets(), matches.count());
+			statusLabel.setText(String.format("%,d of %,d entries", matches.count(), reader.getEntryCount()));
+		}).exceptionally(e -> {
+			Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+			if (!(cause instanceof CancellationException)) {
+				SwingUtilities.invokeLater(() -> {
+					if (!token.isCancelled()) {
+						statusLabel.setText("Failed to read log: " + cause.getMessage());
+					}
+				});
+			}
+			return null;
+		});
+	}
+
+	/**
+	 * Stops filtering and closes the log file.
+	 */
+	public void close() {
+		filters.cancel();
+		try {
+			reader.close();
+		} catch (IOException e) {
+			System.err.println("Failed to close log file: " + e.getMessage());
+		}
+	}
+
+	private void showDetails() {
+		int row = table.getSelectedRow();
+		if (row < 0) {
+			details.setText("");
+			return;
+		}
+		LogEntry entry = model.getEntry(row);
+		details.setText(entry.format());
+		details.setCaretPosition(0);
+	}
+
+	private static JTextField createTimeField() {
+		JTextField field = new JTextField(14);
+		field.setToolTipText("yyyy-MM-dd HH:mm:ss, empty for no limit");
+		return field;
+	}
+
+	private static long parseTime(JTextField field, long unbounded) {
+		String text = field.getText().trim();
+		if (text.isEmpty()) {
+			return unbounded;
+		}
+		return LocalDateTime.parse(text, INPUT_FORMATTER).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+	}
+
+	/**
+	 * Collects the offsets of the matching entries off the EDT.
+	 */
+	private Matches filter(LogQuery query, CancellationToken token) throws IOException {
+		reader.refresh();
+		long[][] offsets = {new long[1024]};
+		int[] count = {0};
+		reader.scan(query, offset -> {
+			if (count[0] == offsets[0].length) {
+				offsets[0] = Arrays.copyOf(offsets[0], count[0] * 2);
+			}
+			offsets[0][count[0]++] = offset;
+			if ((count[0] & (CANCEL_CHECK_INTERVAL - 1)) == 0) {
+				token.throwIfCancelled();
+			}
+		});
+		return new Matches(offsets[0], count[0]);
+	}
+
+	private record Matches(long[] offsets, int count) {
+	}
+}
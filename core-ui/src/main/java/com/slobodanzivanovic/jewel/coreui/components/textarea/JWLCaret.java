@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.coreui.components.textarea;
+
+import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultCaret;
+import java.awt.*;
+import java.awt.event.MouseEvent;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * The primary caret of {@link JWLTextArea}. Paints a 2px bar and adds the
+ * multi-caret mouse gestures: Alt+click adds a caret and Alt+Shift+drag
+ * selects a column with one caret per line.
+ *
+ * @author Slobodan Zivanovic
+ */
+public class JWLCaret extends DefaultCaret {
+
+	private final JWLTextArea textArea;
+	private Point columnAnchor;
+
+	public JWLCaret(JWLTextArea textArea) {
+		this.textArea = textArea;
+	}
+
+	@Override
+	public void paint(Graphics g) {
+		if (isVisible()) {
+			try {
+				Rectangle2D r = textArea.getCaretBounds(getDot());
+				g.setColor(textArea.getCaretColor());
+				g.fillRect((int) r.getX(), (int) r.getY(), 2, (int) r.getHeight());
+			} catch (BadLocationException e) {
+				// Ignore
+			}
+		}
+	}
+
+	@Override
+	public void mousePressed(MouseEvent e) {
+		if (SwingUtilities.isLeftMouseButton(e) && e.isAltDown()) {
+			textArea.requestFocusInWindow();
+			if (e.isShiftDown()) {
+				columnAnchor = e.getPoint();
+			} else {
+				textArea.addCaret(textArea.viewToModel2D(e.getPoint()));
+			}
+			return;
+		}
+
+		columnAnchor = null;
+		textArea.clearExtraCarets();
+		super.mousePressed(e);
+	}
+
+	@Override
+	public void mouseDragged(MouseEvent e) {
+		if (columnAnchor != null) {
+			textArea.selectColumn(columnAnchor, e.getPoint());
+			return;
+		}
+		super.mouseDragged(e);
+	}
+
+	@Override
+	public void mouseReleased(MouseEvent e) {
+		if (columnAnchor != null) {
+			columnAnchor = null;
+			return;
+		}
+		super.mouseReleased(e);
+	}
+}
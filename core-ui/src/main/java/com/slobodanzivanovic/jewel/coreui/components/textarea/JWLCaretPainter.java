@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.coreui.components.textarea;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Highlighter;
+import javax.swing.text.JTextComponent;
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * Paints the secondary carets and their selections of a {@link JWLCaretSet}.
+ * The primary caret and its selection are painted by the text component's caret,
+ * so they are skipped here. Only carets intersecting the clip are visited.
+ *
+ * @author Slobodan Zivanovic
+ */
+public class JWLCaretPainter implements Highlighter.HighlightPainter {
+
+	private final JWLCaretSet carets;
+
+	public JWLCaretPainter(JWLCaretSet carets) {
+		this.carets = carets;
+	}
+
+	@Override
+	public void paint(Graphics g, int p0, int p1, Shape bounds, JTextComponent c) {
+		if (!carets.isMultiple()) {
+			return;
+		}
+
+		Rectangle clip = g.getClipBounds();
+		if (clip == null) {
+			clip = c.getVisibleRect();
+		}
+		int firstOffset;
+		int lastOffset;
+		if (c instanceof JWLTextArea textArea) {
+			firstOffset = textArea.getLineStartAt(clip.y);
+			lastOffset = textArea.getLineEndAt(clip.y + clip.height);
+		} else {
+			firstOffset = c.viewToModel2D(new Point(0, clip.y));
+			lastOffset = c.viewToModel2D(new Point(c.getWidth(), clip.y + clip.height));
+		}
+
+		Color selectionColor = c.getSelectionColor();
+		Color caretColor = c.getCaretColor();
+
+		try {
+			for (int i = carets.firstIndexEndingAtOrAfter(firstOffset); i < carets.size(); i++) {
+				int start = carets.getStart(i);
+				if (start > lastOffset) {
+					break;
+				}
+				if (i == carets.getPrimaryIndex()) {
+					continue;
+				}
+
+				int end = carets.getEnd(i);
+				if (start != end) {
+					g.setColor(selectionColor);
+					paintSelection(g, c, start, end);
+				}
+
+				Rectangle2D r = JWLTextArea.getCaretBounds(c, carets.getDot(i));
+				g.setColor(caretColor);
+				g.fillRect((int) r.getX(), (int) r.getY(), 2, (int) r.getHeight());
+			}
+		} catch (BadLocationException ignored) {
+		}
+	}
+
+	private void paintSelection(Graphics g, JTextComponent c, int start, int end) throws BadLocationException {
+		Rectangle2D r0 = JWLTextArea.getCaretBounds(c, start);
+		Rectangle2D r1 = JWLTextArea.getCaretBounds(c, end);
+		int y0 = (int) r0.getY();
+		int y1 = (int) r1.getY();
+		int lineHeight = (int) r0.getHeight();
+
+		if (y0 == y1) {
+			g.fillRect((int) r0.getX(), y0, (int) (r1.getX() - r0.getX()), lineHeight);
+			return;
+		}
+
+		Insets insets = c.getInsets();
+		int right = c.getWidth() - insets.right;
+		g.fillRect((int) r0.getX(), y0, right - (int) r0.getX(), lineHeight);
+		if (y1 > y0 + lineHeight) {
+			g.fillRect(insets.left, y0 + lineHeight, right - insets.left, y1 - y0 - lineHeight);
+		}
+		g.fillRect(insets.left, y1, (int) r1.getX() - insets.left, lineHeight);
+	}
+}
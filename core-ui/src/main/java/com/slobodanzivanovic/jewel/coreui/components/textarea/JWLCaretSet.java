@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.coreui.components.textarea;
+
+import java.util.Arrays;
+
+/**
+ * Holds the carets of a multi-caret editing session.
+ * Every caret is a (dot, mark) pair. Pairs are kept in two parallel primitive arrays sorted
+ * by selection start, and overlapping or touching selections are merged, so tens of thousands
+ * of carets cost two int arrays instead of one object each. One caret is the primary caret,
+ * which is the one mirrored by the text component's own {@link javax.swing.text.Caret}.
+ *
+ * @author Slobodan Zivanovic
+ */
+public class JWLCaretSet {
+
+	private int[] dots = new int[16];
+	private int[] marks = new int[16];
+	private int size;
+	private int primary = -1;
+
+	/**
+	 * Returns the number of carets.
+	 *
+	 * @return The caret count
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Checks if there is more than one caret, i.e. if multi-caret editing is active.
+	 *
+	 * @return true if more than one caret is present
+	 */
+	public boolean isMultiple() {
+		return size > 1;
+	}
+
+	public int getDot(int index) {
+		return dots[index];
+	}
+
+	public int getMark(int index) {
+		return marks[index];
+	}
+
+	public int getStart(int index) {
+		return Math.min(dots[index], marks[index]);
+	}
+
+	public int getEnd(int index) {
+		return Math.max(dots[index], marks[index]);
+	}
+
+	public int getPrimaryIndex() {
+		return primary;
+	}
+
+	public void setPrimaryIndex(int index) {
+		this.primary = index;
+	}
+
+	/**
+	 * Removes all carets.
+	 */
+	public void clear() {
+		size = 0;
+		primary = -1;
+	}
+
+	/**
+	 * Replaces all carets with a single primary caret.
+	 *
+	 * @param dot  The caret position
+	 * @param mark The selection anchor
+	 */
+	public void reset(int dot, int mark) {
+		size = 1;
+		dots[0] = dot;
+		marks[0] = mark;
+		primary = 0;
+	}
+
+	/**
+	 * Adds a caret, merging it with any caret its selection overlaps.
+	 *
+	 * @param dot  The caret position
+	 * @param mark The selection anchor
+	 * @return The index of the caret that now covers the added one
+	 */
+	public int add(int dot, int mark) {
+		int start = Math.min(dot, mark);
+		int index = firstIndexEndingAtOrAfter(start);
+		while (index < size && getStart(index) < start) {
+			index++;
+		}
+
+		ensureCapacity(size + 1);
+		System.arraycopy(dots, index, dots, index + 1, size - index);
+		System.arraycopy(marks, index, marks, index + 1, size - index);
+		dots[index] = dot;
+		marks[index] = mark;
+		size++;
+		if (primary >= index) {
+			primary++;
+		}
+		return normalize(index);
+	}
+
+	/**
+	 * Returns the index of the first caret whose selection ends at or after the given offset.
+	 * Used to find the carets that intersect a visible range without scanning all of them.
+	 *
+	 * @param offset The document offset
+	 * @return The index of the first such caret, or {@link #size()} if there is none
+	 */
+	public int firstIndexEndingAtOrAfter(int offset) {
+		int low = 0;
+		int high = size - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (getEnd(mid) < offset) {
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Copies the range each caret edits into the given arrays.
+	 * A caret with a selection edits its selection. A caret without one edits
+	 * {@code [dot + before, dot + after)}, clamped to the document.
+	 *
+	 * @param starts    Receives the start offsets, must hold at least {@link #size()} entries
+	 * @param ends      Receives the end offsets, must hold at least {@link #size()} entries
+	 * @param before    Characters before an empty caret to include (0 or negative)
+	 * @param after     Characters after an empty caret to include (0 or positive)
+	 * @param docLength The current document length
+	 */
+	public void collectEditRanges(int[] starts, int[] ends, int before, int after, int docLength) {
+		for (int i = 0; i < size; i++) {
+			int start = getStart(i);
+			int end = getEnd(i);
+			if (start == end) {
+				start = Math.max(0, start + before);
+				end = Math.min(docLength, end + after);
+			}
+			starts[i] = start;
+			ends[i] = end;
+		}
+		// Expanded ranges may now touch a neighbouring selection
+		for (int i = 1; i < size; i++) {
+			if (starts[i] < ends[i - 1]) {
+				starts[i] = ends[i - 1];
+				ends[i] = Math.max(ends[i], starts[i]);
+			}
+		}
+	}
+
+	/**
+	 * Moves every caret to the end of its replaced range after a batched edit
+	 * replaced each range with text of the given length. Positions are computed
+	 * from the ranges, so no caret has to observe the individual document events.
+	 *
+	 * @param starts         The replaced range starts, as passed to the edit
+	 * @param ends           The replaced range ends, as passed to the edit
+	 * @param insertedLength The length of the text inserted at each range
+	 */
+	public void collapseAfterReplace(int[] starts, int[] ends, int insertedLength) {
+		int shift = 0;
+		for (int i = 0; i < size; i++) {
+			int offset = starts[i] + shift + insertedLength;
+			dots[i] = offset;
+			marks[i] = offset;
+			shift += insertedLength - (ends[i] - starts[i]);
+		}
+		normalize(0);
+	}
+
+	/**
+	 * Moves every caret by the given number of characters, dropping selections.
+	 * A caret with a selection collapses to the selection edge in the direction of movement.
+	 *
+	 * @param delta     The number of characters to move, negative moves left
+	 * @param docLength The current document length
+	 */
+	public void moveAll(int delta, int docLength) {
+		for (int i = 0; i < size; i++) {
+			int offset;
+			if (dots[i] != marks[i]) {
+				offset = delta < 0 ? getStart(i) : getEnd(i);
+			} else {
+				offset = Math.max(0, Math.min(docLength, dots[i] + delta));
+			}
+			dots[i] = offset;
+			marks[i] = offset;
+		}
+		normalize(0);
+	}
+
+	/**
+	 * Merges carets whose selections overlap, starting the scan at the given index.
+	 *
+	 * @param from The first index that may overlap its predecessor
+	 * @return The index the caret at {@code from} ends up at
+	 */
+	private int normalize(int from) {
+		int result = from;
+		int write = Math.max(0, from - 1);
+		for (int read = write + 1; read < size; read++) {
+			if (getStart(read) <= getEnd(write) && (getStart(read) < getEnd(write) || dots[read] == marks[read]
+				|| dots[write] == marks[write])) {
+				int start = Math.min(getStart(write), getStart(read));
+				int end = Math.max(getEnd(write), getEnd(read));
+				boolean forward = dots[read] >= marks[read];
+				dots[write] = forward ? end : start;
+				marks[write] = forward ? start : end;
+			} else {
+				write++;
+				dots[write] = dots[read];
+				marks[write] = marks[read];
+			}
+			if (read == from) {
+				result = write;
+			}
+			if (read == primary) {
+				primary = write;
+			}
+		}
+		size = Math.min(size, write + 1);
+		return result;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > dots.length) {
+			int newLength = Math.max(capacity, dots.length * 2);
+			dots = Arrays.copyOf(dots, newLength);
+			marks = Arrays.copyOf(marks, newLength);
+		}
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.coreui.components.textarea;
+
+import javax.swing.event.UndoableEditEvent;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.PlainDocument;
+import javax.swing.undo.CompoundEdit;
+
+/**
+ * Plain text document used by {@link JWLTextArea}.
+ * Adds support for applying many range replacements as one batched mutation,
+ * which is what multi-caret editing needs: all edits run under a single write
+ * lock and are reported to undo listeners as one compound edit.
+ *
+ * @author Slobodan Zivanovic
+ */
+public class JWLDocument extends PlainDocument {
+
+	private CompoundEdit batchEdit;
+
+	/**
+	 * Replaces the ranges {@code [starts[i], ends[i])} with {@code text}.
+	 * The ranges must be sorted ascending and must not overlap. They are applied
+	 * in descending offset order, so earlier offsets stay valid while editing.
+	 *
+	 * @param starts Start offsets of the ranges
+	 * @param ends   End offsets of the ranges
+	 * @param count  Number of ranges to apply
+	 * @param text   Replacement text, empty for a pure removal
+	 * @throws BadLocationException If any range is outside the document
+	 */
+	public void replaceAll(int[] starts, int[] ends, int count, String text) throws BadLocationException {
+		writeLock();
+		CompoundEdit edit = new CompoundEdit();
+		batchEdit = edit;
+		try {
+			for (int i = count - 1; i >= 0; i--) {
+				if (ends[i] > starts[i]) {
+					remove(starts[i], ends[i] - starts[i]);
+				}
+				if (!text.isEmpty()) {
+					insertString(starts[i], text, null);
+				}
+			}
+		} finally {
+			batchEdit = null;
+			writeUnlock();
+			edit.end();
+			if (edit.isSignificant()) {
+				super.fireUndoableEditUpdate(new UndoableEditEvent(this, edit));
+			}
+		}
+	}
+
+	@Override
+	protected void fireUndoableEditUpdate(UndoableEditEvent e) {
+		if (batchEdit != null) {
+			batchEdit.addEdit(e.getEdit());
+		} else {
+			super.fireUndoableEditUpdate(e);
+		}
+	}
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.coreui.components.textarea;
+
+import com.slobodanzivanovic.jewel.util.journal.EditJournal;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Feeds the edits of a {@link JWLTextArea} into an {@link EditJournal}, so the text survives a crash.
+ * Each document event becomes one journal record; the full text is only copied when the journal
+ * asks for a checkpoint.
+ * <p>
+ * Each editor locks the journal it writes, so the unsaved buffers of editors running at the same
+ * time get journals of their own, and a journal left by a crashed editor is recovered by the
+ * next editor that finds it unlocked.
+ *
+ * @author Slobodan Zivanovic
+ */
+public class JWLDocumentJournal implements DocumentListener {
+
+	// Journals tried per document before giving up
+	private static final int MAX_SLOTS = 64;
+
+	private final JWLTextArea textArea;
+	private final EditJournal journal;
+
+	private JWLDocumentJournal(JWLTextArea textArea, EditJournal journal) {
+		this.textArea = textArea;
+		this.journal = journal;
+	}
+
+	/**
+	 * Locks the first journal of a document not used by another editor, restores the text recorded
+	 * in it, if any, and starts journaling the edits. The first journal is named after the document,
+	 * the next ones get a {@code -2}, {@code -3}... suffix.
+	 *
+	 * @param textArea   The text area editing the document
+	 * @param documentId An identifier of the document that is stable across sessions
+	 * @return The attached journal
+	 * @throws IOException If the journal cannot be read or created, or every journal is in use
+	 */
+	public static JWLDocumentJournal attach(JWLTextArea textArea, String documentId) throws IOException {
+		for (int slot = 1; slot <= MAX_SLOTS; slot++) {
+			Path file = EditJournal.fileFor(slot == 1 ? documentId : documentId + "-" + slot);
+			EditJournal journal = EditJournal.open(file);
+			if (journal == null) {
+				continue;
+			}
+
+			try {
+				String recovered = EditJournal.recover(file);
+				if (recovered != null) {
+					textArea.setText(recovered);
+					textArea.setCaretPosition(0);
+				}
+			} catch (IOException e) {
+				journal.close();
+				throw e;
+			}
+			journal.checkpoint(textArea.getText());
+
+			JWLDocumentJournal documentJournal = new JWLDocumentJournal(textArea, journal);
+			textArea.getDocument().addDocumentListener(documentJournal);
+			return documentJournal;
+		}
+		throw new IOException("Every edit journal of " + documentId + " is in use");
+	}
+
+	/**
+	 * Stops journaling and closes the journal, keeping it for recovery.
+	 */
+	public void detach() {
+		textArea.getDocument().removeDocumentListener(this);
+		journal.close();
+	}
+
+	/**
+	 * Stops journaling and deletes the journal, once the document has been saved or discarded.
+	 */
+	public void discard() {
+		textArea.getDocument().removeDocumentListener(this);
+		journal.discard();
+	}
+
+	@Override
+	public void insertUpdate(DocumentEvent e) {
+		Document document = e.getDocument();
+		try {
+			journal.inserted(e.getOffset(), document.getText(e.getOffset(), e.getLength()));
+		} catch (BadLocationException ex) {
+			return;
+		}
+		checkpointIfNeeded(document);
+	}
+
+	@Override
+	public void removeUpdate(DocumentEvent e) {
+		journal.removed(e.getOffset(), e.getLength());
+		checkpointIfNeeded(e.getDocument());
+	}
+
+	@Override
+	public void changedUpdate(DocumentEvent e) {
+		// Attribute changes are not part of the text
+	}
+
+	private void checkpointIfNeeded(Document document) {
+		if (!journal.shouldCheckpoint()) {
+			return;
+		}
+		try {
+			journal.checkpoint(document.getText(0, document.getLength()));
+		} catch (BadLocationException ignored) {
+		}
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.coreui.components.textarea;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+
+/**
+ * Gutter showing the fold markers of a {@link JWLTextArea}, meant to be used as the
+ * row header of its scroll pane. Clicking a marker collapses or expands the fold.
+ *
+ * @author Slobodan Zivanovic
+ */
+public class JWLFoldGutter extends JComponent {
+
+	private static final int WIDTH = 14;
+	private static final int MARKER_SIZE = 7;
+
+	private final JWLTextArea textArea;
+
+	public JWLFoldGutter(JWLTextArea textArea) {
+		this.textArea = textArea;
+
+		textArea.getFoldModel().addChangeListener(e -> {
+			revalidate();
+			repaint();
+		});
+		textArea.addComponentListener(new ComponentAdapter() {
+			@Override
+			public void componentResized(ComponentEvent e) {
+				revalidate();
+				repaint();
+			}
+		});
+		addMouseListener(new MouseAdapter() {
+			@Override
+			public void mousePressed(MouseEvent e) {
+				int visualLine = (e.getY() - textArea.getInsets().top) / getLineHeight();
+				JWLFoldModel folds = textArea.getFoldModel();
+				if (visualLine >= 0 && folds.toggleAtLine(folds.visualToModelLine(visualLine))) {
+					textArea.requestFocusInWindow();
+				}
+			}
+		});
+	}
+
+	@Override
+	public Dimension getPreferredSize() {
+		return new Dimension(WIDTH, textArea.getPreferredSize().height);
+	}
+
+	@Override
+	protected void paintComponent(Graphics g) {
+		Rectangle clip = g.getClipBounds();
+		g.setColor(textArea.getBackground());
+		g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+		int lineHeight = getLineHeight();
+		int top = textArea.getInsets().top;
+		JWLFoldModel folds = textArea.getFoldModel();
+
+		int lineCount = textArea.getLineCount();
+		int firstLine = folds.visualToModelLine(Math.max(0, (clip.y - top) / lineHeight));
+		int lastLine = Math.min(lineCount - 1, folds.visualToModelLine(Math.max(0, (clip.y + clip.height - top) / lineHeight)));
+
+		Graphics2D g2 = (Graphics2D) g.create();
+		try {
+			g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+			Color color = textArea.getDisabledTextColor();
+			g2.setColor(color != null ? color : Color.GRAY);
+
+			folds.forEachRegion(firstLine, lastLine, (region, headerLine, collapsed) -> {
+				if (folds.isHidden(headerLine)) {
+					return;
+				}
+				int y = top + folds.modelToVisualLine(headerLine) * lineHeight + (lineHeight - MARKER_SIZE) / 2;
+				int x = (WIDTH - MARKER_SIZE) / 2;
+				Polygon marker = new Polygon();
+				if (collapsed) {
+					marker.addPoint(x, y);
+					marker.addPoint(x + MARKER_SIZE, y + MARKER_SIZE / 2);
+					marker.addPoint(x, y + MARKER_SIZE);
+				} else {
+					marker.addPoint(x, y);
+					marker.addPoint(x + MARKER_SIZE, y);
+					marker.addPoint(x + MARKER_SIZE / 2, y + MARKER_SIZE);
+				}
+				g2.fillPolygon(marker);
+			});
+		} finally {
+			g2.dispose();
+		}
+	}
+
+	private int getLineHeight() {
+		return Math.max(1, textArea.getCachedMetrics().getHeight());
+	}
+}
@@ -0,0 +1,475 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.coreui.components.textarea;
+
+import com.slobodanzivanovic.jewel.util.task.CancellationScope;
+import com.slobodanzivanovic.jewel.util.task.CancellationToken;
+import com.slobodanzivanovic.jewel.util.task.TaskLane;
+import com.slobodanzivanovic.jewel.util.task.TaskScheduler;
+
+import javax.swing.*;
+import javax.swing.event.*;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import java.util.Arrays;
+
+/**
+ * Fold regions of a text area and the mapping between model lines and visual lines.
+ * <p>
+ * Regions come from the brace structure, falling back to indentation for blocks without braces.
+ * A region is identified by its header line and hides the lines after it up to its last line.
+ * Region bounds are anchored to line start offsets in a {@link JWLMarkerStore}, so they follow
+ * edits through document event offset shifting until the debounced rescan replaces them, and
+ * the collapsed state carries over to the rescanned region with the same header. The rescan reads
+ * and scans the text in the background lane of the {@link TaskScheduler}, is cancelled by the next
+ * edit, and only notifies listeners when the regions differ from the anchored ones.
+ * <p>
+ * Collapsed regions are flattened into sorted hidden line ranges with prefix sums of hidden lines,
+ * so converting between model and visual lines is a binary search over the collapsed folds and
+ * the views never have to look at hidden text.
+ *
+ * @author Slobodan Zivanovic
+ */
+public class JWLFoldModel implements DocumentListener, CaretListener {
+
+	private static final int RESCAN_DELAY = 300;
+
+	/**
+	 * Receives the fold regions whose header is in a line range.
+	 */
+	@FunctionalInterface
+	public interface RegionVisitor {
+		void visit(int region, int headerLine, boolean collapsed);
+	}
+
+	private final JTextArea textArea;
+	private final Timer rescanTimer;
+	private final EventListenerList listeners = new EventListenerList();
+
+	// Regions sorted by header: start offsets of the header line and of the last hidden line
+	private final JWLMarkerStore anchors = new JWLMarkerStore();
+	private int[] headerAnchors = new int[0];
+	private int[] lastAnchors = new int[0];
+	private boolean[] collapsed = new boolean[0];
+	private int regionCount;
+
+	// Flattened collapsed folds: hidden lines [hiddenFirst[k], hiddenLast[k]]
+	private int[] hiddenFirst = new int[0];
+	private int[] hiddenLast = new int[0];
+	private int[] hiddenBefore = new int[0];
+	private int hiddenCount;
+	private int totalHidden;
+	private boolean layoutValid;
+
+	private Document document;
+	private final CancellationScope scans = new CancellationScope();
+	private long documentVersion;
+
+	public JWLFoldModel(JTextArea textArea) {
+		this.textArea = textArea;
+
+		rescanTimer = new Timer(RESCAN_DELAY, e -> rescan());
+		rescanTimer.setRepeats(false);
+
+		textArea.addCaretListener(this);
+		textArea.addPropertyChangeListener("document", e -> {
+			attach((Document) e.getNewValue());
+			scans.setVersion(++documentVersion);
+			apply(new long[0]);
+			rescan();
+		});
+		attach(textArea.getDocument());
+		rescan();
+	}
+
+	public void addChangeListener(ChangeListener listener) {
+		listeners.add(ChangeListener.class, listener);
+	}
+
+	public void removeChangeListener(ChangeListener listener) {
+		listeners.remove(ChangeListener.class, listener);
+	}
+
+	/**
+	 * Returns the number of lines hidden by collapsed folds.
+	 *
+	 * @return The hidden line count
+	 */
+	public int getHiddenLineCount() {
+		validateLayout();
+		return totalHidden;
+	}
+
+	/**
+	 * Checks whether any fold is collapsed.
+	 *
+	 * @return true if some lines are hidden
+	 */
+	public boolean hasHiddenLines() {
+		return getHiddenLineCount() > 0;
+	}
+
+	/**
+	 * Checks whether a model line is hidden by a collapsed fold.
+	 *
+	 * @param line The model line
+	 * @return true if the line is hidden
+	 */
+	public boolean isHidden(int line) {
+		validateLayout();
+		int k = rangeAtOrBefore(line);
+		return k >= 0 && line <= hiddenLast[k];
+	}
+
+	/**
+	 * Converts a model line to its visual line. A hidden line maps to the visual line of its fold header.
+	 *
+	 * @param line The model line
+	 * @return The visual line
+	 */
+	public int modelToVisualLine(int line) {
+		validateLayout();
+		int k = rangeAtOrBefore(line);
+		if (k < 0) {
+			return line;
+		}
+		if (line <= hiddenLast[k]) {
+			return hiddenFirst[k] - 1 - hiddenBefore[k];
+		}
+		return line - hiddenBefore[k] - (hiddenLast[k] - hiddenFirst[k] + 1);
+	}
+
+	/**
+	 * Converts a visual line to the model line displayed there.
+	 *
+	 * @param visualLine The visual line
+	 * @return The model line
+	 */
+	public int visualToModelLine(int visualLine) {
+		validateLayout();
+		// Find the last collapsed fold whose first hidden line is at or before the visual line
+		int low = 0;
+		int high = hiddenCount - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (hiddenFirst[mid] - hiddenBefore[mid] <= visualLine) {
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		if (high < 0) {
+			return visualLine;
+		}
+		return visualLine + hiddenBefore[high] + (hiddenLast[high] - hiddenFirst[high] + 1);
+	}
+
+	/**
+	 * Returns the last model line of the run of visible lines starting at the given visible line.
+	 *
+	 * @param line       A visible model line
+	 * @param lineCount  The number of model lines
+	 * @return The last line before the next hidden range, or the last line of the document
+	 */
+	public int getVisibleRunEnd(int line, int lineCount) {
+		validateLayout();
+		int k = rangeAtOrBefore(line) + 1;
+		return k < hiddenCount ? hiddenFirst[k] - 1 : lineCount - 1;
+	}
+
+	/**
+	 * Visits the regions whose header line is in {@code [firstLine, lastLine]}, in line order.
+	 *
+	 * @param firstLine The first model line
+	 * @param lastLine  The last model line
+	 * @param visitor   Receives each region
+	 */
+	public void forEachRegion(int firstLine, int lastLine, RegionVisitor visitor) {
+		Element root = textArea.getDocument().getDefaultRootElement();
+		for (int region = firstRegionAtOrAfter(firstLine); region < regionCount; region++) {
+			int header = root.getElementIndex(anchors.getOffset(headerAnchors[region]));
+			if (header > lastLine) {
+				break;
+			}
+			if (lastLineOf(region, root) > header) {
+				visitor.visit(region, header, collapsed[region]);
+			}
+		}
+	}
+
+	/**
+	 * Collapses or expands the fold whose header is at the given line.
+	 *
+	 * @param line The model line of the fold header
+	 * @return true if a fold was toggled
+	 */
+	public boolean toggleAtLine(int line) {
+		int region = regionWithHeader(line);
+		if (region < 0) {
+			return false;
+		}
+		collapsed[region] = !collapsed[region];
+		fireFoldsChanged();
+		return true;
+	}
+
+	/**
+	 * Collapses the innermost expanded fold containing the given line.
+	 *
+	 * @param line The model line
+	 */
+	public void collapseAt(int line) {
+		Element root = textArea.getDocument().getDefaultRootElement();
+		for (int region = firstRegionAtOrAfter(line + 1) - 1; region >= 0; region--) {
+			int header = root.getElementIndex(anchors.getOffset(headerAnchors[region]));
+			if (!collapsed[region] && line <= lastLineOf(region, root) && lastLineOf(region, root) > header) {
+				collapsed[region] = true;
+				fireFoldsChanged();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Expands every collapsed fold that hides or has its header at the given line.
+	 *
+	 * @param line The model line
+	 */
+	public void expandAt(int line) {
+		Element root = textArea.getDocument().getDefaultRootElement();
+		boolean changed = false;
+		for (int region = 0; region < regionCount; region++) {
+			if (collapsed[region]) {
+				int header = root.getElementIndex(anchors.getOffset(headerAnchors[region]));
+				if (header > line) {
+					break;
+				}
+				if (line <= lastLineOf(region, root)) {
+					collapsed[region] = false;
+					changed = true;
+				}
+			}
+		}
+		if (changed) {
+			fireFoldsChanged();
+		}
+	}
+
+	@Override
+	public void insertUpdate(DocumentEvent e) {
+		documentChanged();
+	}
+
+	@Override
+	public void removeUpdate(DocumentEvent e) {
+		documentChanged();
+	}
+
+	@Override
+	public void changedUpdate(DocumentEvent e) {
+	}
+
+	@Override
+	public void caretUpdate(CaretEvent e) {
+		if (hiddenCount == 0 && layoutValid) {
+			return;
+		}
+		try {
+			int line = textArea.getLineOfOffset(e.getDot());
+			if (isHidden(line)) {
+				expandAt(line);
+			}
+		} catch (BadLocationException ignored) {
+		}
+	}
+
+	private void documentChanged() {
+		// Anchors already moved with the edit, only the line numbers derived from them are stale
+		layoutValid = false;
+		scans.setVersion(++documentVersion);
+		rescanTimer.restart();
+	}
+
+	private void attach(Document doc) {
+		if (document != null) {
+			document.removeDocumentListener(this);
+			document.removeDocumentListener(anchors);
+		}
+		document = doc;
+		if (document != null) {
+			// Listeners run in reverse order, so the anchors move before this model reads them
+			document.addDocumentListener(this);
+			document.addDocumentListener(anchors);
+		}
+	}
+
+	/**
+	 * Scans the text for regions off the EDT. The regions are applied on the EDT unless the
+	 * document changed in the meantime.
+	 */
+	private void rescan() {
+		Document doc = textArea.getDocument();
+		int tabSize = textArea.getTabSize();
+		CancellationToken token = scans.next();
+		TaskScheduler.getInstance().submit(TaskLane.BACKGROUND, token, t -> {
+			// Read under the document's read lock, an edit meanwhile cancels the token
+			String[] text = {""};
+			doc.render(() -> {
+				try {
+					text[0] = doc.getText(0, doc.getLength());
+				} catch (BadLocationException ignored) {
+				}
+			});
+			t.throwIfCancelled();
+			return JWLFoldScanner.scan(text[0], tabSize);
+		}, this::apply);
+	}
+
+	/**
+	 * Replaces the regions with scanned ones, keeping the collapsed state of regions whose
+	 * header survived, then notifies listeners if the regions changed.
+	 */
+	private void apply(long[] regions) {
+		Element root = textArea.getDocument().getDefaultRootElement();
+		int[] headerOffsets = new int[regions.length];
+		int[] lastOffsets = new int[regions.length];
+		boolean changed = regions.length != regionCount;
+		for (int region = 0; region < regions.length; region++) {
+			headerOffsets[region] = root.getElement((int) (regions[region] >>> 32)).getStartOffset();
+			lastOffsets[region] = root.getElement((int) regions[region]).getStartOffset();
+			if (!changed && (headerOffsets[region] != anchors.getOffset(headerAnchors[region])
+				|| lastOffsets[region] != anchors.getOffset(lastAnchors[region]))) {
+				changed = true;
+			}
+		}
+		if (!changed) {
+			return;
+		}
+
+		int[] collapsedHeaders = new int[regionCount];
+		int collapsedCount = 0;
+		for (int region = 0; region < regionCount; region++) {
+			if (collapsed[region]) {
+				collapsedHeaders[collapsedCount++] = anchors.getOffset(headerAnchors[region]);
+			}
+		}
+		Arrays.sort(collapsedHeaders, 0, collapsedCount);
+
+		anchors.clear();
+		headerAnchors = new int[regions.length];
+		lastAnchors = new int[regions.length];
+		collapsed = new boolean[regions.length];
+		regionCount = regions.length;
+		for (int region = 0; region < regionCount; region++) {
+			headerAnchors[region] = anchors.add(headerOffsets[region]);
+			lastAnchors[region] = anchors.add(lastOffsets[region]);
+			collapsed[region] = Arrays.binarySearch(collapsedHeaders, 0, collapsedCount, headerOffsets[region]) >= 0;
+		}
+
+		fireFoldsChanged();
+	}
+
+	private void validateLayout() {
+		if (layoutValid) {
+			return;
+		}
+
+		Element root = textArea.getDocument().getDefaultRootElement();
+		if (hiddenFirst.length < regionCount) {
+			hiddenFirst = new int[regionCount];
+			hiddenLast = new int[regionCount];
+			hiddenBefore = new int[regionCount];
+		}
+
+		hiddenCount = 0;
+		totalHidden = 0;
+		int coveredUntil = -1;
+		for (int region = 0; region < regionCount; region++) {
+			if (!collapsed[region]) {
+				continue;
+			}
+			int header = root.getElementIndex(anchors.getOffset(headerAnchors[region]));
+			int last = lastLineOf(region, root);
+			// Skip folds nested in an already hidden range, and folds an edit made empty
+			if (header <= coveredUntil || last <= header) {
+				continue;
+			}
+			hiddenFirst[hiddenCount] = header + 1;
+			hiddenLast[hiddenCount] = last;
+			hiddenBefore[hiddenCount] = totalHidden;
+			totalHidden += last - header;
+			hiddenCount++;
+			coveredUntil = last;
+		}
+		layoutValid = true;
+	}
+
+	private int lastLineOf(int region, Element root) {
+		return root.getElementIndex(anchors.getOffset(lastAnchors[region]));
+	}
+
+	/**
+	 * Returns the index of the last hidden range starting at or before the line, or -1.
+	 */
+	private int rangeAtOrBefore(int line) {
+		int low = 0;
+		int high = hiddenCount - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (hiddenFirst[mid] <= line) {
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return high;
+	}
+
+	private int firstRegionAtOrAfter(int line) {
+		Element root = textArea.getDocument().getDefaultRootElement();
+		int low = 0;
+		int high = regionCount - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (root.getElementIndex(anchors.getOffset(headerAnchors[mid])) < line) {
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+
+	private int regionWithHeader(int line) {
+		Element root = textArea.getDocument().getDefaultRootElement();
+		int region = firstRegionAtOrAfter(line);
+		if (region < regionCount && root.getElementIndex(anchors.getOffset(headerAnchors[region])) == line
+			&& lastLineOf(region, root) > line) {
+			return region;
+		}
+		return -1;
+	}
+
+	private void fireFoldsChanged() {
+		layoutValid = false;
+		ChangeEvent event = new ChangeEvent(this);
+		for (ChangeListener listener : listeners.getListeners(ChangeListener.class)) {
+			listener.stateChanged(event);
+		}
+	}
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.coreui.components.textarea;
+
+import java.util.Arrays;
+
+/**
+ * Finds foldable regions in text.
+ * <p>
+ * A brace pair spanning more than two lines folds the lines between the opening and the closing
+ * line, so the closing brace stays visible. A line followed by more deeply indented lines folds
+ * those lines, unless a brace region already starts on it. Braces inside string and character
+ * literals and comments are ignored.
+ *
+ * @author Slobodan Zivanovic
+ */
+final class JWLFoldScanner {
+
+	private JWLFoldScanner() {
+	}
+
+	/**
+	 * Scans the text for fold regions.
+	 *
+	 * @param text    The document text
+	 * @param tabSize The tab size used to measure indentation
+	 * @return The regions sorted by header line, each packed as {@code headerLine << 32 | lastHiddenLine}
+	 */
+	static long[] scan(String text, int tabSize) {
+		Regions regions = new Regions();
+		scanBraces(text, regions);
+		int braceCount = regions.count;
+		scanIndentation(text, Math.max(1, tabSize), regions);
+		return regions.sortedUnique(braceCount);
+	}
+
+	private static void scanBraces(String text, Regions regions) {
+		int[] openLines = new int[64];
+		int depth = 0;
+		int line = 0;
+		int length = text.length();
+
+		for (int i = 0; i < length; i++) {
+			char c = text.charAt(i);
+			switch (c) {
+				case '\n' -> line++;
+				case '{' -> {
+					if (depth == openLines.length) {
+						openLines = Arrays.copyOf(openLines, depth * 2);
+					}
+					openLines[depth++] = line;
+				}
+				case '}' -> {
+					if (depth > 0) {
+						int header = openLines[--depth];
+						if (line - header >= 2) {
+							regions.add(header, line - 1);
+						}
+					}
+				}
+				case '"', '\'' -> {
+					// Skip the literal, never past the end of the line
+					int j = i + 1;
+					while (j < length && text.charAt(j) != c && text.charAt(j) != '\n') {
+						// A trailing backslash must not skip the line break
+						boolean escape = text.charAt(j) == '\\' && j + 1 < length && text.charAt(j + 1) != '\n';
+						j += escape ? 2 : 1;
+					}
+					i = Math.min(j, length - 1);
+					if (i < length && text.charAt(i) == '\n') {
+						line++;
+					}
+				}
+				case '/' -> {
+					if (i + 1 < length && text.charAt(i + 1) == '/') {
+						int end = text.indexOf('\n', i);
+						i = (end < 0 ? length : end) - 1;
+					} else if (i + 1 < length && text.charAt(i + 1) == '*') {
+						int end = text.indexOf("*/", i + 2);
+						end = end < 0 ? length : end + 2;
+						for (int j = i; j < end; j++) {
+							if (text.charAt(j) == '\n') {
+								line++;
+							}
+						}
+						i = end - 1;
+					}
+				}
+				default -> {
+				}
+			}
+		}
+	}
+
+	private static void scanIndentation(String text, int tabSize, Regions regions) {
+		// Stack of (line, indent) for lines that may start an indentation block
+		int[] stackLines = new int[64];
+		int[] stackIndents = new int[64];
+		int depth = 0;
+		int lastNonBlank = -1;
+
+		int line = 0;
+		int lineStart = 0;
+		int length = text.length();
+		while (lineStart <= length) {
+			int lineEnd = text.indexOf('\n', lineStart);
+			if (lineEnd < 0) {
+				lineEnd = length;
+			}
+
+			int indent = 0;
+			int i = lineStart;
+			while (i < lineEnd && (text.charAt(i) == ' ' || text.charAt(i) == '\t')) {
+				indent = text.charAt(i) == '\t' ? (indent / tabSize + 1) * tabSize : indent + 1;
+				i++;
+			}
+
+			if (i < lineEnd) {
+				while (depth > 0 && stackIndents[depth - 1] >= indent) {
+					depth--;
+					if (lastNonBlank > stackLines[depth]) {
+						regions.add(stackLines[depth], lastNonBlank);
+					}
+				}
+				if (depth == stackLines.length) {
+					stackLines = Arrays.copyOf(stackLines, depth * 2);
+					stackIndents = Arrays.copyOf(stackIndents, depth * 2);
+				}
+				stackLines[depth] = line;
+				stackIndents[depth] = indent;
+				depth++;
+				lastNonBlank = line;
+			}
+
+			line++;
+			lineStart = lineEnd + 1;
+		}
+
+		while (depth > 0) {
+			depth--;
+			if (lastNonBlank > stackLines[depth]) {
+				regions.add(stackLines[depth], lastNonBlank);
+			}
+		}
+	}
+
+	private static final class Regions {
+		private long[] packed = new long[64];
+		private int count;
+
+		private void add(int header, int last) {
+			if (count == packed.length) {
+				packed = Arrays.copyOf(packed, count * 2);
+			}
+			packed[count++] = ((long) header << 32) | last;
+		}
+
+		/**
+		 * Sorts the regions and keeps one per header line: a brace region wins over an
+		 * indentation region, otherwise the larger region wins.
+		 */
+		private long[] sortedUnique(int braceCount) {
+			boolean[] hasBraceRegion = new boolean[0];
+			for (int i = 0; i < braceCount; i++) {
+				int header = (int) (packed[i] >>> 32);
+				if (header >= hasBraceRegion.length) {
+					hasBraceRegion = Arrays.copyOf(hasBraceRegion, Math.max(header + 1, hasBraceRegion.length * 2));
+				}
+				hasBraceRegion[header] = true;
+			}
+
+			int write = 0;
+			for (int i = 0; i < count; i++) {
+				int header = (int) (packed[i] >>> 32);
+				if (i < braceCount || header >= hasBraceRegion.length || !hasBraceRegion[header]) {
+					packed[write++] = packed[i];
+				}
+			}
+			Arrays.sort(packed, 0, write);
+
+			int unique = 0;
+			for (int i = 0; i < write; i++) {
+				if (unique > 0 && (packed[unique - 1] >>> 32) == (packed[i] >>> 32)) {
+					packed[unique - 1] = packed[i];
+				} else {
+					packed[unique++] = packed[i];
+				}
+			}
+			return Arrays.copyOf(packed, unique);
+		}
+	}
+}
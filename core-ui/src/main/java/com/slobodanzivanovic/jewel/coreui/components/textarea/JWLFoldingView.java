@@ -0,0 +1,397 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.coreui.components.textarea;
+
+import com.slobodanzivanovic.jewel.laf.CachedFontMetrics;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.text.*;
+import java.awt.*;
+
+/**
+ * A {@link PlainView} that leaves out the lines hidden by collapsed folds.
+ * <p>
+ * Line geometry goes through the {@link JWLFoldModel} line mapping, so layout and hit testing
+ * cost a binary search over the collapsed folds and hidden lines are never measured. Painting
+ * splits the clip into runs of consecutive visible lines and lets {@link PlainView} paint each
+ * run with its allocation shifted up by the lines hidden above it.
+ * <p>
+ * The line height and the character advances are those of the cached metrics of the text area,
+ * and the preferred width is the longest line counted in characters times the advance of the
+ * font. A zoom therefore only swaps the metrics, the lines are not measured again as PlainView
+ * does for a new font.
+ *
+ * @author Slobodan Zivanovic
+ */
+public class JWLFoldingView extends PlainView {
+
+	private static final String PLACEHOLDER = "...";
+
+	// Set while PlainView paints a run, whose allocation is already shifted to visual positions
+	private boolean painting;
+	private final Segment lineText = new Segment();
+	// The longest line and its length in characters, with tabs expanded, or null until measured
+	private Element longestLine;
+	private int longestColumns;
+
+	public JWLFoldingView(Element elem) {
+		super(elem);
+	}
+
+	/**
+	 * Takes the font metrics from the cached metrics of the text area instead of measuring every
+	 * line when the font changes.
+	 */
+	@Override
+	protected void updateMetrics() {
+		if (getContainer() instanceof JWLTextArea host) {
+			metrics = host.getCachedMetrics().getFontMetrics();
+		} else {
+			super.updateMetrics();
+		}
+	}
+
+	@Override
+	public float getPreferredSpan(int axis) {
+		if (!(getContainer() instanceof JWLTextArea host)) {
+			return super.getPreferredSpan(axis);
+		}
+
+		CachedFontMetrics cached = host.getCachedMetrics();
+		switch (axis) {
+			case X_AXIS -> {
+				if (longestLine == null) {
+					findLongestLine();
+				}
+				return longestColumns * cached.charWidth('m');
+			}
+			case Y_AXIS -> {
+				JWLFoldModel folds = getFoldModel();
+				int hiddenLines = folds != null ? folds.getHiddenLineCount() : 0;
+				return (getElement().getElementCount() - hiddenLines) * cached.getHeight();
+			}
+			default -> throw new IllegalArgumentException("Invalid axis: " + axis);
+		}
+	}
+
+	/**
+	 * Uses the tab stops of {@link PlainView}, computed from the cached advance of the text area.
+	 */
+	@Override
+	public float nextTabStop(float x, int tabOffset) {
+		if (!(getContainer() instanceof JWLTextArea host)) {
+			return super.nextTabStop(x, tabOffset);
+		}
+
+		int tabWidth = getTabSize() * host.getCachedMetrics().charWidth('m');
+		if (tabWidth == 0) {
+			return x;
+		}
+		// The allocation of the view starts at the left inset, as the tab base of PlainView
+		int tabBase = host.getInsets().left;
+		return tabBase + ((int) ((x - tabBase) / tabWidth) + 1) * tabWidth;
+	}
+
+	/**
+	 * Repaints the changed lines and keeps the longest line up to date, as {@link PlainView} does
+	 * but counting characters instead of measuring the lines with the font.
+	 */
+	@Override
+	protected void updateDamage(DocumentEvent changes, Shape a, ViewFactory f) {
+		Component host = getContainer();
+		Element map = getElement();
+		DocumentEvent.ElementChange ec = changes.getChange(map);
+		Element[] added = ec != null ? ec.getChildrenAdded() : null;
+		Element[] removed = ec != null ? ec.getChildrenRemoved() : null;
+
+		if ((added != null && added.length > 0) || (removed != null && removed.length > 0)) {
+			if (removed != null && longestLine != null) {
+				for (Element line : removed) {
+					if (line == longestLine) {
+						longestLine = null;
+						break;
+					}
+				}
+			}
+			if (added != null && longestLine != null) {
+				for (Element line : added) {
+					measureLine(line);
+				}
+			}
+			preferenceChanged(null, true, true);
+			host.repaint();
+			return;
+		}
+
+		int line = map.getElementIndex(changes.getOffset());
+		damageLineRange(line, line, a, host);
+		if (longestLine == null) {
+			return;
+		}
+		Element lineElement = map.getElement(line);
+		if (lineElement == longestLine && changes.getType() == DocumentEvent.EventType.REMOVE) {
+			// The line may no longer be the longest one
+			longestLine = null;
+			preferenceChanged(null, true, false);
+		} else if (lineElement == longestLine || changes.getType() == DocumentEvent.EventType.INSERT) {
+			int columns = longestColumns;
+			measureLine(lineElement);
+			if (longestColumns != columns) {
+				preferenceChanged(null, true, false);
+			}
+		}
+	}
+
+	/**
+	 * Maps a model line to the rectangle of its visual line. Hidden lines collapse to an empty
+	 * rectangle just above the bottom of their fold header, so row navigation stops at the fold.
+	 */
+	@Override
+	protected Rectangle lineToRect(Shape a, int line) {
+		JWLFoldModel folds = getFoldModel();
+		if (painting || folds == null || !folds.hasHiddenLines()) {
+			return super.lineToRect(a, line);
+		}
+
+		Rectangle r = super.lineToRect(a, folds.modelToVisualLine(line));
+		if (r != null && folds.isHidden(line)) {
+			r.y += r.height - 1;
+			r.height = 0;
+		}
+		return r;
+	}
+
+	@Override
+	public int viewToModel(float x, float y, Shape a, Position.Bias[] bias) {
+		JWLFoldModel folds = getFoldModel();
+		updateMetrics();
+		if (folds == null || !folds.hasHiddenLines() || metrics == null) {
+			return super.viewToModel(x, y, a, bias);
+		}
+
+		Rectangle alloc = a.getBounds();
+		int fontHeight = metrics.getHeight();
+		if (y < alloc.y || fontHeight <= 0) {
+			return super.viewToModel(x, y, a, bias);
+		}
+
+		int visualLine = (int) ((y - alloc.y) / fontHeight);
+		int line = folds.visualToModelLine(visualLine);
+		float modelY = alloc.y + line * fontHeight + (y - alloc.y - visualLine * fontHeight);
+		alloc.height += folds.getHiddenLineCount() * fontHeight;
+		return super.viewToModel(x, modelY, alloc, bias);
+	}
+
+	@Override
+	public int getNextVisualPositionFrom(int pos, Position.Bias b, Shape a, int direction, Position.Bias[] biasRet)
+		throws BadLocationException {
+		JWLFoldModel folds = getFoldModel();
+		if (pos < 0 || (direction != NORTH && direction != SOUTH) || folds == null || !folds.hasHiddenLines()) {
+			return super.getNextVisualPositionFrom(pos, b, a, direction, biasRet);
+		}
+
+		// Step over the hidden lines instead of walking through their offsets
+		Element map = getElement();
+		int visualLine = folds.modelToVisualLine(map.getElementIndex(pos)) + (direction == NORTH ? -1 : 1);
+		if (visualLine < 0 || visualLine >= map.getElementCount() - folds.getHiddenLineCount()) {
+			return -1;
+		}
+
+		Rectangle from = modelToView(pos, a, b).getBounds();
+		Caret caret = ((JTextComponent) getContainer()).getCaret();
+		Point magic = caret != null ? caret.getMagicCaretPosition() : null;
+		int x = magic != null ? magic.x : from.x;
+
+		Rectangle alloc = a.getBounds();
+		int fontHeight = metrics.getHeight();
+		biasRet[0] = Position.Bias.Forward;
+		return viewToModel(x, alloc.y + visualLine * fontHeight + fontHeight / 2f, a, biasRet);
+	}
+
+	@Override
+	public void paint(Graphics g, Shape a) {
+		JWLFoldModel folds = getFoldModel();
+		if (folds == null || !folds.hasHiddenLines()) {
+			super.paint(g, a);
+			return;
+		}
+
+		updateMetrics();
+		int fontHeight = metrics.getHeight();
+		if (fontHeight <= 0) {
+			return;
+		}
+
+		Rectangle alloc = a.getBounds();
+		Rectangle clip = g.getClipBounds();
+		if (clip == null) {
+			clip = alloc;
+		}
+
+		int lineCount = getElement().getElementCount();
+		int visualCount = lineCount - folds.getHiddenLineCount();
+		int visualLine = Math.max(0, (clip.y - alloc.y) / fontHeight);
+		int lastVisualLine = Math.min(visualCount - 1, (clip.y + clip.height - alloc.y - 1) / fontHeight);
+
+		while (visualLine <= lastVisualLine) {
+			int line = folds.visualToModelLine(visualLine);
+			int runEnd = folds.getVisibleRunEnd(line, lineCount);
+			int runLast = Math.min(runEnd, line + lastVisualLine - visualLine);
+
+			Rectangle shifted = new Rectangle(alloc.x, alloc.y + (visualLine - line) * fontHeight,
+				alloc.width, lineCount * fontHeight);
+			Graphics runGraphics = g.create();
+			try {
+				runGraphics.clipRect(clip.x, alloc.y + visualLine * fontHeight, clip.width, (runLast - line + 1) * fontHeight);
+				painting = true;
+				super.paint(runGraphics, shifted);
+			} finally {
+				painting = false;
+				runGraphics.dispose();
+			}
+
+			if (runLast == runEnd && runEnd < lineCount - 1) {
+				paintPlaceholder(g, a, runEnd);
+			}
+			visualLine += runLast - line + 1;
+		}
+	}
+
+	/**
+	 * Computes the caret rectangle of an offset as {@link #modelToView} does, from the cached line
+	 * height and character advances of the text area instead of its {@link FontMetrics}.
+	 *
+	 * @param host   The text area of this view
+	 * @param offset The offset in the document
+	 * @return The caret rectangle, one pixel wide
+	 * @throws BadLocationException If the offset is not in the document
+	 */
+	Rectangle caretBounds(JWLTextArea host, int offset) throws BadLocationException {
+		Document doc = getDocument();
+		if (offset < 0 || offset > doc.getLength()) {
+			throw new BadLocationException("Invalid offset", offset);
+		}
+
+		CachedFontMetrics cached = host.getCachedMetrics();
+		int height = cached.getHeight();
+		Insets insets = host.getInsets();
+		Element map = getElement();
+		int line = map.getElementIndex(offset);
+		JWLFoldModel folds = getFoldModel();
+		int y = insets.top + (folds != null ? folds.modelToVisualLine(line) : line) * height;
+		if (folds != null && folds.isHidden(line)) {
+			// As lineToRect, at the bottom of the fold header
+			y += height - 1;
+		}
+
+		int lineStart = map.getElement(line).getStartOffset();
+		doc.getText(lineStart, offset - lineStart, lineText);
+		return new Rectangle(insets.left + tabbedWidth(cached, lineText), y, 1, height);
+	}
+
+	/**
+	 * Gets the model line shown at a y coordinate, clamped to the visible lines.
+	 *
+	 * @param host The text area of this view
+	 * @param y    The y coordinate in the text area
+	 * @return The model line
+	 */
+	int lineAtY(JWLTextArea host, int y) {
+		int height = Math.max(1, host.getCachedMetrics().getHeight());
+		JWLFoldModel folds = getFoldModel();
+		int visualCount = getElement().getElementCount() - (folds != null ? folds.getHiddenLineCount() : 0);
+		int visualLine = Math.max(0, Math.min(visualCount - 1, Math.floorDiv(y - host.getInsets().top, height)));
+		return folds != null ? folds.visualToModelLine(visualLine) : visualLine;
+	}
+
+	private void findLongestLine() {
+		Element map = getElement();
+		longestColumns = 0;
+		longestLine = map.getElement(0);
+		for (int i = 0, n = map.getElementCount(); i < n; i++) {
+			measureLine(map.getElement(i));
+		}
+	}
+
+	/**
+	 * Counts the characters of a line, tabs up to the next tab stop, and keeps it if it is the
+	 * longest line.
+	 */
+	private void measureLine(Element line) {
+		int start = line.getStartOffset();
+		int end = Math.min(line.getEndOffset(), getDocument().getLength() + 1) - 1;
+		try {
+			getDocument().getText(start, end - start, lineText);
+		} catch (BadLocationException e) {
+			return;
+		}
+
+		int tabSize = getTabSize();
+		int columns = 0;
+		for (int i = lineText.offset, n = lineText.offset + lineText.count; i < n; i++) {
+			columns = lineText.array[i] == '\t' && tabSize > 0 ? (columns / tabSize + 1) * tabSize : columns + 1;
+		}
+		if (columns > longestColumns || line == longestLine) {
+			longestColumns = columns;
+			longestLine = line;
+		}
+	}
+
+	/**
+	 * Measures text from the start of a line with the tab stops of {@link PlainView}.
+	 */
+	private int tabbedWidth(CachedFontMetrics cached, Segment text) {
+		int tabWidth = getTabSize() * cached.charWidth('m');
+		int width = 0;
+		int runStart = text.offset;
+		int end = text.offset + text.count;
+		for (int i = text.offset; i < end; i++) {
+			if (text.array[i] == '\t') {
+				width += cached.charsWidth(text, runStart - text.offset, i - text.offset);
+				width = tabWidth > 0 ? (width / tabWidth + 1) * tabWidth : width;
+				runStart = i + 1;
+			}
+		}
+		return width + cached.charsWidth(text, runStart - text.offset, end - text.offset);
+	}
+
+	/**
+	 * Paints the marker after the header line of a collapsed fold.
+	 */
+	private void paintPlaceholder(Graphics g, Shape a, int line) {
+		JTextComponent host = (JTextComponent) getContainer();
+		Element lineElement = getElement().getElement(line);
+		try {
+			Rectangle end = modelToView(lineElement.getEndOffset() - 1, a, Position.Bias.Forward).getBounds();
+			CachedFontMetrics cached = ((JWLTextArea) host).getCachedMetrics();
+			int x = end.x + cached.charWidth(' ');
+			int width = cached.stringWidth(PLACEHOLDER) + 6;
+
+			Color color = host.getDisabledTextColor();
+			g.setColor(color != null ? color : Color.GRAY);
+			g.setFont(host.getFont());
+			g.drawRoundRect(x, end.y + 1, width, end.height - 3, 4, 4);
+			g.drawString(PLACEHOLDER, x + 3, end.y + cached.getAscent());
+		} catch (BadLocationException ignored) {
+		}
+	}
+
+	private JWLFoldModel getFoldModel() {
+		// The view may be created while the text area is still being constructed
+		return getContainer() instanceof JWLTextArea textArea ? textArea.getFoldModel() : null;
+	}
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.coreui.components.textarea;
+
+import javax.swing.*;
+import javax.swing.text.Element;
+import javax.swing.text.View;
+import javax.swing.text.ViewFactory;
+
+/**
+ * Creates a {@link JWLFoldingView} for unwrapped text, installed into the look and feel's UI
+ * through {@link com.slobodanzivanovic.jewel.laf.TextAreaUIs}. Wrapped and bidirectional text
+ * keep the default views of the look and feel and are not folded.
+ *
+ * @author Slobodan Zivanovic
+ */
+class JWLFoldingViewFactory implements ViewFactory {
+
+	private final JTextArea area;
+
+	JWLFoldingViewFactory(JTextArea area) {
+		this.area = area;
+	}
+
+	@Override
+	public View create(Element elem) {
+		if (!area.getLineWrap() && !Boolean.TRUE.equals(elem.getDocument().getProperty("i18n"))) {
+			return new JWLFoldingView(elem);
+		}
+		return null;
+	}
+}
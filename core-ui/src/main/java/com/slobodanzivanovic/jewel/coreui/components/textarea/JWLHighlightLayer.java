@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.coreui.components.textarea;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.text.Highlighter;
+import javax.swing.text.Position;
+import java.util.Arrays;
+
+/**
+ * A set of highlights sharing one painter inside a {@link JWLHighlighter}.
+ * <p>
+ * Ranges are indexed by their start offset in a {@link JWLMarkerStore}. Most highlights
+ * (search hits, occurrences, diagnostics) are short, so a range query only has to look at
+ * starts in {@code [from - maxLength, to]}; the few ranges longer than {@link #LONG_THRESHOLD}
+ * are kept in a separate list and checked individually. Starts have forward bias and ends
+ * backward bias, so typing at either edge does not grow a highlight.
+ *
+ * @author Slobodan Zivanovic
+ */
+public class JWLHighlightLayer {
+
+	static final int LONG_THRESHOLD = 4096;
+
+	/**
+	 * Receives the highlights of a range query.
+	 */
+	@FunctionalInterface
+	public interface RangeVisitor {
+		void visit(int id, int start, int end);
+	}
+
+	private final JWLHighlighter highlighter;
+	private final Highlighter.HighlightPainter painter;
+
+	private final JWLMarkerStore starts = new JWLMarkerStore();
+	private final JWLMarkerStore ends = new JWLMarkerStore();
+	private int[] endHandles = new int[16];
+	private boolean[] longRange = new boolean[16];
+	private int[] longIds = new int[4];
+	private int longCount;
+	private int maxLength;
+	private int generation;
+
+	JWLHighlightLayer(JWLHighlighter highlighter, Highlighter.HighlightPainter painter) {
+		this.highlighter = highlighter;
+		this.painter = painter;
+	}
+
+	public Highlighter.HighlightPainter getPainter() {
+		return painter;
+	}
+
+	/**
+	 * Returns the number of highlights in this layer.
+	 *
+	 * @return The highlight count
+	 */
+	public int size() {
+		return starts.size();
+	}
+
+	/**
+	 * Returns a counter that changes whenever the layer is cleared. Ids handed out
+	 * before a clear are only valid while the generation is unchanged.
+	 *
+	 * @return The current generation
+	 */
+	public int getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Adds a highlight and repaints its range.
+	 *
+	 * @param start The start offset
+	 * @param end   The end offset
+	 * @return The id of the highlight within this layer
+	 */
+	public int add(int start, int end) {
+		int id = addSilently(start, end);
+		highlighter.damageRange(start, end);
+		return id;
+	}
+
+	/**
+	 * Adds many highlights at once with a single repaint. Ranges do not need to be sorted.
+	 *
+	 * @param rangeStarts The start offsets
+	 * @param rangeEnds   The end offsets
+	 * @param count       The number of ranges to add
+	 */
+	public void addAll(int[] rangeStarts, int[] rangeEnds, int count) {
+		for (int i = 0; i < count; i++) {
+			addSilently(rangeStarts[i], rangeEnds[i]);
+		}
+		if (count > 0) {
+			highlighter.damageVisible();
+		}
+	}
+
+	/**
+	 * Removes a highlight and repaints its range.
+	 *
+	 * @param id The highlight id
+	 */
+	public void remove(int id) {
+		int start = getStart(id);
+		if (start < 0) {
+			return;
+		}
+		int end = getEnd(id);
+
+		if (longRange[id]) {
+			for (int i = 0; i < longCount; i++) {
+				if (longIds[i] == id) {
+					longIds[i] = longIds[--longCount];
+					break;
+				}
+			}
+			longRange[id] = false;
+		}
+		ends.remove(endHandles[id]);
+		starts.remove(id);
+		highlighter.damageRange(start, end);
+	}
+
+	/**
+	 * Removes all highlights of this layer with a single repaint.
+	 */
+	public void clear() {
+		generation++;
+		if (starts.size() == 0) {
+			return;
+		}
+		starts.clear();
+		ends.clear();
+		Arrays.fill(longRange, false);
+		longCount = 0;
+		maxLength = 0;
+		highlighter.damageVisible();
+	}
+
+	/**
+	 * Returns the start offset of a highlight.
+	 *
+	 * @param id The highlight id
+	 * @return The start offset, or -1 if the highlight was removed
+	 */
+	public int getStart(int id) {
+		return starts.getOffset(id);
+	}
+
+	/**
+	 * Returns the end offset of a highlight.
+	 *
+	 * @param id The highlight id
+	 * @return The end offset, or -1 if the highlight was removed
+	 */
+	public int getEnd(int id) {
+		int start = starts.getOffset(id);
+		return start < 0 ? -1 : Math.max(start, ends.getOffset(endHandles[id]));
+	}
+
+	/**
+	 * Visits the highlights intersecting {@code [from, to]}.
+	 *
+	 * @param from    The first offset of the range
+	 * @param to      The last offset of the range
+	 * @param visitor Receives each intersecting highlight
+	 */
+	public void forEachIntersecting(int from, int to, RangeVisitor visitor) {
+		if (starts.size() == 0) {
+			return;
+		}
+
+		starts.forEachInRange(Math.max(0, from - maxLength), to, (id, start) -> {
+			if (!longRange[id]) {
+				int end = Math.max(start, ends.getOffset(endHandles[id]));
+				if (end >= from) {
+					visitor.visit(id, start, end);
+				}
+			}
+		});
+
+		for (int i = 0; i < longCount; i++) {
+			int id = longIds[i];
+			int start = starts.getOffset(id);
+			int end = Math.max(start, ends.getOffset(endHandles[id]));
+			if (start <= to && end >= from) {
+				visitor.visit(id, start, end);
+			}
+		}
+	}
+
+	void insertUpdate(DocumentEvent e) {
+		starts.insertUpdate(e);
+		ends.insertUpdate(e);
+		int offset = e.getOffset();
+		if (starts.size() == 0 || offset == 0) {
+			return;
+		}
+		// Only the short highlights starting before the insert can span it and have grown,
+		// their starts did not move and lie within the previous maxLength of the offset
+		int insertEnd = offset + e.getLength();
+		starts.forEachInRange(Math.max(0, offset - maxLength), offset - 1, (id, start) -> {
+			if (!longRange[id]) {
+				int end = ends.getOffset(endHandles[id]);
+				if (end >= insertEnd && end - start > maxLength) {
+					if (end - start > LONG_THRESHOLD) {
+						markLong(id);
+					} else {
+						maxLength = end - start;
+					}
+				}
+			}
+		});
+	}
+
+	void removeUpdate(DocumentEvent e) {
+		starts.removeUpdate(e);
+		ends.removeUpdate(e);
+	}
+
+	void trimToSize() {
+		starts.trimToSize();
+		ends.trimToSize();
+	}
+
+	private int addSilently(int start, int end) {
+		int id = starts.add(start, Position.Bias.Forward);
+		int endHandle = ends.add(end, Position.Bias.Backward);
+		if (id >= endHandles.length) {
+			int newLength = Math.max(id + 1, endHandles.length * 2);
+			endHandles = Arrays.copyOf(endHandles, newLength);
+			longRange = Arrays.copyOf(longRange, newLength);
+		}
+		endHandles[id] = endHandle;
+		longRange[id] = false;
+
+		int length = end - start;
+		if (length > LONG_THRESHOLD) {
+			markLong(id);
+		} else if (length > maxLength) {
+			maxLength = length;
+		}
+		return id;
+	}
+
+	private void markLong(int id) {
+		if (longCount == longIds.length) {
+			longIds = Arrays.copyOf(longIds, longCount * 2);
+		}
+		longIds[longCount++] = id;
+		longRange[id] = true;
+	}
+}
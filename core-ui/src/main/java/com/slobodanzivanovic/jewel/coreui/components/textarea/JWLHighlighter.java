@@ -0,0 +1,366 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.coreui.components.textarea;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.*;
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A highlighter that only paints the highlights intersecting the clip.
+ * <p>
+ * {@link DefaultHighlighter} keeps every highlight in one list and walks all of them on every
+ * repaint. Here each painter gets its own {@link JWLHighlightLayer}, an interval index over a
+ * {@link JWLMarkerStore}, and painting queries each layer for the document range currently
+ * visible, so hundreds of thousands of search hits cost nothing while typing elsewhere.
+ * Layers paint in the order they were created. {@link LayeredHighlighter.LayerPainter}s
+ * (such as the selection painter) are painted by the views through
+ * {@link #paintLayeredHighlights}, like {@link DefaultHighlighter} does.
+ * <p>
+ * Painters that paint independently of any range, such as the current line painter, are
+ * registered with {@link #addPersistentHighlight} and are called on every paint.
+ *
+ * @author Slobodan Zivanovic
+ */
+public class JWLHighlighter extends LayeredHighlighter {
+
+	private static final Highlighter.Highlight[] NO_HIGHLIGHTS = new Highlighter.Highlight[0];
+
+	private final List<JWLHighlightLayer> layers = new ArrayList<>();
+	private final Map<HighlightPainter, JWLHighlightLayer> layersByPainter = new IdentityHashMap<>();
+	private final List<PersistentTag> persistent = new ArrayList<>();
+
+	private JTextComponent component;
+	private Document document;
+	private final DocumentListener documentHandler = new DocumentHandler();
+	private final PropertyChangeListener documentSwapListener = this::documentChanged;
+
+	@Override
+	public void install(JTextComponent c) {
+		component = c;
+		component.addPropertyChangeListener("document", documentSwapListener);
+		attach(c.getDocument());
+		removeAllHighlights();
+	}
+
+	@Override
+	public void deinstall(JTextComponent c) {
+		c.removePropertyChangeListener("document", documentSwapListener);
+		attach(null);
+		component = null;
+	}
+
+	/**
+	 * Returns the layer of the given painter, creating it on first use.
+	 * Layers created later paint on top of earlier ones.
+	 *
+	 * @param painter The painter of the layer
+	 * @return The layer
+	 */
+	public JWLHighlightLayer getLayer(HighlightPainter painter) {
+		return layersByPainter.computeIfAbsent(painter, p -> {
+			JWLHighlightLayer layer = new JWLHighlightLayer(this, p);
+			layers.add(layer);
+			return layer;
+		});
+	}
+
+	/**
+	 * Registers a painter that is called on every paint regardless of the visible range.
+	 *
+	 * @param painter The painter
+	 * @return A tag that can be passed to {@link #removeHighlight}
+	 */
+	public Object addPersistentHighlight(HighlightPainter painter) {
+		PersistentTag tag = new PersistentTag(painter);
+		persistent.add(tag);
+		if (component != null) {
+			component.repaint();
+		}
+		return tag;
+	}
+
+	@Override
+	public Object addHighlight(int p0, int p1, HighlightPainter p) throws BadLocationException {
+		if (p0 < 0) {
+			throw new BadLocationException("Invalid start offset", p0);
+		}
+		if (p1 < p0) {
+			throw new BadLocationException("Invalid end offset", p1);
+		}
+
+		JWLHighlightLayer layer = getLayer(p);
+		return new LayerTag(layer, layer.add(p0, p1));
+	}
+
+	@Override
+	public void removeHighlight(Object tag) {
+		if (tag instanceof LayerTag layerTag) {
+			if (layerTag.isValid()) {
+				layerTag.layer.remove(layerTag.id);
+				layerTag.id = -1;
+			}
+		} else if (tag instanceof PersistentTag persistentTag) {
+			persistent.remove(persistentTag);
+			if (component != null) {
+				component.repaint();
+			}
+		}
+	}
+
+	@Override
+	public void removeAllHighlights() {
+		for (JWLHighlightLayer layer : layers) {
+			layer.clear();
+		}
+		if (!persistent.isEmpty()) {
+			persistent.clear();
+			damageVisible();
+		}
+	}
+
+	@Override
+	public void changeHighlight(Object tag, int p0, int p1) throws BadLocationException {
+		if (p0 < 0) {
+			throw new BadLocationException("Invalid beginning of the range", p0);
+		}
+		if (p1 < p0) {
+			throw new BadLocationException("Invalid end of the range", p1);
+		}
+
+		if (tag instanceof LayerTag layerTag) {
+			if (layerTag.isValid()) {
+				layerTag.layer.remove(layerTag.id);
+			}
+			layerTag.id = layerTag.layer.add(p0, p1);
+			layerTag.generation = layerTag.layer.getGeneration();
+		}
+	}
+
+	@Override
+	public Highlighter.Highlight[] getHighlights() {
+		List<Highlighter.Highlight> result = new ArrayList<>(persistent);
+		for (JWLHighlightLayer layer : layers) {
+			layer.forEachIntersecting(0, Integer.MAX_VALUE, (id, start, end) -> result.add(new LayerTag(layer, id)));
+		}
+		return result.isEmpty() ? NO_HIGHLIGHTS : result.toArray(NO_HIGHLIGHTS);
+	}
+
+	@Override
+	public void paint(Graphics g) {
+		if (component == null) {
+			return;
+		}
+
+		Rectangle alloc = getAllocation();
+		for (PersistentTag tag : persistent) {
+			tag.painter.paint(g, 0, 0, alloc, component);
+		}
+
+		Rectangle clip = g.getClipBounds();
+		if (clip == null) {
+			clip = component.getVisibleRect();
+		}
+		int from;
+		int to;
+		if (component instanceof JWLTextArea textArea) {
+			from = textArea.getLineStartAt(clip.y);
+			to = textArea.getLineEndAt(clip.y + clip.height);
+		} else {
+			from = component.viewToModel2D(new Point(0, clip.y));
+			to = component.viewToModel2D(new Point(Integer.MAX_VALUE / 2, clip.y + clip.height));
+		}
+		if (from < 0 || to < 0) {
+			return;
+		}
+
+		for (JWLHighlightLayer layer : layers) {
+			HighlightPainter painter = layer.getPainter();
+			if (!(painter instanceof LayerPainter)) {
+				layer.forEachIntersecting(from, to, (id, start, end) -> painter.paint(g, start, end, alloc, component));
+			}
+		}
+	}
+
+	@Override
+	public void paintLayeredHighlights(Graphics g, int p0, int p1, Shape viewBounds, JTextComponent editor, View view) {
+		for (JWLHighlightLayer layer : layers) {
+			if (layer.getPainter() instanceof LayerPainter painter) {
+				layer.forEachIntersecting(p0, p1, (id, start, end) -> {
+					if ((p0 < start && p1 > start) || (p0 >= start && p0 < end)) {
+						painter.paintLayer(g, Math.max(start, p0), Math.min(end, p1), viewBounds, editor, view);
+					}
+				});
+			}
+		}
+	}
+
+	/**
+	 * Releases memory held by removed highlights.
+	 */
+	public void trimToSize() {
+		for (JWLHighlightLayer layer : layers) {
+			layer.trimToSize();
+		}
+	}
+
+	/**
+	 * Repaints the lines covered by the given range.
+	 */
+	void damageRange(int p0, int p1) {
+		if (component == null) {
+			return;
+		}
+		if (!SwingUtilities.isEventDispatchThread()) {
+			SwingUtilities.invokeLater(() -> damageRange(p0, p1));
+			return;
+		}
+
+		try {
+			int length = component.getDocument().getLength();
+			Rectangle2D r0 = JWLTextArea.getCaretBounds(component, Math.min(p0, length));
+			Rectangle2D r1 = JWLTextArea.getCaretBounds(component, Math.min(p1, length));
+			if (r0 == null || r1 == null) {
+				return;
+			}
+			if (r0.getY() == r1.getY()) {
+				Rectangle damage = r0.createUnion(r1).getBounds();
+				component.repaint(damage.x, damage.y, damage.width + 1, damage.height);
+			} else {
+				int top = (int) r0.getY();
+				component.repaint(0, top, component.getWidth(), (int) (r1.getMaxY()) - top);
+			}
+		} catch (BadLocationException ignored) {
+		}
+	}
+
+	/**
+	 * Repaints the visible area, used after bulk changes instead of per-range damage.
+	 */
+	void damageVisible() {
+		if (component != null) {
+			component.repaint();
+		}
+	}
+
+	private Rectangle getAllocation() {
+		Rectangle alloc = component.getBounds();
+		Insets insets = component.getInsets();
+		alloc.x = insets.left;
+		alloc.y = insets.top;
+		alloc.width -= insets.left + insets.right;
+		alloc.height -= insets.top + insets.bottom;
+		return alloc;
+	}
+
+	private void documentChanged(PropertyChangeEvent e) {
+		attach((Document) e.getNewValue());
+		removeAllHighlights();
+	}
+
+	private void attach(Document doc) {
+		if (document != null) {
+			document.removeDocumentListener(documentHandler);
+		}
+		document = doc;
+		if (document != null) {
+			document.addDocumentListener(documentHandler);
+		}
+	}
+
+	private class DocumentHandler implements DocumentListener {
+
+		@Override
+		public void insertUpdate(DocumentEvent e) {
+			for (JWLHighlightLayer layer : layers) {
+				layer.insertUpdate(e);
+			}
+		}
+
+		@Override
+		public void removeUpdate(DocumentEvent e) {
+			for (JWLHighlightLayer layer : layers) {
+				layer.removeUpdate(e);
+			}
+		}
+
+		@Override
+		public void changedUpdate(DocumentEvent e) {
+		}
+	}
+
+	/**
+	 * Tag of a highlight added through the {@link Highlighter} API.
+	 */
+	private static final class LayerTag implements Highlighter.Highlight {
+		private final JWLHighlightLayer layer;
+		private int id;
+		private int generation;
+
+		private LayerTag(JWLHighlightLayer layer, int id) {
+			this.layer = layer;
+			this.id = id;
+			this.generation = layer.getGeneration();
+		}
+
+		private boolean isValid() {
+			return id >= 0 && generation == layer.getGeneration();
+		}
+
+		@Override
+		public int getStartOffset() {
+			return isValid() ? layer.getStart(id) : -1;
+		}
+
+		@Override
+		public int getEndOffset() {
+			return isValid() ? layer.getEnd(id) : -1;
+		}
+
+		@Override
+		public HighlightPainter getPainter() {
+			return layer.getPainter();
+		}
+	}
+
+	private record PersistentTag(HighlightPainter painter) implements Highlighter.Highlight {
+
+		@Override
+		public int getStartOffset() {
+			return 0;
+		}
+
+		@Override
+		public int getEndOffset() {
+			return 0;
+		}
+
+		@Override
+		public HighlightPainter getPainter() {
+			return painter;
+		}
+	}
+}
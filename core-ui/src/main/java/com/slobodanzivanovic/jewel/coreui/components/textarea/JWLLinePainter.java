@@ -57,7 +57,7 @@ public class JWLLinePainter implements Highlighter.HighlightPainter, CaretListen
 	@Override
 	public void paint(Graphics g, int p0, int p1, Shape bounds, JTextComponent c) {
 		try {
-			Rectangle2D r = c.modelToView2D(c.getCaretPosition());
+			Rectangle2D r = JWLTextArea.getCaretBounds(c, c.getCaretPosition());
 			g.setColor(color);
 			g.fillRect(0, (int) r.getY(), c.getWidth(), (int) r.getHeight());
 			if (lastView == null) {
@@ -72,7 +72,7 @@ public class JWLLinePainter implements Highlighter.HighlightPainter, CaretListen
 		SwingUtilities.invokeLater(() -> {
 			try {
 				int offset = component.getCaretPosition();
-				Rectangle2D currentView = component.modelToView2D(offset);
+				Rectangle2D currentView = JWLTextArea.getCaretBounds(component, offset);
 				// Remove highlighting from previously highlighted line
 				if (lastView.y != (int) currentView.getY()) {
 					component.repaint(0, lastView.y, component.getWidth(), lastView.height);
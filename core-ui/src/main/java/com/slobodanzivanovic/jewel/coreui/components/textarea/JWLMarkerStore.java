@@ -0,0 +1,449 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.coreui.components.textarea;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.Document;
+import javax.swing.text.JTextComponent;
+import javax.swing.text.Position;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.Arrays;
+
+/**
+ * Tracks document offsets (search hits, bookmarks, diagnostics, highlight bounds) through edits.
+ * <p>
+ * Unlike {@link Position}s, which the document updates one by one, markers are kept in primitive
+ * arrays sorted by offset. Shifting every marker after an edit is a suffix update recorded lazily
+ * in a Fenwick tree, so an edit costs O(log n) plus the markers inside a removed range, and the
+ * offset of a marker is its base value plus a prefix sum. Added markers are buffered and merged
+ * in one pass on the next query, which keeps bulk insertion of thousands of hits cheap.
+ * <p>
+ * A marker with {@link Position.Bias#Forward} bias moves when text is inserted exactly at its
+ * offset, one with {@link Position.Bias#Backward} bias stays. The store is confined to the EDT.
+ *
+ * @author Slobodan Zivanovic
+ */
+public class JWLMarkerStore implements DocumentListener {
+
+	private static final int FREE = -1;
+	private static final int PENDING = -2;
+
+	/**
+	 * Receives the markers of a range query.
+	 */
+	@FunctionalInterface
+	public interface MarkerVisitor {
+		void visit(int handle, int offset);
+	}
+
+	// Sorted entries: offset(i) = base[i] + prefix(i)
+	private int[] base = new int[16];
+	private int[] handleAt = new int[16];
+	private boolean[] forwardAt = new boolean[16];
+	private int[] fenwick = new int[17];
+	private int count;
+	private int tombstones;
+
+	// Markers added since the last merge
+	private int[] pendingOffsets = new int[16];
+	private int[] pendingHandles = new int[16];
+	private boolean[] pendingForward = new boolean[16];
+	private int pendingCount;
+
+	// Handle -> entry index, PENDING or FREE
+	private int[] slots = new int[16];
+	private int[] freeHandles = new int[16];
+	private int freeCount;
+	private int nextHandle;
+	private int live;
+
+	private JTextComponent component;
+	private Document document;
+	private final PropertyChangeListener documentSwapListener = this::documentChanged;
+
+	/**
+	 * Attaches the store to a text component. Markers follow the edits of its document,
+	 * and are cleared when the component gets a new document.
+	 *
+	 * @param c The text component
+	 */
+	public void install(JTextComponent c) {
+		deinstall();
+		component = c;
+		component.addPropertyChangeListener("document", documentSwapListener);
+		attach(c.getDocument());
+	}
+
+	/**
+	 * Detaches the store from its text component.
+	 */
+	public void deinstall() {
+		if (component != null) {
+			component.removePropertyChangeListener("document", documentSwapListener);
+			component = null;
+		}
+		attach(null);
+	}
+
+	private void documentChanged(PropertyChangeEvent e) {
+		clear();
+		attach((Document) e.getNewValue());
+	}
+
+	private void attach(Document doc) {
+		if (document != null) {
+			document.removeDocumentListener(this);
+		}
+		document = doc;
+		if (document != null) {
+			document.addDocumentListener(this);
+		}
+	}
+
+	/**
+	 * Adds a marker with forward bias.
+	 *
+	 * @param offset The document offset
+	 * @return The handle of the new marker
+	 */
+	public int add(int offset) {
+		return add(offset, Position.Bias.Forward);
+	}
+
+	/**
+	 * Adds a marker.
+	 *
+	 * @param offset The document offset
+	 * @param bias   Whether the marker moves ({@code Forward}) or stays ({@code Backward})
+	 *               when text is inserted at its offset
+	 * @return The handle of the new marker
+	 */
+	public int add(int offset, Position.Bias bias) {
+		int handle = allocateHandle();
+		if (pendingCount == pendingOffsets.length) {
+			int newLength = pendingCount * 2;
+			pendingOffsets = Arrays.copyOf(pendingOffsets, newLength);
+			pendingHandles = Arrays.copyOf(pendingHandles, newLength);
+			pendingForward = Arrays.copyOf(pendingForward, newLength);
+		}
+		pendingOffsets[pendingCount] = offset;
+		pendingHandles[pendingCount] = handle;
+		pendingForward[pendingCount] = bias == Position.Bias.Forward;
+		pendingCount++;
+		slots[handle] = PENDING;
+		live++;
+		return handle;
+	}
+
+	/**
+	 * Removes a marker. Removing a handle twice has no effect.
+	 *
+	 * @param handle The marker handle
+	 */
+	public void remove(int handle) {
+		if (handle < 0 || handle >= nextHandle || slots[handle] == FREE) {
+			return;
+		}
+		merge();
+		handleAt[slots[handle]] = FREE;
+		slots[handle] = FREE;
+		releaseHandle(handle);
+		live--;
+		tombstones++;
+		if (tombstones > 64 && tombstones > count / 2) {
+			rebuild();
+		}
+	}
+
+	/**
+	 * Removes all markers.
+	 */
+	public void clear() {
+		count = 0;
+		tombstones = 0;
+		pendingCount = 0;
+		freeCount = 0;
+		nextHandle = 0;
+		live = 0;
+		Arrays.fill(fenwick, 0);
+	}
+
+	/**
+	 * Returns the number of markers.
+	 *
+	 * @return The marker count
+	 */
+	public int size() {
+		return live;
+	}
+
+	/**
+	 * Returns the current offset of a marker.
+	 *
+	 * @param handle The marker handle
+	 * @return The offset, or -1 if the marker was removed
+	 */
+	public int getOffset(int handle) {
+		if (handle < 0 || handle >= nextHandle || slots[handle] == FREE) {
+			return -1;
+		}
+		merge();
+		return offsetAt(slots[handle]);
+	}
+
+	/**
+	 * Visits the markers with offsets in {@code [start, end]}, in ascending offset order.
+	 * Only the markers in the range are touched, so querying the visible area of a large
+	 * document costs O(log n + k log n) for k markers.
+	 *
+	 * @param start   The first offset, inclusive
+	 * @param end     The last offset, inclusive
+	 * @param visitor Receives each marker
+	 */
+	public void forEachInRange(int start, int end, MarkerVisitor visitor) {
+		merge();
+		for (int i = lowerBound(start, false); i < count; i++) {
+			int offset = offsetAt(i);
+			if (offset > end) {
+				break;
+			}
+			if (handleAt[i] != FREE) {
+				visitor.visit(handleAt[i], offset);
+			}
+		}
+	}
+
+	/**
+	 * Releases memory held by removed markers and oversized buffers.
+	 */
+	public void trimToSize() {
+		rebuild();
+		int capacity = Math.max(16, count);
+		base = Arrays.copyOf(base, capacity);
+		handleAt = Arrays.copyOf(handleAt, capacity);
+		forwardAt = Arrays.copyOf(forwardAt, capacity);
+		fenwick = new int[capacity + 1];
+		pendingOffsets = new int[16];
+		pendingHandles = new int[16];
+		pendingForward = new boolean[16];
+	}
+
+	@Override
+	public void insertUpdate(DocumentEvent e) {
+		merge();
+		// Everything after the insertion point, plus forward markers exactly at it, moves
+		addSuffix(lowerBound(e.getOffset(), true), e.getLength());
+	}
+
+	@Override
+	public void removeUpdate(DocumentEvent e) {
+		merge();
+		int offset = e.getOffset();
+		int end = offset + e.getLength();
+
+		// Markers strictly inside the removed range collapse onto its start
+		int first = lowerBound(offset + 1, false);
+		int last = lowerBound(end, false);
+		for (int i = first; i < last; i++) {
+			base[i] += offset - offsetAt(i);
+		}
+		addSuffix(last, -e.getLength());
+
+		if (last > first || (last < count && offsetAt(last) == offset)) {
+			reorderCollapsedRun(offset);
+		}
+	}
+
+	@Override
+	public void changedUpdate(DocumentEvent e) {
+	}
+
+	/**
+	 * Restores the (offset, bias) order of the markers that a removal collapsed onto one offset:
+	 * backward markers must come before forward markers for insertion lookups to stay correct.
+	 */
+	private void reorderCollapsedRun(int offset) {
+		int from = lowerBound(offset, false);
+		int to = lowerBound(offset + 1, false);
+
+		boolean ordered = true;
+		for (int i = from + 1; i < to && ordered; i++) {
+			ordered = forwardAt[i - 1] == forwardAt[i] || forwardAt[i];
+		}
+		if (ordered) {
+			return;
+		}
+
+		int length = to - from;
+		int[] handles = new int[length];
+		boolean[] forward = new boolean[length];
+		int write = 0;
+		for (int pass = 0; pass < 2; pass++) {
+			for (int i = from; i < to; i++) {
+				if (forwardAt[i] == (pass == 1)) {
+					handles[write] = handleAt[i];
+					forward[write] = forwardAt[i];
+					write++;
+				}
+			}
+		}
+		for (int i = 0; i < length; i++) {
+			int index = from + i;
+			handleAt[index] = handles[i];
+			forwardAt[index] = forward[i];
+			base[index] = offset - prefix(index);
+			if (handles[i] != FREE) {
+				slots[handles[i]] = index;
+			}
+		}
+	}
+
+	/**
+	 * Returns the first entry index whose (offset, bias) is not less than the given key,
+	 * where backward bias sorts before forward bias.
+	 */
+	private int lowerBound(int offset, boolean forward) {
+		int low = 0;
+		int high = count - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int midOffset = offsetAt(mid);
+			if (midOffset < offset || (midOffset == offset && !forwardAt[mid] && forward)) {
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+
+	private int offsetAt(int index) {
+		return base[index] + prefix(index);
+	}
+
+	private int prefix(int index) {
+		int sum = 0;
+		for (int i = index + 1; i > 0; i -= i & -i) {
+			sum += fenwick[i];
+		}
+		return sum;
+	}
+
+	private void addSuffix(int index, int delta) {
+		for (int i = index + 1; i <= count; i += i & -i) {
+			fenwick[i] += delta;
+		}
+	}
+
+	private void merge() {
+		if (pendingCount > 0) {
+			rebuild();
+		}
+	}
+
+	/**
+	 * Materializes all offsets, drops removed entries, merges pending markers and
+	 * resets the Fenwick tree. Runs in O(n + p log p).
+	 */
+	private void rebuild() {
+		// Turn the Fenwick tree back into per-entry deltas, then accumulate
+		for (int i = count; i > 0; i--) {
+			int parent = i + (i & -i);
+			if (parent <= count) {
+				fenwick[parent] -= fenwick[i];
+			}
+		}
+		int shift = 0;
+		int liveCount = 0;
+		for (int i = 0; i < count; i++) {
+			shift += fenwick[i + 1];
+			if (handleAt[i] != FREE) {
+				base[liveCount] = base[i] + shift;
+				handleAt[liveCount] = handleAt[i];
+				forwardAt[liveCount] = forwardAt[i];
+				liveCount++;
+			}
+		}
+
+		long[] order = new long[pendingCount];
+		for (int i = 0; i < pendingCount; i++) {
+			order[i] = ((long) pendingOffsets[i] << 33) | (pendingForward[i] ? 1L << 32 : 0) | i;
+		}
+		Arrays.sort(order);
+
+		int total = liveCount + pendingCount;
+		int capacity = Math.max(base.length, total);
+		int[] newBase = new int[capacity];
+		int[] newHandles = new int[capacity];
+		boolean[] newForward = new boolean[capacity];
+
+		int a = 0;
+		int b = 0;
+		for (int i = 0; i < total; i++) {
+			boolean takeExisting;
+			if (b >= pendingCount) {
+				takeExisting = true;
+			} else if (a >= liveCount) {
+				takeExisting = false;
+			} else {
+				int p = (int) order[b] & Integer.MAX_VALUE;
+				takeExisting = base[a] < pendingOffsets[p] || (base[a] == pendingOffsets[p] && (!forwardAt[a] || pendingForward[p]));
+			}
+
+			if (takeExisting) {
+				newBase[i] = base[a];
+				newHandles[i] = handleAt[a];
+				newForward[i] = forwardAt[a];
+				a++;
+			} else {
+				int p = (int) order[b] & Integer.MAX_VALUE;
+				newBase[i] = pendingOffsets[p];
+				newHandles[i] = pendingHandles[p];
+				newForward[i] = pendingForward[p];
+				b++;
+			}
+			slots[newHandles[i]] = i;
+		}
+
+		base = newBase;
+		handleAt = newHandles;
+		forwardAt = newForward;
+		count = total;
+		tombstones = 0;
+		pendingCount = 0;
+		fenwick = new int[capacity + 1];
+	}
+
+	private int allocateHandle() {
+		if (freeCount > 0) {
+			return freeHandles[--freeCount];
+		}
+		if (nextHandle == slots.length) {
+			slots = Arrays.copyOf(slots, nextHandle * 2);
+		}
+		return nextHandle++;
+	}
+
+	private void releaseHandle(int handle) {
+		if (freeCount == freeHandles.length) {
+			freeHandles = Arrays.copyOf(freeHandles, freeCount * 2);
+		}
+		freeHandles[freeCount++] = handle;
+	}
+}
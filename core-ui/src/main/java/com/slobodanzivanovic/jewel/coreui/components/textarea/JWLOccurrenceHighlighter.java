@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.coreui.components.textarea;
+
+import com.slobodanzivanovic.jewel.util.task.CancellationScope;
+import com.slobodanzivanovic.jewel.util.task.CancellationToken;
+import com.slobodanzivanovic.jewel.util.task.TaskLane;
+import com.slobodanzivanovic.jewel.util.task.TaskScheduler;
+
+import javax.swing.*;
+import javax.swing.event.CaretEvent;
+import javax.swing.event.CaretListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.JTextComponent;
+import java.awt.*;
+import java.beans.PropertyChangeEvent;
+import java.util.Arrays;
+
+/**
+ * Highlights every occurrence of the selected word, or of the word under the caret.
+ * <p>
+ * Caret events are debounced. The scan then runs on the {@link TaskScheduler} against an immutable
+ * snapshot of the document text, copied by the scan itself under the document's read lock so the
+ * EDT never copies the document: the visible range is scanned and published first in the visible
+ * range lane, the rest of the document afterwards in the background lane. A scan is only started
+ * when the needle or the document version differs from the scan shown or running, so moving the
+ * caret within a word neither copies the text again nor interrupts the scan of the rest of the
+ * document. A new scan cancels the running one, and so does an edit, as the scans take their
+ * tokens from a {@link CancellationScope} following the document version.
+ *
+ * @author Slobodan Zivanovic
+ */
+public class JWLOccurrenceHighlighter implements CaretListener, DocumentListener {
+
+	private static final int DEBOUNCE_DELAY = 250;
+	private static final int MAX_NEEDLE_LENGTH = 256;
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	private final JTextComponent component;
+	private final JWLOccurrencePainter painter;
+	private final JWLHighlightLayer layer;
+	private final Timer debounceTimer;
+	private final CancellationScope scans = new CancellationScope();
+
+	private Document document;
+	private int documentVersion;
+	// The scan whose hits are all in the layer, and the scan running, if any
+	private Scan shown;
+	private Scan running;
+	private CancellationToken runningToken;
+
+	public JWLOccurrenceHighlighter(JTextComponent component, JWLHighlighter highlighter, Color color) {
+		this.component = component;
+		this.painter = new JWLOccurrencePainter(color);
+		this.layer = highlighter.getLayer(painter);
+
+		debounceTimer = new Timer(DEBOUNCE_DELAY, e -> update());
+		debounceTimer.setRepeats(false);
+
+		component.addCaretListener(this);
+		component.addPropertyChangeListener("document", this::documentChanged);
+		attach(component.getDocument());
+	}
+
+	public void setColor(Color color) {
+		painter.setColor(color);
+		component.repaint();
+	}
+
+	@Override
+	public void caretUpdate(CaretEvent e) {
+		debounceTimer.restart();
+	}
+
+	@Override
+	public void insertUpdate(DocumentEvent e) {
+		scans.setVersion(++documentVersion);
+	}
+
+	@Override
+	public void removeUpdate(DocumentEvent e) {
+		scans.setVersion(++documentVersion);
+	}
+
+	@Override
+	public void changedUpdate(DocumentEvent e) {
+	}
+
+	/**
+	 * Cancels the pending and running scans.
+	 */
+	public void cancel() {
+		debounceTimer.stop();
+		scans.cancel();
+		running = null;
+	}
+
+	private void documentChanged(PropertyChangeEvent e) {
+		cancel();
+		attach((Document) e.getNewValue());
+		shown = null;
+		layer.clear();
+	}
+
+	private void attach(Document doc) {
+		if (document != null) {
+			document.removeDocumentListener(this);
+		}
+		document = doc;
+		if (document != null) {
+			document.addDocumentListener(this);
+		}
+	}
+
+	private void update() {
+		String needle = findNeedle();
+		if (needle == null) {
+			cancel();
+			shown = null;
+			layer.clear();
+			return;
+		}
+		boolean wholeWord = component.getSelectionStart() == component.getSelectionEnd();
+		Scan scan = new Scan(needle, wholeWord, documentVersion);
+		if (scan.equals(shown) || (scan.equals(running) && !runningToken.isCancelled())) {
+			return;
+		}
+
+		Document doc = document;
+		Rectangle visible = component.getVisibleRect();
+		int visibleStart = component.viewToModel2D(new Point(0, visible.y));
+		int visibleEnd = component.viewToModel2D(new Point(Integer.MAX_VALUE / 2, visible.y + visible.height));
+
+		TaskScheduler scheduler = TaskScheduler.getInstance();
+		CancellationToken token = scans.next();
+		running = scan;
+		runningToken = token;
+		scheduler.submit(TaskLane.VISIBLE_RANGE, token, t -> {
+			// Read under the document's read lock, an edit meanwhile cancels the token
+			Hits hits = new Hits();
+			doc.render(() -> {
+				try {
+					hits.text = doc.getText(0, doc.getLength());
+				} catch (BadLocationException ignored) {
+				}
+			});
+			t.throwIfCancelled();
+			scan(hits.text, needle, wholeWord, Math.max(0, visibleStart), Math.max(0, visibleEnd), hits, t);
+			return hits;
+		}, hits -> {
+			layer.clear();
+			shown = null;
+			publish(hits, needle);
+			String text = hits.text;
+			// Queued once the visible hits are applied, so they always clear the layer first
+			scheduler.submit(TaskLane.BACKGROUND, token, t -> {
+				Hits rest = new Hits();
+				for (int from = 0; from < visibleStart; from += CHUNK_SIZE) {
+					scan(text, needle, wholeWord, from, Math.min(visibleStart, from + CHUNK_SIZE), rest, t);
+				}
+				for (int from = Math.max(0, visibleEnd); from < text.length(); from += CHUNK_SIZE) {
+					scan(text, needle, wholeWord, from, Math.min(text.length(), from + CHUNK_SIZE), rest, t);
+				}
+				return rest;
+			}, otherHits -> {
+				publish(otherHits, needle);
+				shown = scan;
+				running = null;
+			});
+		});
+	}
+
+	/**
+	 * Returns the selected text if it is a short single-line selection,
+	 * otherwise the word under the caret, or null if there is none.
+	 */
+	private String findNeedle() {
+		int start = component.getSelectionStart();
+		int end = component.getSelectionEnd();
+		try {
+			if (start != end) {
+				if (end - start > MAX_NEEDLE_LENGTH) {
+					return null;
+				}
+				String selected = document.getText(start, end - start);
+				return selected.isBlank() || selected.indexOf('\n') >= 0 ? null : selected;
+			}
+
+			int length = document.getLength();
+			int from = Math.max(0, start - MAX_NEEDLE_LENGTH);
+			String around = document.getText(from, Math.min(length, start + MAX_NEEDLE_LENGTH) - from);
+			int caret = start - from;
+			int wordStart = caret;
+			while (wordStart > 0 && isWordChar(around.charAt(wordStart - 1))) {
+				wordStart--;
+			}
+			int wordEnd = caret;
+			while (wordEnd < around.length() && isWordChar(around.charAt(wordEnd))) {
+				wordEnd++;
+			}
+			return wordEnd > wordStart ? around.substring(wordStart, wordEnd) : null;
+		} catch (BadLocationException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Collects the occurrences of needle starting in {@code [from, to)}.
+	 */
+	private void scan(String text, String needle, boolean wholeWord, int from, int to, Hits hits, CancellationToken token) {
+		token.throwIfCancelled();
+		// Bounded search, so a chunk without hits does not scan the rest of the text
+		int limit = Math.min(text.length(), to + needle.length() - 1);
+		if (from >= limit) {
+			return;
+		}
+		int index = text.indexOf(needle, from, limit);
+		while (index >= 0) {
+			int end = index + needle.length();
+			if (!wholeWord || ((index == 0 || !isWordChar(text.charAt(index - 1)))
+				&& (end == text.length() || !isWordChar(text.charAt(end))))) {
+				hits.add(index);
+			}
+			index = text.indexOf(needle, index + 1, limit);
+		}
+	}
+
+	/**
+	 * Adds hits to the layer on the EDT. The scheduler only delivers results of a live token,
+	 * so the hits belong to the running scan.
+	 */
+	private void publish(Hits hits, String needle) {
+		int[] ends = new int[hits.count];
+		for (int i = 0; i < hits.count; i++) {
+			ends[i] = hits.starts[i] + needle.length();
+		}
+		layer.addAll(hits.starts, ends, hits.count);
+	}
+
+	private static boolean isWordChar(char c) {
+		return Character.isJavaIdentifierPart(c);
+	}
+
+	private record Scan(String needle, boolean wholeWord, int documentVersion) {
+	}
+
+	private static final class Hits {
+		private int[] starts = new int[64];
+		private int count;
+		// The text scanned by the visible pass, scanned again by the pass over the rest
+		private String text = "";
+
+		private void add(int start) {
+			if (count == starts.length) {
+				starts = Arrays.copyOf(starts, count * 2);
+			}
+			starts[count++] = start;
+		}
+	}
+}
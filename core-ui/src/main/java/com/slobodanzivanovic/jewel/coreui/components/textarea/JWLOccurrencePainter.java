@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.coreui.components.textarea;
+
+import javax.swing.text.*;
+import java.awt.*;
+
+/**
+ * Paints a single-line highlight behind the text, used for occurrences of the word under the caret.
+ *
+ * @author Slobodan Zivanovic
+ */
+public class JWLOccurrencePainter extends LayeredHighlighter.LayerPainter {
+
+	private Color color;
+
+	public JWLOccurrencePainter(Color color) {
+		this.color = color;
+	}
+
+	public void setColor(Color color) {
+		this.color = color;
+	}
+
+	@Override
+	public void paint(Graphics g, int p0, int p1, Shape bounds, JTextComponent c) {
+		try {
+			Rectangle r0 = c.modelToView2D(p0).getBounds();
+			Rectangle r1 = c.modelToView2D(p1).getBounds();
+			g.setColor(color);
+			g.fillRect(r0.x, r0.y, Math.max(1, r1.x - r0.x), r0.height);
+		} catch (BadLocationException ignored) {
+		}
+	}
+
+	@Override
+	public Shape paintLayer(Graphics g, int p0, int p1, Shape viewBounds, JTextComponent c, View view) {
+		try {
+			Shape shape = view.modelToView(p0, Position.Bias.Forward, p1, Position.Bias.Backward, viewBounds);
+			Rectangle r = shape.getBounds();
+			g.setColor(color);
+			g.fillRect(r.x, r.y, Math.max(1, r.width), r.height);
+			return r;
+		} catch (BadLocationException e) {
+			return null;
+		}
+	}
+}
@@ -16,14 +16,19 @@
 
 package com.slobodanzivanovic.jewel.coreui.components.textarea;
 
+import com.slobodanzivanovic.jewel.laf.CachedFontMetrics;
+import com.slobodanzivanovic.jewel.laf.FontManager;
+import com.slobodanzivanovic.jewel.laf.TextAreaUIs;
+import com.slobodanzivanovic.jewel.laf.UIEventBus;
+import com.slobodanzivanovic.jewel.laf.ThemePalette;
+import com.slobodanzivanovic.jewel.laf.ThemePalettes;
 import com.slobodanzivanovic.jewel.laf.UIEvents;
-import com.slobodanzivanovic.jewel.laf.UIPreferences;
 import com.slobodanzivanovic.jewel.util.platform.PlatformInfo;
 
 import javax.swing.*;
-import javax.swing.text.BadLocationException;
-import javax.swing.text.DefaultCaret;
-import javax.swing.text.DefaultEditorKit;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.KeyAdapter;
@@ -34,7 +39,7 @@ import java.util.Stack;
 /**
  * @author Slobodan Zivanovic
  */
-public class JWLTextArea extends JTextArea implements UIEvents.ThemeChangeListener {
+public class JWLTextArea extends JTextArea {
 
 	private static final String[] BRACKETS = {"()", "[]", "{}"};
 	private final Stack<Integer> bracketStack = new Stack<>();
@@ -43,6 +48,38 @@ public class JWLTextArea extends JTextArea implements UIEvents.ThemeChangeListen
 	private final boolean highlightCurrentLine = true;
 	private Color currentLineColor = new Color(255, 255, 170);
 	private JWLLinePainter linePainter;
+	private JWLHighlighter highlighter;
+	private Color occurrenceColor = new Color(210, 225, 250);
+	private JWLOccurrenceHighlighter occurrenceHighlighter;
+	private JWLFoldModel foldModel;
+	private int foldedLines;
+	private ThemePalette palette;
+	private JWLZoom zoom;
+	private CachedFontMetrics cachedMetrics;
+	private Font zoomFont;
+
+	private final JWLCaretSet carets = new JWLCaretSet();
+	private JWLCaretPainter caretPainter;
+	private int[] editStarts = new int[0];
+	private int[] editEnds = new int[0];
+	private boolean editingAllCarets;
+	private final DocumentListener extraCaretGuard = new DocumentListener() {
+		@Override
+		public void insertUpdate(DocumentEvent e) {
+			dropExtraCaretsUnlessBatched();
+		}
+
+		@Override
+		public void removeUpdate(DocumentEvent e) {
+			dropExtraCaretsUnlessBatched();
+		}
+
+		@Override
+		public void changedUpdate(DocumentEvent e) {
+		}
+	};
+	// Set by an Alt gesture whose key may still type a character (Option+J on macOS), until the key is released
+	private boolean consumeNextKeyTyped;
 
 	public JWLTextArea() {
 		initialize();
@@ -53,31 +90,49 @@ public class JWLTextArea extends JTextArea implements UIEvents.ThemeChangeListen
 		disableEmptyBackspaceBeep();
 
 		// Custom caret (2px)
-		setCaret(new DefaultCaret() {
-			@Override
-			public void paint(Graphics g) {
-				if (isVisible()) {
-					try {
-						Rectangle2D r = modelToView2D(getDot());
-						g.setColor(getCaretColor());
-						g.fillRect((int) r.getX(), (int) r.getY(), 2, (int) r.getHeight());
-					} catch (BadLocationException e) {
-						// Ignore
-					}
-				}
+		setCaret(new JWLCaret(this));
+
+		setPalette(ThemePalettes.current());
+		linePainter = new JWLLinePainter(this, currentLineColor);
+		caretPainter = new JWLCaretPainter(carets);
+
+		highlighter = new JWLHighlighter();
+		setHighlighter(highlighter);
+		highlighter.addPersistentHighlight(linePainter);
+		highlighter.addPersistentHighlight(caretPainter);
+		occurrenceHighlighter = new JWLOccurrenceHighlighter(this, highlighter, occurrenceColor);
+
+		foldModel = new JWLFoldModel(this);
+		foldModel.addChangeListener(e -> {
+			// Only the height depends on the folds, the width is that of the longest line
+			int hiddenLines = foldModel.getHiddenLineCount();
+			if (hiddenLines != foldedLines) {
+				foldedLines = hiddenLines;
+				revalidate();
 			}
+			repaint();
 		});
 
-		updateHighlightColorForTheme();
-		linePainter = new JWLLinePainter(this, currentLineColor);
+		zoom = new JWLZoom(this);
 
-		try {
-			getHighlighter().addHighlight(0, 0, linePainter);
-		} catch (BadLocationException ble) {
-			// Ignore
-		}
+		// The metrics depend on the font and on the scale of the screen
+		addPropertyChangeListener("font", e -> cachedMetrics = null);
+		addPropertyChangeListener("graphicsConfiguration", e -> cachedMetrics = null);
 
-		UIEvents.addThemeChangeListener(this);
+		// The offsets of the extra carets only follow edits made through editAllCarets
+		getDocument().addDocumentListener(extraCaretGuard);
+		addPropertyChangeListener("document", e -> {
+			if (e.getOldValue() instanceof Document old) {
+				old.removeDocumentListener(extraCaretGuard);
+			}
+			if (e.getNewValue() instanceof Document doc) {
+				doc.addDocumentListener(extraCaretGuard);
+			}
+			clearExtraCarets();
+		});
+
+		// Held weakly by the bus, so closed editors are not kept alive
+		UIEventBus.subscribe(UIEvents.ThemeChanged.class, this, (textArea, e) -> textArea.setPalette(e.palette()));
 
 		addKeyListener(new KeyAdapter() {
 			@Override
@@ -89,35 +144,59 @@ public class JWLTextArea extends JTextArea implements UIEvents.ThemeChangeListen
 			public void keyTyped(KeyEvent e) {
 				handleKeyTyped(e);
 			}
+
+			@Override
+			public void keyReleased(KeyEvent e) {
+				// The character of a pressed key is typed before its release, if at all
+				consumeNextKeyTyped = false;
+			}
 		});
 	}
 
 	@Override
-	public void onThemeChanged() {
-		SwingUtilities.invokeLater(() -> {
-			updateHighlightColorForTheme();
-			if (highlightCurrentLine) {
-				try {
-					getHighlighter().removeAllHighlights();
-					getHighlighter().addHighlight(0, 0, linePainter);
-				} catch (BadLocationException ble) {
-					// Ignore
-				}
-			}
-			repaint();
-		});
+	public void updateUI() {
+		// The new delegate may change the font and the text antialiasing
+		cachedMetrics = null;
+		// Keeps the look and feel's delegate and its styling, only the views are replaced
+		setUI(TextAreaUIs.create(this, new JWLFoldingViewFactory(this)));
+		// As in JTextComponent.updateUI, the new delegate may change the font and insets
+		invalidate();
+	}
+
+	@Override
+	protected Document createDefaultModel() {
+		return new JWLDocument();
 	}
 
 	@Override
 	public void removeNotify() {
-		UIEvents.removeThemeChangeListener(this);
+		occurrenceHighlighter.cancel();
 		super.removeNotify();
 	}
 
 	private void handleKeyPress(KeyEvent e) {
 		boolean isCommandKey = PlatformInfo.IS_MAC ? e.isMetaDown() : e.isControlDown();
 
-		if (isCommandKey) {
+		if (carets.isMultiple() && handleMultiCaretKey(e)) {
+			return;
+		}
+
+		if (e.isAltDown() && !isCommandKey) {
+			switch (e.getKeyCode()) {
+				case KeyEvent.VK_J -> {
+					e.consume();
+					consumeNextKeyTyped = true;
+					handleAddNextOccurrence();
+				}
+				case KeyEvent.VK_I -> {
+					if (e.isShiftDown()) {
+						e.consume();
+						consumeNextKeyTyped = true;
+						handleAddCaretPerLine();
+					}
+				}
+			}
+		} else if (isCommandKey) {
 			switch (e.getKeyCode()) {
 				case KeyEvent.VK_D -> {
 					e.consume();
@@ -131,6 +210,24 @@ public class JWLTextArea extends JTextArea implements UIEvents.ThemeChangeListen
 					e.consume();
 					handleDeleteWord(e);
 				}
+				case KeyEvent.VK_OPEN_BRACKET, KeyEvent.VK_CLOSE_BRACKET -> {
+					if (e.isShiftDown()) {
+						e.consume();
+						handleFold(e.getKeyCode() == KeyEvent.VK_OPEN_BRACKET);
+					}
+				}
+				case KeyEvent.VK_EQUALS, KeyEvent.VK_PLUS, KeyEvent.VK_ADD -> {
+					e.consume();
+					zoom.zoomIn();
+				}
+				case KeyEvent.VK_MINUS, KeyEvent.VK_SUBTRACT -> {
+					e.consume();
+					zoom.zoomOut();
+				}
+				case KeyEvent.VK_0, KeyEvent.VK_NUMPAD0 -> {
+					e.consume();
+					zoom.resetZoom();
+				}
 			}
 		} else if (e.getKeyCode() == KeyEvent.VK_ENTER) {
 			e.consume();
@@ -143,13 +240,284 @@ public class JWLTextArea extends JTextArea implements UIEvents.ThemeChangeListen
 
 	private void handleKeyTyped(KeyEvent e) {
 		char c = e.getKeyChar();
-		if (isOpenBracket(c)) {
+		boolean isCommandKey = PlatformInfo.IS_MAC ? e.isMetaDown() : e.isControlDown() && !e.isAltDown();
+		if (consumeNextKeyTyped && e.isAltDown()) {
+			consumeNextKeyTyped = false;
+			e.consume();
+		} else if (isCommandKey) {
+			// Shortcuts type nothing, like in the default key typed action; AltGr (Ctrl+Alt) still types
+			return;
+		} else if (carets.isMultiple()) {
+			e.consume();
+			if (c >= ' ' && c != KeyEvent.VK_DELETE && !e.isControlDown() && !e.isMetaDown()) {
+				editAllCarets(0, 0, String.valueOf(c));
+			}
+		} else if (isOpenBracket(c)) {
 			handleOpenBracket(e, c);
 		} else if (isCloseBracket(c)) {
 			handleCloseBracket(e, c);
 		}
 	}
 
+	/**
+	 * Handles keys that act on every caret while multi-caret editing is active.
+	 *
+	 * @param e The key event
+	 * @return true if the key was handled and consumed
+	 */
+	private boolean handleMultiCaretKey(KeyEvent e) {
+		if (e.isControlDown() || e.isMetaDown() || e.isAltDown()) {
+			return false;
+		}
+
+		switch (e.getKeyCode()) {
+			case KeyEvent.VK_ESCAPE -> clearExtraCarets();
+			case KeyEvent.VK_BACK_SPACE -> editAllCarets(-1, 0, "");
+			case KeyEvent.VK_DELETE -> editAllCarets(0, 1, "");
+			case KeyEvent.VK_ENTER -> editAllCarets(0, 0, "\n");
+			case KeyEvent.VK_TAB -> editAllCarets(0, 0, "\t");
+			case KeyEvent.VK_LEFT, KeyEvent.VK_RIGHT -> {
+				if (e.isShiftDown()) {
+					clearExtraCarets();
+					return false;
+				}
+				carets.moveAll(e.getKeyCode() == KeyEvent.VK_LEFT ? -1 : 1, getDocument().getLength());
+				syncPrimaryCaret();
+				repaint();
+			}
+			case KeyEvent.VK_UP, KeyEvent.VK_DOWN, KeyEvent.VK_HOME, KeyEvent.VK_END,
+				 KeyEvent.VK_PAGE_UP, KeyEvent.VK_PAGE_DOWN -> {
+				clearExtraCarets();
+				return false;
+			}
+			default -> {
+				return false;
+			}
+		}
+		e.consume();
+		return true;
+	}
+
+	/**
+	 * Replaces the edit range of every caret with the given text as one batched
+	 * mutation. Ranges are applied in descending offset order under a single
+	 * document write lock, and the carets are repositioned arithmetically
+	 * afterwards, so the primary caret fires one event and the area repaints once.
+	 *
+	 * @param before Characters before an empty caret to replace (0 or negative)
+	 * @param after  Characters after an empty caret to replace (0 or positive)
+	 * @param text   The text to insert at every caret
+	 */
+	private void editAllCarets(int before, int after, String text) {
+		if (!isEditable() || !isEnabled()) {
+			UIManager.getLookAndFeel().provideErrorFeedback(this);
+			return;
+		}
+
+		int count = carets.size();
+		if (editStarts.length < count) {
+			editStarts = new int[count];
+			editEnds = new int[count];
+		}
+		Document doc = getDocument();
+		carets.collectEditRanges(editStarts, editEnds, before, after, doc.getLength());
+
+		DefaultCaret caret = (DefaultCaret) getCaret();
+		int updatePolicy = caret.getUpdatePolicy();
+		caret.setUpdatePolicy(DefaultCaret.NEVER_UPDATE);
+		editingAllCarets = true;
+		try {
+			if (doc instanceof JWLDocument jwlDocument) {
+				jwlDocument.replaceAll(editStarts, editEnds, count, text);
+			} else {
+				for (int i = count - 1; i >= 0; i--) {
+					doc.remove(editStarts[i], editEnds[i] - editStarts[i]);
+					doc.insertString(editStarts[i], text, null);
+				}
+			}
+		} catch (BadLocationException ex) {
+			UIManager.getLookAndFeel().provideErrorFeedback(this);
+		} finally {
+			editingAllCarets = false;
+			caret.setUpdatePolicy(updatePolicy);
+		}
+
+		carets.collapseAfterReplace(editStarts, editEnds, text.length());
+		syncPrimaryCaret();
+		repaint();
+	}
+
+	/**
+	 * Collapses the innermost fold around the caret line, or expands the folds at it.
+	 *
+	 * @param collapse true to collapse, false to expand
+	 */
+	private void handleFold(boolean collapse) {
+		try {
+			int line = getLineOfOffset(getCaretPosition());
+			if (collapse) {
+				foldModel.collapseAt(line);
+				if (foldModel.isHidden(line)) {
+					// Move the caret out of the fold onto its header
+					int header = foldModel.visualToModelLine(foldModel.modelToVisualLine(line));
+					setCaretPosition(getLineStartOffset(header));
+				}
+			} else {
+				foldModel.expandAt(line);
+			}
+		} catch (BadLocationException ignored) {
+		}
+	}
+
+	/**
+	 * Adds a caret at the given offset and makes it the primary caret.
+	 *
+	 * @param offset The document offset of the new caret
+	 */
+	public void addCaret(int offset) {
+		if (offset < 0) {
+			return;
+		}
+		ensureCaretSet();
+		carets.setPrimaryIndex(carets.add(offset, offset));
+		syncPrimaryCaret();
+		repaint();
+	}
+
+	/**
+	 * Drops the extra carets when the document is changed by anything but {@link #editAllCarets},
+	 * such as undo, paste or a single caret command, as their offsets would no longer be valid.
+	 */
+	private void dropExtraCaretsUnlessBatched() {
+		if (!editingAllCarets && carets.isMultiple()) {
+			clearExtraCarets();
+		}
+	}
+
+	/**
+	 * Removes every caret except the primary one.
+	 */
+	public void clearExtraCarets() {
+		boolean wasMultiple = carets.isMultiple();
+		carets.clear();
+		if (wasMultiple) {
+			repaint();
+		}
+	}
+
+	/**
+	 * Replaces the carets with one caret per line between the two points,
+	 * each selecting the columns between the anchor and the current x position.
+	 *
+	 * @param anchor  The point where the column selection started
+	 * @param current The current point of the column selection
+	 */
+	public void selectColumn(Point anchor, Point current) {
+		try {
+			int anchorLine = getLineOfOffset(viewToModel2D(anchor));
+			int currentLine = getLineOfOffset(viewToModel2D(current));
+			int step = currentLine >= anchorLine ? 1 : -1;
+
+			carets.clear();
+			for (int line = anchorLine; ; line += step) {
+				int y = (int) modelToView2D(getLineStartOffset(line)).getCenterY();
+				int mark = viewToModel2D(new Point(anchor.x, y));
+				int dot = viewToModel2D(new Point(current.x, y));
+				carets.setPrimaryIndex(carets.add(dot, mark));
+				if (line == currentLine) {
+					break;
+				}
+			}
+			syncPrimaryCaret();
+			repaint();
+		} catch (BadLocationException ignored) {
+		}
+	}
+
+	/**
+	 * Adds a caret selecting the next occurrence of the primary selection.
+	 * Without a selection, the word under the caret is selected first.
+	 */
+	private void handleAddNextOccurrence() {
+		try {
+			if (!carets.isMultiple()) {
+				carets.reset(getCaret().getDot(), getCaret().getMark());
+				if (getSelectionStart() == getSelectionEnd()) {
+					int pos = getCaretPosition();
+					int start = Utilities.getWordStart(this, pos);
+					int end = Utilities.getWordEnd(this, pos);
+					if (end > start) {
+						carets.reset(end, start);
+						syncPrimaryCaret();
+					}
+					return;
+				}
+			}
+
+			int primary = carets.getPrimaryIndex();
+			int start = carets.getStart(primary);
+			String needle = getText(start, carets.getEnd(primary) - start);
+			if (needle.isEmpty()) {
+				return;
+			}
+
+			String text = getText();
+			int found = text.indexOf(needle, carets.getEnd(carets.size() - 1));
+			if (found < 0) {
+				found = text.indexOf(needle);
+			}
+			if (found >= 0) {
+				carets.setPrimaryIndex(carets.add(found + needle.length(), found));
+				syncPrimaryCaret();
+				repaint();
+			}
+		} catch (BadLocationException ex) {
+			UIManager.getLookAndFeel().provideErrorFeedback(this);
+		}
+	}
+
+	/**
+	 * Replaces the selection with a caret at the end of every selected line.
+	 */
+	private void handleAddCaretPerLine() {
+		try {
+			int firstLine = getLineOfOffset(getSelectionStart());
+			int lastLine = getLineOfOffset(getSelectionEnd());
+			if (firstLine == lastLine) {
+				return;
+			}
+
+			int lastDocLine = getLineCount() - 1;
+			carets.clear();
+			for (int line = firstLine; line <= lastLine; line++) {
+				int end = line == lastDocLine ? getLineEndOffset(line) : getLineEndOffset(line) - 1;
+				carets.setPrimaryIndex(carets.add(end, end));
+			}
+			syncPrimaryCaret();
+			repaint();
+		} catch (BadLocationException ex) {
+			UIManager.getLookAndFeel().provideErrorFeedback(this);
+		}
+	}
+
+	private void ensureCaretSet() {
+		if (!carets.isMultiple()) {
+			carets.reset(getCaret().getDot(), getCaret().getMark());
+		}
+	}
+
+	/**
+	 * Mirrors the primary caret of the caret set into the component's caret.
+	 */
+	private void syncPrimaryCaret() {
+		int index = carets.getPrimaryIndex();
+		if (index >= 0) {
+			Caret caret = getCaret();
+			caret.setDot(carets.getMark(index));
+			caret.moveDot(carets.getDot(index));
+		}
+	}
+
 	private String getIndentString(int level) {
 		StringBuilder sb = new StringBuilder();
 		for (int i = 0; i < level; i++) {
@@ -359,6 +727,29 @@ public class JWLTextArea extends JTextArea implements UIEvents.ThemeChangeListen
 		return linePainter;
 	}
 
+	/**
+	 * Gets the visible-range highlighter of this text area.
+	 * Bulk highlights such as search hits should be added through its layers.
+	 *
+	 * @return The highlighter
+	 */
+	public JWLHighlighter getJWLHighlighter() {
+		return highlighter;
+	}
+
+	public JWLCaretSet getCarets() {
+		return carets;
+	}
+
+	/**
+	 * Gets the fold model of this text area. May be null while the UI is first installed.
+	 *
+	 * @return The fold model
+	 */
+	public JWLFoldModel getFoldModel() {
+		return foldModel;
+	}
+
 	public void setCurrentLineColor(Color color) {
 		if (color != null) {
 			currentLineColor = color;
@@ -369,6 +760,15 @@ public class JWLTextArea extends JTextArea implements UIEvents.ThemeChangeListen
 		}
 	}
 
+	public void setOccurrenceColor(Color color) {
+		if (color != null) {
+			occurrenceColor = color;
+			if (occurrenceHighlighter != null) {
+				occurrenceHighlighter.setColor(color);
+			}
+		}
+	}
+
 	public void setAutoIndentEnabled(boolean enabled) {
 		this.autoIndentEnabled = enabled;
 	}
@@ -377,14 +777,146 @@ public class JWLTextArea extends JTextArea implements UIEvents.ThemeChangeListen
 		return autoIndentEnabled;
 	}
 
-	private void updateHighlightColorForTheme() {
-		String currentLaf = UIPreferences.getState().get(UIPreferences.KEY_LAF, "");
+	/**
+	 * Applies the colors of a theme palette and repaints.
+	 *
+	 * @param palette The palette
+	 */
+	public void setPalette(ThemePalette palette) {
+		if (palette == null || palette == this.palette) {
+			return;
+		}
+		this.palette = palette;
+		setCurrentLineColor(palette.currentLine());
+		setOccurrenceColor(palette.occurrence());
+		setCaretColor(palette.caret());
+		setSelectionColor(palette.selection());
+		setSelectedTextColor(palette.selectedText());
+		repaint();
+	}
+
+	/**
+	 * Gets the font the text is shown in, the zoomed font while the text area is zoomed.
+	 *
+	 * @return The font
+	 */
+	@Override
+	public Font getFont() {
+		return zoomFont != null ? zoomFont : super.getFont();
+	}
 
-		if (currentLaf.contains("FlatDarkLaf")) {
-			setCurrentLineColor(new Color(65, 68, 70));
+	/**
+	 * Shows the text in the font of a zoom level. Unwrapped text is laid out from the cached metrics,
+	 * so the views are kept and only the size of the text area changes.
+	 *
+	 * @param font The zoomed font
+	 */
+	void setZoomFont(Font font) {
+		Font oldFont = getFont();
+		zoomFont = font;
+		cachedMetrics = null;
+		if (getTextView() instanceof JWLFoldingView) {
+			revalidate();
+			repaint();
 		} else {
-			setCurrentLineColor(new Color(232, 232, 232));
+			// The other views measure the font when they are created
+			firePropertyChange("font", oldFont, font);
+		}
+	}
+
+	@Override
+	protected int getRowHeight() {
+		return getCachedMetrics().getHeight();
+	}
+
+	@Override
+	protected int getColumnWidth() {
+		return getCachedMetrics().charWidth('m');
+	}
+
+	/**
+	 * Gets the metrics of the font of this text area, measured again only after the font or the
+	 * graphics configuration changes.
+	 *
+	 * @return The cached font metrics
+	 */
+	public CachedFontMetrics getCachedMetrics() {
+		if (cachedMetrics == null) {
+			cachedMetrics = FontManager.getMetrics(this, getFont());
+		}
+		return cachedMetrics;
+	}
+
+	/**
+	 * Gets the caret rectangle of an offset, like {@link #modelToView2D}. Unwrapped text computes it
+	 * from the cached line height and character advances instead of the font metrics.
+	 *
+	 * @param offset The offset in the document
+	 * @return The caret rectangle
+	 * @throws BadLocationException If the offset is not in the document
+	 */
+	public Rectangle2D getCaretBounds(int offset) throws BadLocationException {
+		if (getTextView() instanceof JWLFoldingView view) {
+			return view.caretBounds(this, offset);
+		}
+		return modelToView2D(offset);
+	}
+
+	/**
+	 * Gets the start offset of the line shown at a y coordinate.
+	 *
+	 * @param y The y coordinate
+	 * @return The start offset of the line, the nearest line if no line is shown there
+	 */
+	public int getLineStartAt(int y) {
+		if (getTextView() instanceof JWLFoldingView view) {
+			return getDocument().getDefaultRootElement().getElement(view.lineAtY(this, y)).getStartOffset();
 		}
+		return viewToModel2D(new Point(0, y));
+	}
+
+	/**
+	 * Gets the end offset of the line shown at a y coordinate, before its line separator.
+	 *
+	 * @param y The y coordinate
+	 * @return The end offset of the line, the nearest line if no line is shown there
+	 */
+	public int getLineEndAt(int y) {
+		if (getTextView() instanceof JWLFoldingView view) {
+			return getDocument().getDefaultRootElement().getElement(view.lineAtY(this, y)).getEndOffset() - 1;
+		}
+		return viewToModel2D(new Point(Integer.MAX_VALUE / 2, y));
+	}
+
+	/**
+	 * Gets the caret rectangle of an offset through the cached metrics of a {@link JWLTextArea}, and
+	 * through the views of other text components.
+	 */
+	static Rectangle2D getCaretBounds(JTextComponent c, int offset) throws BadLocationException {
+		return c instanceof JWLTextArea textArea ? textArea.getCaretBounds(offset) : c.modelToView2D(offset);
+	}
+
+	private View getTextView() {
+		View root = getUI().getRootView(this);
+		return root.getViewCount() > 0 ? root.getView(0) : null;
+	}
+
+	/**
+	 * Gets the zoom of this text area.
+	 *
+	 * @return The zoom
+	 */
+	public JWLZoom getZoom() {
+		return zoom;
+	}
+
+	/**
+	 * Gets the theme palette applied to this text area.
+	 *
+	 * @return The palette
+	 */
+	public ThemePalette getPalette() {
+		return palette;
 	}
 
 	/**
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.coreui.components.textarea;
+
+import com.slobodanzivanovic.jewel.laf.FontManager;
+import com.slobodanzivanovic.jewel.util.platform.PlatformInfo;
+
+import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import java.awt.*;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
+
+/**
+ * Zooms the font of a text area by switching between the cached editor fonts of the
+ * {@link FontManager}, with the command key and the mouse wheel or the zoom keys.
+ * <p>
+ * Zoom steps requested within one frame, such as a fast wheel spin, are coalesced into a single
+ * font change. The zoomed font only swaps the cached metrics of the text area, whose views size
+ * the text from the line height and the longest line, so the document is not laid out again. The
+ * caret line keeps its position in the viewport: its new position follows from the cached line
+ * height of the new font, and the scroll pane is laid out once before the view position is set,
+ * so the zoomed text is painted in one pass, at its final position.
+ *
+ * @author Slobodan Zivanovic
+ */
+public class JWLZoom implements MouseWheelListener {
+
+	private static final int MIN_LEVEL = -6;
+	private static final int MAX_LEVEL = 24;
+	private static final int FRAME_MILLIS = 16;
+
+	private final JWLTextArea textArea;
+	private final Timer applyTimer;
+	private int level;
+	private int pendingLevel;
+
+	public JWLZoom(JWLTextArea textArea) {
+		this.textArea = textArea;
+
+		applyTimer = new Timer(FRAME_MILLIS, e -> apply());
+		applyTimer.setRepeats(false);
+
+		textArea.addMouseWheelListener(this);
+	}
+
+	public void zoomIn() {
+		setLevel(pendingLevel + 1);
+	}
+
+	public void zoomOut() {
+		setLevel(pendingLevel - 1);
+	}
+
+	public void resetZoom() {
+		setLevel(0);
+	}
+
+	/**
+	 * Gets the zoom level, the difference of the font size to the default editor font size.
+	 *
+	 * @return The zoom level
+	 */
+	public int getLevel() {
+		return pendingLevel;
+	}
+
+	/**
+	 * Sets the zoom level, applied in the next frame.
+	 *
+	 * @param level The difference of the font size to the default editor font size
+	 */
+	public void setLevel(int level) {
+		pendingLevel = Math.max(MIN_LEVEL, Math.min(MAX_LEVEL, level));
+		if (pendingLevel != this.level && !applyTimer.isRunning()) {
+			applyTimer.start();
+		}
+	}
+
+	@Override
+	public void mouseWheelMoved(MouseWheelEvent e) {
+		boolean isCommandKey = PlatformInfo.IS_MAC ? e.isMetaDown() : e.isControlDown();
+		if (isCommandKey) {
+			e.consume();
+			setLevel(pendingLevel - e.getWheelRotation());
+			return;
+		}
+
+		// Listening for wheel events takes them from the scroll pane, so hand them on
+		Container parent = textArea.getParent();
+		if (parent != null) {
+			parent.dispatchEvent(SwingUtilities.convertMouseEvent(textArea, e, parent));
+		}
+	}
+
+	private void apply() {
+		if (pendingLevel == level) {
+			return;
+		}
+		level = pendingLevel;
+		Font font = FontManager.createEditorFont(level);
+
+		if (!(textArea.getParent() instanceof JViewport viewport)) {
+			textArea.setZoomFont(font);
+			return;
+		}
+
+		int oldHeight = textArea.getCachedMetrics().getHeight();
+		Point position = viewport.getViewPosition();
+		Dimension extent = viewport.getExtentSize();
+		int top = textArea.getInsets().top;
+
+		// Anchor the caret line if it is visible, the first visible line otherwise
+		int line = caretVisualLine();
+		int anchor = top + line * oldHeight - position.y;
+		if (anchor < 0 || anchor >= extent.height) {
+			line = Math.max(0, (position.y - top) / oldHeight);
+			anchor = top + line * oldHeight - position.y;
+		}
+
+		textArea.setZoomFont(font);
+		int newHeight = textArea.getCachedMetrics().getHeight();
+		viewport.getParent().validate();
+
+		Dimension viewSize = viewport.getViewSize();
+		int y = top + line * newHeight - anchor;
+		int x = position.x * newHeight / oldHeight;
+		viewport.setViewPosition(new Point(
+			Math.max(0, Math.min(x, viewSize.width - extent.width)),
+			Math.max(0, Math.min(y, viewSize.height - extent.height))));
+	}
+
+	private int caretVisualLine() {
+		try {
+			int line = textArea.getLineOfOffset(textArea.getCaretPosition());
+			JWLFoldModel folds = textArea.getFoldModel();
+			return folds != null ? folds.modelToVisualLine(line) : line;
+		} catch (BadLocationException e) {
+			return 0;
+		}
+	}
+}
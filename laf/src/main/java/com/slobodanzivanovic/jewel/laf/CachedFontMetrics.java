@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.laf;
+
+import java.awt.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The metrics of a font measured once, so rendering and caret code read plain fields instead of
+ * querying {@link FontMetrics} on every paint.
+ * <p>
+ * Character advances are kept in tables of 256 characters: the ASCII table is filled when the
+ * metrics are created, the other tables of the basic multilingual plane on the first use of one
+ * of their characters. Wide characters keep their own advance in monospaced fonts too, so the
+ * tables are used for every font.
+ *
+ * @author Slobodan Zivanovic
+ */
+public final class CachedFontMetrics {
+
+	private static final int PAGE_BITS = 8;
+	private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+	private final Font font;
+	private final FontMetrics metrics;
+	private final int height;
+	private final int ascent;
+	private final int descent;
+	private final int leading;
+	private final boolean monospaced;
+	private final AtomicReferenceArray<int[]> pages = new AtomicReferenceArray<>(Character.MAX_VALUE + 1 >> PAGE_BITS);
+
+	CachedFontMetrics(FontMetrics metrics) {
+		this.font = metrics.getFont();
+		this.metrics = metrics;
+		height = metrics.getHeight();
+		ascent = metrics.getAscent();
+		descent = metrics.getDescent();
+		leading = metrics.getLeading();
+
+		int[] ascii = measure(0);
+		pages.set(0, ascii);
+		boolean monospaced = true;
+		for (char c = ' ' + 1; c < 0x7F; c++) {
+			monospaced &= ascii[c] == ascii[' '];
+		}
+		this.monospaced = monospaced;
+	}
+
+	public Font getFont() {
+		return font;
+	}
+
+	/**
+	 * Returns the underlying metrics, for measurements not covered by the cached values.
+	 *
+	 * @return The font metrics
+	 */
+	public FontMetrics getFontMetrics() {
+		return metrics;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getAscent() {
+		return ascent;
+	}
+
+	public int getDescent() {
+		return descent;
+	}
+
+	public int getLeading() {
+		return leading;
+	}
+
+	/**
+	 * Returns whether the printable ASCII characters share one advance.
+	 *
+	 * @return true for monospaced fonts
+	 */
+	public boolean isMonospaced() {
+		return monospaced;
+	}
+
+	/**
+	 * Returns the advance of a character.
+	 *
+	 * @param c The character
+	 * @return The advance in pixels
+	 */
+	public int charWidth(char c) {
+		int index = c >>> PAGE_BITS;
+		int[] page = pages.get(index);
+		if (page == null) {
+			page = measure(index);
+			pages.compareAndSet(index, null, page);
+		}
+		return page[c & (PAGE_SIZE - 1)];
+	}
+
+	/**
+	 * Returns the advance of a range of characters, measuring supplementary characters directly.
+	 *
+	 * @param text  The text
+	 * @param start The index of the first character
+	 * @param end   The index after the last character
+	 * @return The advance in pixels
+	 */
+	public int charsWidth(CharSequence text, int start, int end) {
+		int width = 0;
+		for (int i = start; i < end; i++) {
+			char c = text.charAt(i);
+			if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+				width += metrics.charWidth(Character.toCodePoint(c, text.charAt(++i)));
+			} else {
+				width += charWidth(c);
+			}
+		}
+		return width;
+	}
+
+	/**
+	 * Returns the advance of a string.
+	 *
+	 * @param text The text
+	 * @return The advance in pixels
+	 */
+	public int stringWidth(CharSequence text) {
+		return charsWidth(text, 0, text.length());
+	}
+
+	private int[] measure(int index) {
+		int[] page = new int[PAGE_SIZE];
+		int base = index << PAGE_BITS;
+		for (int i = 0; i < PAGE_SIZE; i++) {
+			page[i] = metrics.charWidth((char) (base + i));
+		}
+		return page;
+	}
+}
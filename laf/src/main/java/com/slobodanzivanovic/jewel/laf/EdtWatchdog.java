@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.laf;
+
+import com.slobodanzivanovic.jewel.util.logging.Logger;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Detects events that keep the EDT busy for longer than a threshold and logs what it was doing.
+ * <p>
+ * A daemon thread posts a heartbeat to the event queue and waits for it to run. When it has not run
+ * within the threshold, the EDT stack is sampled every sample interval until the heartbeat finally
+ * runs. The stall is then logged as a warning with its duration and the distinct stacks sampled,
+ * most frequent first. The heartbeat waits behind every event queued before it, so the measured
+ * duration is how long the UI was unresponsive, not the duration of one event. The count and the
+ * durations of all stalls are aggregated for the session and logged by {@link #close()}.
+ *
+ * @author Slobodan Zivanovic
+ */
+public final class EdtWatchdog implements AutoCloseable {
+
+	private static final int MAX_FRAMES = 48;
+	// Package-private in java.awt, the class of every EDT
+	private static final String EDT_CLASS = "java.awt.EventDispatchThread";
+
+	/**
+	 * Configuration of the watchdog.
+	 *
+	 * @param thresholdMillis      How long a heartbeat may wait before the EDT is considered stalled
+	 * @param sampleIntervalMillis How often the EDT stack is sampled during a stall
+	 * @param maxSamples           The number of samples kept for one stall, later samples are dropped
+	 */
+	public record Options(long thresholdMillis, long sampleIntervalMillis, int maxSamples) {
+
+		public Options {
+			if (thresholdMillis <= 0) {
+				throw new IllegalArgumentException("Threshold must be positive: " + thresholdMillis);
+			}
+			if (sampleIntervalMillis <= 0) {
+				throw new IllegalArgumentException("Sample interval must be positive: " + sampleIntervalMillis);
+			}
+			if (maxSamples < 1) {
+				throw new IllegalArgumentException("At least one sample must be kept: " + maxSamples);
+			}
+		}
+
+		/**
+		 * Returns a 250ms threshold, overridden by the {@code jewel.edt.stallThreshold} system property,
+		 * with a sample every 100ms and at most 50 samples per stall.
+		 *
+		 * @return The default options
+		 */
+		public static Options defaults() {
+			return new Options(Long.getLong("jewel.edt.stallThreshold", 250), 100, 50);
+		}
+	}
+
+	/**
+	 * The stalls detected during the session.
+	 *
+	 * @param stalls        The number of stalls
+	 * @param totalMillis   The summed duration of the stalls
+	 * @param longestMillis The duration of the longest stall
+	 */
+	public record Stats(int stalls, long totalMillis, long longestMillis) {
+
+		public long averageMillis() {
+			return stalls == 0 ? 0 : totalMillis / stalls;
+		}
+	}
+
+	private final Logger logger;
+	private final Options options;
+	private final Thread thread;
+	private volatile boolean running;
+	// Found on start and whenever it died, since the EDT is replaced after an uncaught exception,
+	// and updated by every heartbeat
+	private volatile Thread edt;
+	private Stats stats = new Stats(0, 0, 0);
+
+	/**
+	 * Creates a stopped watchdog.
+	 *
+	 * @param logger  The logger the stalls are written to
+	 * @param options The configuration
+	 */
+	public EdtWatchdog(Logger logger, Options options) {
+		this.logger = logger;
+		this.options = options;
+		this.thread = new Thread(this::watch, "jewel-edt-watchdog");
+		thread.setDaemon(true);
+	}
+
+	/**
+	 * Starts watching the EDT. Initialises AWT if it is not already.
+	 * <p>
+	 * The EDT is looked up among the live threads rather than learned from a heartbeat, so a stall
+	 * already in progress, like building the first window, is sampled too.
+	 */
+	public void start() {
+		edt = findEdt();
+		running = true;
+		thread.start();
+	}
+
+	/**
+	 * Returns the stalls detected so far.
+	 *
+	 * @return The session statistics
+	 */
+	public synchronized Stats getStats() {
+		return stats;
+	}
+
+	/**
+	 * Stops the watchdog and logs the session statistics.
+	 */
+	@Override
+	public void close() {
+		running = false;
+		thread.interrupt();
+		Stats current = getStats();
+		logger.info("EDT stalls over {}ms this session: {}, total {}ms, longest {}ms",
+			options.thresholdMillis(), current.stalls(), current.totalMillis(), current.longestMillis());
+	}
+
+	private void watch() {
+		long pause = Math.min(options.thresholdMillis(), 100);
+		try {
+			while (running) {
+				CountDownLatch heartbeat = new CountDownLatch(1);
+				long posted = System.nanoTime();
+				SwingUtilities.invokeLater(() -> {
+					edt = Thread.currentThread();
+					heartbeat.countDown();
+				});
+				if (!heartbeat.await(options.thresholdMillis(), TimeUnit.MILLISECONDS)) {
+					List<StackTraceElement[]> samples = new ArrayList<>();
+					do {
+						Thread current = edt;
+						if (current == null || !current.isAlive()) {
+							current = findEdt();
+							edt = current;
+						}
+						if (current != null && samples.size() < options.maxSamples()) {
+							samples.add(current.getStackTrace());
+						}
+					} while (!heartbeat.await(options.sampleIntervalMillis(), TimeUnit.MILLISECONDS));
+					record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - posted), samples);
+				}
+				Thread.sleep(pause);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Finds the live EDT without posting to the event queue, which may be the very thing stalled.
+	 *
+	 * @return The EDT, or null if AWT has not started it yet
+	 */
+	private static Thread findEdt() {
+		if (SwingUtilities.isEventDispatchThread()) {
+			return Thread.currentThread();
+		}
+		ThreadGroup root = Thread.currentThread().getThreadGroup();
+		while (root.getParent() != null) {
+			root = root.getParent();
+		}
+		Thread[] threads = new Thread[root.activeCount() + 16];
+		int count = root.enumerate(threads, true);
+		for (int i = 0; i < count; i++) {
+			if (threads[i].isAlive() && EDT_CLASS.equals(threads[i].getClass().getName())) {
+				return threads[i];
+			}
+		}
+		return null;
+	}
+
+	private void record(long millis, List<StackTraceElement[]> samples) {
+		synchronized (this) {
+			stats = new Stats(stats.stalls() + 1, stats.totalMillis() + millis, Math.max(stats.longestMillis(), millis));
+		}
+		logger.warning(() -> describe(millis, samples));
+	}
+
+	private static String describe(long millis, List<StackTraceElement[]> samples) {
+		// Identical samples are merged, so the frame the EDT spent the stall in is listed once
+		Map<List<StackTraceElement>, Integer> counts = new LinkedHashMap<>();
+		for (StackTraceElement[] sample : samples) {
+			counts.merge(Arrays.asList(sample), 1, Integer::sum);
+		}
+		StringBuilder builder = new StringBuilder(1024);
+		builder.append("EDT stalled for ").append(millis).append("ms, ")
+			.append(samples.size()).append(" stack samples");
+		counts.entrySet().stream()
+			.sorted(Map.Entry.<List<StackTraceElement>, Integer>comparingByValue().reversed())
+			.forEach(entry -> {
+				List<StackTraceElement> frames = entry.getKey();
+				builder.append(System.lineSeparator()).append("  ").append(entry.getValue())
+					.append(" of ").append(samples.size()).append(" samples:");
+				for (int i = 0; i < Math.min(frames.size(), MAX_FRAMES); i++) {
+					builder.append(System.lineSeparator()).append("\tat ").append(frames.get(i));
+				}
+				if (frames.size() > MAX_FRAMES) {
+					builder.append(System.lineSeparator()).append("\t... ")
+						.append(frames.size() - MAX_FRAMES).append(" more");
+				}
+			});
+		return builder.toString();
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.laf;
+
+import java.awt.*;
+import java.awt.font.FontRenderContext;
+
+/**
+ * Identifies a font and how it is rendered, the key of the {@link FontManager} caches.
+ *
+ * @param family            The font family
+ * @param style             The font style, a combination of {@link Font#BOLD} and {@link Font#ITALIC}
+ * @param size              The point size
+ * @param scale             The scale of the device the font is rendered on, 1 when unknown
+ * @param antialiasing      The text antialiasing hint of the render context
+ * @param fractionalMetrics The fractional metrics hint of the render context
+ * @author Slobodan Zivanovic
+ */
+public record FontKey(String family, int style, float size, double scale, Object antialiasing,
+					  Object fractionalMetrics) {
+
+	/**
+	 * Returns the key of a font to be created, independent of rendering hints.
+	 *
+	 * @param family The font family
+	 * @param style  The font style
+	 * @param size   The point size
+	 * @param scale  The device scale
+	 * @return The key
+	 */
+	public static FontKey of(String family, int style, float size, double scale) {
+		return new FontKey(family, style, size, scale, RenderingHints.VALUE_TEXT_ANTIALIAS_DEFAULT,
+			RenderingHints.VALUE_FRACTIONALMETRICS_DEFAULT);
+	}
+
+	/**
+	 * Returns the key of a font rendered at the given scale with the hints of a render context.
+	 *
+	 * @param font    The font
+	 * @param scale   The device scale
+	 * @param context The render context the font is measured with
+	 * @return The key
+	 */
+	public static FontKey of(Font font, double scale, FontRenderContext context) {
+		return new FontKey(font.getFamily(), font.getStyle(), font.getSize2D(), scale,
+			context.getAntiAliasingHint(), context.getFractionalMetricsHint());
+	}
+}
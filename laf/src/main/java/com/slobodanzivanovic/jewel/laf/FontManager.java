@@ -20,25 +20,37 @@ import com.formdev.flatlaf.FlatLaf;
 import com.formdev.flatlaf.fonts.inter.FlatInterFont;
 import com.formdev.flatlaf.fonts.jetbrains_mono.FlatJetBrainsMonoFont;
 import com.formdev.flatlaf.util.FontUtils;
+import com.slobodanzivanovic.jewel.util.platform.RuntimeMonitor;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Manages font configuration and creation for the application.
  * This class handles the setup of default fonts, including Inter for UI elements
  * and JetBrains Mono for editor text.
+ * <p>
+ * Editor fonts are created once per family, size and screen scale, and font metrics are
+ * measured once per {@link FontKey}, including the antialiasing and fractional metrics hints
+ * of the render context, so painting code never creates fonts or queries metrics itself.
+ * Both caches are dropped under memory pressure reported by {@link RuntimeMonitor}.
  *
  * @author Slobodan Zivanovic
  */
 public class FontManager {
 
-    /**
-     * Cache the base editor font for comparison and reuse.
-     * Helps optimize font creation by avoiding unnecessary recreations
-     * of the same font instance
-     */
-    private static Font baseFont;
+    // Bounds the caches, which are cleared when a burst of zoom levels or scales outgrows them
+    private static final int MAX_CACHED = 64;
+
+    private static final Map<FontKey, Font> editorFonts = new ConcurrentHashMap<>();
+    private static final Map<FontKey, CachedFontMetrics> metrics = new ConcurrentHashMap<>();
+
+    static {
+        RuntimeMonitor.getInstance().register("font caches", pressure -> clearCaches());
+    }
 
     public static void setupFonts() {
         FlatInterFont.installLazy();
@@ -50,22 +62,81 @@ public class FontManager {
         FlatLaf.setPreferredMonospacedFontFamily(FlatJetBrainsMonoFont.FAMILY);
     }
 
+    /**
+     * Returns the editor font, created on the first request of its size at the scale of the default screen.
+     *
+     * @param sizeIncr The difference to the default font size
+     * @return The editor font
+     */
     public static Font createEditorFont(int sizeIncr) {
         int size = UIManager.getFont("defaultFont").getSize() + sizeIncr;
-        Font font = FontUtils.getCompositeFont(FlatJetBrainsMonoFont.FAMILY, Font.PLAIN, size);
+        FontKey key = FontKey.of(FlatJetBrainsMonoFont.FAMILY, Font.PLAIN, size, defaultScreenScale());
+        if (editorFonts.size() >= MAX_CACHED) {
+            editorFonts.clear();
+        }
+        return editorFonts.computeIfAbsent(key, FontManager::loadEditorFont);
+    }
 
-        if (baseFont != font) {
-            baseFont = font;
+    /**
+     * Returns the metrics of a font as rendered by a component, measured on the first request
+     * of the font at the scale of the component's screen with the component's text hints.
+     *
+     * @param component The component rendering the font
+     * @param font      The font
+     * @return The cached metrics
+     */
+    public static CachedFontMetrics getMetrics(Component component, Font font) {
+        // Served from the toolkit's own cache, only the render context is used here
+        FontMetrics fontMetrics = component.getFontMetrics(font);
+        FontKey key = FontKey.of(font, scaleOf(component), fontMetrics.getFontRenderContext());
+        CachedFontMetrics cached = metrics.get(key);
+        if (cached == null) {
+            if (metrics.size() >= MAX_CACHED) {
+                metrics.clear();
+            }
+            cached = metrics.computeIfAbsent(key, k -> new CachedFontMetrics(fontMetrics));
         }
+        return cached;
+    }
+
+    /**
+     * Drops the cached fonts and metrics, for example after the default font changed.
+     */
+    public static void clearCaches() {
+        editorFonts.clear();
+        metrics.clear();
+    }
+
+    private static Font loadEditorFont(FontKey key) {
+        int size = (int) key.size();
+        Font font = FontUtils.getCompositeFont(key.family(), key.style(), size);
 
         if (isFallbackFont(font)) {
-            Font defaultFont = new Font(Font.MONOSPACED, Font.PLAIN, size);
+            Font defaultFont = new Font(Font.MONOSPACED, key.style(), size);
             font = defaultFont.deriveFont((float) size);
         }
 
         return font;
     }
 
+    private static double scaleOf(Component component) {
+        GraphicsConfiguration configuration = component.getGraphicsConfiguration();
+        if (configuration == null) {
+            return 1;
+        }
+        AffineTransform transform = configuration.getDefaultTransform();
+        return transform.getScaleX();
+    }
+
+    private static double defaultScreenScale() {
+        if (GraphicsEnvironment.isHeadless()) {
+            return 1;
+        }
+        GraphicsConfiguration configuration = GraphicsEnvironment.getLocalGraphicsEnvironment()
+            .getDefaultScreenDevice().getDefaultConfiguration();
+        return configuration.getDefaultTransform().getScaleX();
+    }
+
     private static boolean isFallbackFont(Font font) {
         return Font.DIALOG.equalsIgnoreCase(font.getFamily());
     }
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.laf;
+
+import com.formdev.flatlaf.ui.FlatTextAreaUI;
+
+import javax.swing.*;
+import javax.swing.plaf.TextUI;
+import javax.swing.plaf.basic.BasicTextAreaUI;
+import javax.swing.text.Element;
+import javax.swing.text.View;
+import javax.swing.text.ViewFactory;
+
+/**
+ * Creates text area UIs of the current look and feel whose views come from a custom factory.
+ * <p>
+ * Swing only lets the UI delegate choose the views of a text component, so a component that
+ * needs its own views would otherwise have to install a fixed Basic delegate and lose the styling
+ * of the look and feel. The returned UI is a subclass of the delegate the look and feel installs,
+ * and only the view creation is replaced.
+ *
+ * @author Slobodan Zivanovic
+ */
+public final class TextAreaUIs {
+
+	private TextAreaUIs() {
+	}
+
+	/**
+	 * Creates the UI the current look and feel installs on a text area, with its views created by
+	 * the given factory. Look and feels without a known delegate get a {@link BasicTextAreaUI}.
+	 *
+	 * @param textArea The text area the UI is created for
+	 * @param views    Creates the view of an element, or returns null to keep the default view
+	 * @return The UI, to be installed with {@link JTextArea#setUI}
+	 */
+	public static TextUI create(JTextArea textArea, ViewFactory views) {
+		if (UIManager.getUI(textArea) instanceof FlatTextAreaUI) {
+			return new FlatTextAreaUI() {
+				@Override
+				public View create(Element elem) {
+					View view = views.create(elem);
+					return view != null ? view : super.create(elem);
+				}
+			};
+		}
+		return new BasicTextAreaUI() {
+			@Override
+			public View create(Element elem) {
+				View view = views.create(elem);
+				return view != null ? view : super.create(elem);
+			}
+		};
+	}
+}
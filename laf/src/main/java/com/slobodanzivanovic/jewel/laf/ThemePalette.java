@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.laf;
+
+import java.awt.*;
+
+/**
+ * The editor colors of a theme, resolved once by {@link ThemePalettes} when the theme is activated.
+ *
+ * @param dark         Whether the theme is dark
+ * @param currentLine  The background of the line holding the caret
+ * @param occurrence   The background of the occurrences of the word at the caret
+ * @param caret        The caret color
+ * @param selection    The background of selected text
+ * @param selectedText The foreground of selected text
+ * @author Slobodan Zivanovic
+ */
+public record ThemePalette(boolean dark, Color currentLine, Color occurrence, Color caret, Color selection,
+						   Color selectedText) {
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.laf;
+
+import com.formdev.flatlaf.FlatLaf;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves and caches the {@link ThemePalette} of each look and feel.
+ * <p>
+ * A palette is resolved from the UI defaults the first time its look and feel is activated, and
+ * reused when switching back to it. The active palette is published through a volatile field and
+ * delivered with {@link UIEvents.ThemeChanged}, so editors only swap a reference and repaint on a
+ * theme change instead of reading preferences or the UI defaults themselves.
+ *
+ * @author Slobodan Zivanovic
+ */
+public final class ThemePalettes {
+
+	private static final Map<String, ThemePalette> PALETTES = new ConcurrentHashMap<>();
+	private static volatile ThemePalette current;
+
+	private ThemePalettes() {
+	}
+
+	/**
+	 * Returns the palette of the active look and feel.
+	 *
+	 * @return The active palette
+	 */
+	public static ThemePalette current() {
+		ThemePalette palette = current;
+		return palette != null ? palette : activate();
+	}
+
+	/**
+	 * Makes the palette of the installed look and feel the active one, resolving it
+	 * on its first activation. Called after the look and feel changed.
+	 *
+	 * @return The active palette
+	 */
+	public static ThemePalette activate() {
+		LookAndFeel laf = UIManager.getLookAndFeel();
+		String key = laf != null ? laf.getClass().getName() : "";
+		ThemePalette palette = PALETTES.computeIfAbsent(key, k -> resolve(laf instanceof FlatLaf && FlatLaf.isLafDark()));
+		current = palette;
+		return palette;
+	}
+
+	private static ThemePalette resolve(boolean dark) {
+		Color foreground = dark ? Color.WHITE : Color.BLACK;
+		if (dark) {
+			return new ThemePalette(true, new Color(65, 68, 70), new Color(52, 74, 94),
+				color("TextArea.caretForeground", foreground), color("TextArea.selectionBackground", new Color(33, 66, 131)),
+				color("TextArea.selectionForeground", foreground));
+		}
+		return new ThemePalette(false, new Color(232, 232, 232), new Color(210, 225, 250),
+			color("TextArea.caretForeground", foreground), color("TextArea.selectionBackground", new Color(166, 210, 255)),
+			color("TextArea.selectionForeground", foreground));
+	}
+
+	private static Color color(String key, Color fallback) {
+		Color color = UIManager.getColor(key);
+		return color != null ? color : fallback;
+	}
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.laf;
+
+import javax.swing.*;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * A typed bus delivering UI events to their subscribers on the EDT.
+ * <p>
+ * Events may be published from any thread. Publishing only records the event, and all events
+ * published within one frame of {@value #FRAME_MILLIS}ms are delivered together in a single EDT
+ * pass. Events of the same class are coalesced, only the latest one of a burst is delivered, so a
+ * burst of theme or font changes costs every subscriber one update. Subscribers are matched by the
+ * exact class of the event.
+ * <p>
+ * The subscribers of each event class are an immutable array replaced on every change, so
+ * dispatching never locks and subscribing during a dispatch affects the next one. Components
+ * subscribe with themselves as the owner, which the bus references weakly: the subscription ends
+ * when the owner is collected, without an explicit {@link Subscription#unsubscribe()}.
+ *
+ * @author Slobodan Zivanovic
+ */
+public final class UIEventBus {
+
+	private static final int FRAME_MILLIS = 16;
+	private static final Subscriber<?>[] NO_SUBSCRIBERS = new Subscriber<?>[0];
+
+	/**
+	 * A registration of a listener, which stops delivering events once unsubscribed.
+	 */
+	public interface Subscription {
+		void unsubscribe();
+	}
+
+	private static final Map<Class<?>, Subscriber<?>[]> SUBSCRIBERS = new ConcurrentHashMap<>();
+	// The latest pending event of each class, in the order the classes were first published
+	private static final Map<Class<?>, Object> PENDING = new LinkedHashMap<>();
+	private static final Timer DISPATCH_TIMER = new Timer(FRAME_MILLIS, e -> dispatch());
+
+	static {
+		DISPATCH_TIMER.setRepeats(false);
+	}
+
+	private UIEventBus() {
+	}
+
+	/**
+	 * Subscribes a listener held strongly until it is unsubscribed.
+	 *
+	 * @param type     The class of the events
+	 * @param listener The listener, called on the EDT
+	 * @return The subscription
+	 */
+	public static <E> Subscription subscribe(Class<E> type, Consumer<? super E> listener) {
+		return add(new Subscriber<E>(type, null, (owner, event) -> listener.accept(event)));
+	}
+
+	/**
+	 * Subscribes a listener on behalf of an owner that is referenced weakly. The listener receives
+	 * the owner with every event and must not reference the owner itself, otherwise the owner is
+	 * never collected.
+	 *
+	 * @param type     The class of the events
+	 * @param owner    The owner, usually the subscribing component
+	 * @param listener The listener, called on the EDT with the owner and the event
+	 * @return The subscription, which also ends when the owner is collected
+	 */
+	public static <E, T> Subscription subscribe(Class<E> type, T owner, BiConsumer<? super T, ? super E> listener) {
+		return add(new Subscriber<>(type, new WeakReference<>(owner), listener));
+	}
+
+	/**
+	 * Publishes an event, delivered in the next frame unless a newer event of the same class
+	 * is published before.
+	 *
+	 * @param event The event
+	 */
+	public static void publish(Object event) {
+		boolean start;
+		synchronized (PENDING) {
+			start = PENDING.isEmpty();
+			PENDING.put(event.getClass(), event);
+		}
+		if (start) {
+			DISPATCH_TIMER.start();
+		}
+	}
+
+	/**
+	 * Delivers the pending events on the EDT.
+	 */
+	private static void dispatch() {
+		List<Object> events;
+		synchronized (PENDING) {
+			events = new ArrayList<>(PENDING.values());
+			PENDING.clear();
+		}
+
+		for (Object event : events) {
+			Subscriber<?>[] subscribers = SUBSCRIBERS.getOrDefault(event.getClass(), NO_SUBSCRIBERS);
+			boolean collected = false;
+			for (Subscriber<?> subscriber : subscribers) {
+				try {
+					collected |= !subscriber.deliver(event);
+				} catch (RuntimeException e) {
+					System.err.println("Failed to dispatch " + event.getClass().getSimpleName() + ": " + e.getMessage());
+					e.printStackTrace();
+				}
+			}
+			if (collected) {
+				prune(event.getClass());
+			}
+		}
+	}
+
+	private static synchronized Subscription add(Subscriber<?> subscriber) {
+		Subscriber<?>[] current = SUBSCRIBERS.getOrDefault(subscriber.type, NO_SUBSCRIBERS);
+		List<Subscriber<?>> updated = new ArrayList<>(current.length + 1);
+		for (Subscriber<?> existing : current) {
+			if (existing.isAlive()) {
+				updated.add(existing);
+			}
+		}
+		updated.add(subscriber);
+		SUBSCRIBERS.put(subscriber.type, updated.toArray(NO_SUBSCRIBERS));
+		return subscriber;
+	}
+
+	private static synchronized void remove(Subscriber<?> subscriber) {
+		Subscriber<?>[] current = SUBSCRIBERS.get(subscriber.type);
+		if (current == null) {
+			return;
+		}
+		List<Subscriber<?>> updated = new ArrayList<>(current.length);
+		for (Subscriber<?> existing : current) {
+			if (existing != subscriber && existing.isAlive()) {
+				updated.add(existing);
+			}
+		}
+		replace(subscriber.type, updated);
+	}
+
+	private static synchronized void prune(Class<?> type) {
+		Subscriber<?>[] current = SUBSCRIBERS.get(type);
+		if (current == null) {
+			return;
+		}
+		List<Subscriber<?>> updated = new ArrayList<>(current.length);
+		for (Subscriber<?> existing : current) {
+			if (existing.isAlive()) {
+				updated.add(existing);
+			}
+		}
+		replace(type, updated);
+	}
+
+	private static void replace(Class<?> type, List<Subscriber<?>> subscribers) {
+		if (subscribers.isEmpty()) {
+			SUBSCRIBERS.remove(type);
+		} else {
+			SUBSCRIBERS.put(type, subscribers.toArray(NO_SUBSCRIBERS));
+		}
+	}
+
+	private static final class Subscriber<E> implements Subscription {
+		private final Class<E> type;
+		// Null for listeners held strongly
+		private final WeakReference<?> owner;
+		private final BiConsumer<Object, ? super E> listener;
+		private volatile boolean active = true;
+
+		@SuppressWarnings("unchecked")
+		Subscriber(Class<E> type, WeakReference<?> owner, BiConsumer<?, ? super E> listener) {
+			this.type = type;
+			this.owner = owner;
+			this.listener = (BiConsumer<Object, ? super E>) listener;
+		}
+
+		boolean isAlive() {
+			return active && (owner == null || owner.get() != null);
+		}
+
+		/**
+		 * Delivers the event unless unsubscribed.
+		 *
+		 * @return false if the owner was collected
+		 */
+		boolean deliver(Object event) {
+			if (!active) {
+				return true;
+			}
+			Object target = null;
+			if (owner != null) {
+				target = owner.get();
+				if (target == null) {
+					return false;
+				}
+			}
+			listener.accept(target, type.cast(event));
+			return true;
+		}
+
+		@Override
+		public void unsubscribe() {
+			active = false;
+			remove(this);
+		}
+	}
+}
@@ -16,31 +16,47 @@
 
 package com.slobodanzivanovic.jewel.laf;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * The UI events of the application, delivered through the {@link UIEventBus}.
+ *
  * @author Slobodan Zivanovic
  */
 public class UIEvents {
 
+	/**
+	 * Published after the look and feel changed.
+	 *
+	 * @param palette The palette of the new theme
+	 */
+	public record ThemeChanged(ThemePalette palette) {
+	}
+
 	public interface ThemeChangeListener {
 		void onThemeChanged();
 	}
 
-	private static final List<ThemeChangeListener> themeListeners = new ArrayList<>();
+	private static final Map<ThemeChangeListener, UIEventBus.Subscription> themeListeners = new ConcurrentHashMap<>();
 
+	/**
+	 * Adds a listener held strongly until removed, called on the EDT. Components should rather
+	 * subscribe to {@link ThemeChanged} on the bus with themselves as the owner.
+	 */
 	public static void addThemeChangeListener(ThemeChangeListener listener) {
-		themeListeners.add(listener);
+		themeListeners.computeIfAbsent(listener,
+			l -> UIEventBus.subscribe(ThemeChanged.class, e -> l.onThemeChanged()));
 	}
 
 	public static void removeThemeChangeListener(ThemeChangeListener listener) {
-		themeListeners.remove(listener);
+		UIEventBus.Subscription subscription = themeListeners.remove(listener);
+		if (subscription != null) {
+			subscription.unsubscribe();
+		}
 	}
 
 	public static void fireThemeChanged() {
-		for (ThemeChangeListener listener : themeListeners) {
-			listener.onThemeChanged();
-		}
+		UIEventBus.publish(new ThemeChanged(ThemePalettes.current()));
 	}
 }
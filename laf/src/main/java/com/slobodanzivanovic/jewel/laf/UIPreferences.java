@@ -21,8 +21,10 @@ import com.formdev.flatlaf.FlatLaf;
 import com.formdev.flatlaf.FlatLightLaf;
 import com.formdev.flatlaf.extras.FlatInspector;
 import com.formdev.flatlaf.extras.FlatUIDefaultsInspector;
+import com.slobodanzivanovic.jewel.util.logging.LogLevels;
 import com.slobodanzivanovic.jewel.util.platform.PlatformInfo;
-import com.slobodanzivanovic.jewel.util.prefs.XMLPreferences;
+import com.slobodanzivanovic.jewel.util.prefs.BinaryPreferencesFactory;
+import com.slobodanzivanovic.jewel.util.prefs.XMLPreferencesFactory;
 
 import javax.swing.*;
 import java.util.prefs.Preferences;
@@ -31,7 +33,8 @@ import java.util.prefs.Preferences;
  * Manages UI preferences and system scale settings.
  * This class handles the persistence and application of user interface preferences,
  * including the look-and-feel theme (light/dark) and system scaling factors.
- * It uses XML-based preferences storage
+ * It uses XML-based preferences storage, or a single binary file when the
+ * {@value #STORE_PROPERTY} system property is set to {@value #STORE_BINARY}.
  *
  * @author Slobodan Zivanovic
  */
@@ -40,26 +43,33 @@ public class UIPreferences {
 	public static final String KEY_SYSTEM_SCALE_FACTOR = "systemScaleFactor";
 
 	private static final String PREFS_ROOT_PATH = "/jewel-prefs";
-	private static XMLPreferences state;
+	private static final String PREFS_LOGGING_NODE = "logging";
+	private static final String STORE_PROPERTY = "jewel.prefs.store";
+	private static final String STORE_BINARY = "binary";
+	private static Preferences state;
 
 	/**
-	 * Retrieves the current XML preferences state object.
+	 * Retrieves the current preferences state object.
 	 *
-	 * @return XMLPreferences object containing the current preferences state
+	 * @return Preferences object containing the current preferences state
 	 */
-	public static XMLPreferences getState() {
+	public static Preferences getState() {
 		return state;
 	}
 
 	/**
-	 * Initializes the preferences system by setting up the XML preferences factory
-	 * and creating the root preferences node.
+	 * Initializes the preferences system by setting up the XML or binary preferences factory
+	 * and creating the root preferences node. Log level thresholds are kept in its
+	 * logging child node.
 	 */
 	public static void init() {
-		System.setProperty("java.util.prefs.PreferencesFactory",
-			"com.slobodanzivanovic.jewel.util.prefs.XMLPreferencesFactory");
+		String factory = STORE_BINARY.equals(System.getProperty(STORE_PROPERTY))
+			? BinaryPreferencesFactory.class.getName()
+			: XMLPreferencesFactory.class.getName();
+		System.setProperty("java.util.prefs.PreferencesFactory", factory);
 
-		state = (XMLPreferences) Preferences.userRoot().node(PREFS_ROOT_PATH);
+		state = Preferences.userRoot().node(PREFS_ROOT_PATH);
+		LogLevels.bind(state.node(PREFS_LOGGING_NODE));
 	}
 
 	/**
@@ -84,6 +94,7 @@ public class UIPreferences {
 
 		UIManager.addPropertyChangeListener(e -> {
 			if ("lookAndFeel".equals(e.getPropertyName())) {
+				ThemePalettes.activate();
 				state.put(KEY_LAF, UIManager.getLookAndFeel().getClass().getName());
 			}
 		});
@@ -0,0 +1,508 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only write-ahead journal of the edits of one document, used to restore unsaved
+ * text after a crash.
+ * <p>
+ * Edits are queued by the editing thread and group committed by a shared background thread:
+ * the first queued edit schedules a commit {@value #COMMIT_INTERVAL_MILLIS}ms later, and every
+ * edit queued until then is written with the same channel write and sync. Editing therefore never
+ * waits for the disk, and at most the last commit interval is lost in a crash.
+ * <p>
+ * A checkpoint compacts the journal: the full text is written as a snapshot record to a new file,
+ * followed by later edits, which then atomically replaces the old journal. {@link #shouldCheckpoint()}
+ * tells the editor when the edits since the last snapshot outgrew the text itself.
+ * <p>
+ * Each record is its payload length, a CRC32 of the type and payload, the type and the payload.
+ * {@link #recover} replays the records up to the first incomplete or corrupt one.
+ * <p>
+ * An open journal holds a lock on a {@code .lock} file next to it, so two instances of the
+ * editor never write the same journal. The lock is released by the operating system when
+ * the process dies, which leaves the journal free to be recovered by the next start.
+ * <p>
+ * The recording methods must be called from a single thread, normally the EDT.
+ *
+ * @author Slobodan Zivanovic
+ */
+public final class EditJournal implements AutoCloseable {
+
+	private static final long COMMIT_INTERVAL_MILLIS = 200;
+	private static final long FLUSH_TIMEOUT_SECONDS = 5;
+	private static final long MIN_CHECKPOINT_BYTES = 1024 * 1024;
+	private static final long MAX_RETRY_DELAY_MILLIS = 30_000;
+	private static final String EXTENSION = ".journal";
+	private static final String TEMP_SUFFIX = ".tmp";
+	private static final String LOCK_SUFFIX = ".lock";
+
+	private static final byte TYPE_SNAPSHOT = 1;
+	private static final byte TYPE_INSERT = 2;
+	private static final byte TYPE_REMOVE = 3;
+	// Payload length and CRC, followed by the type
+	private static final int RECORD_HEADER = 4 + 4 + 1;
+
+	private static final ScheduledExecutorService WRITER = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "jewel-journal-writer");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private static final Set<EditJournal> OPEN_JOURNALS = ConcurrentHashMap.newKeySet();
+
+	static {
+		// Commit what is queued when the application exits normally
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> OPEN_JOURNALS.forEach(EditJournal::commit),
+			"jewel-journal-shutdown"));
+	}
+
+	/**
+	 * A queued edit, or a snapshot starting a compacted journal.
+	 */
+	private record Record(byte type, int offset, int length, String text) {
+	}
+
+	private final Path file;
+	private final Path tempFile;
+	private final Path lockFile;
+	private final ConcurrentLinkedQueue<Record> pending = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean commitScheduled = new AtomicBoolean();
+	private volatile boolean closed;
+	// Set when a write failed, later edits are dropped until the next snapshot
+	private volatile boolean broken;
+	// Snapshots queued but not committed yet, so a failure asks the editor for one snapshot, not one per edit
+	private final AtomicInteger pendingSnapshots = new AtomicInteger();
+	// When the editor may queue a snapshot again after a failed write
+	private volatile long retryAt;
+
+	// Editing thread state
+	private long bytesSinceCheckpoint;
+	private long checkpointBytes;
+
+	// Writer state, guarded by this
+	private long retryDelayMillis;
+	private FileChannel channel;
+	private ByteBuffer buffer = ByteBuffer.allocate(16 * 1024);
+	private final CRC32 crc = new CRC32();
+
+	// Holds the lock from open until close or discard, guarded by this
+	private FileChannel lockChannel;
+
+	private EditJournal(Path file) {
+		this.file = file;
+		this.tempFile = file.resolveSibling(file.getFileName() + TEMP_SUFFIX);
+		this.lockFile = file.resolveSibling(file.getFileName() + LOCK_SUFFIX);
+	}
+
+	/**
+	 * Returns the directory holding the journals: ~/.jewel/journal.
+	 *
+	 * @return The journal directory
+	 */
+	public static Path getJournalDirectory() {
+		return Paths.get(System.getProperty("user.home"), ".jewel", "journal");
+	}
+
+	/**
+	 * Returns the journal file of a document.
+	 *
+	 * @param documentId An identifier of the document that is stable across sessions
+	 * @return The journal file in the journal directory
+	 */
+	public static Path fileFor(String documentId) {
+		return getJournalDirectory().resolve(documentId.replaceAll("[^A-Za-z0-9._-]", "_") + EXTENSION);
+	}
+
+	/**
+	 * Opens and locks the journal of a document. The previous journal stays untouched until the
+	 * first {@link #checkpoint}, which must be recorded before any edit, so it can still be
+	 * {@linkplain #recover recovered} after the lock is taken.
+	 *
+	 * @param file The journal file
+	 * @return The journal, or null if the journal is locked by another editor
+	 * @throws IOException If the journal directory or lock cannot be created
+	 */
+	public static EditJournal open(Path file) throws IOException {
+		Files.createDirectories(file.getParent());
+		EditJournal journal = new EditJournal(file);
+		if (!journal.lock()) {
+			return null;
+		}
+		OPEN_JOURNALS.add(journal);
+		return journal;
+	}
+
+	/**
+	 * Rebuilds the text recorded in a journal.
+	 *
+	 * @param file The journal file
+	 * @return The recovered text, or null if there is no journal
+	 * @throws IOException If the journal cannot be read
+	 */
+	public static String recover(Path file) throws IOException {
+		Path tempFile = file.resolveSibling(file.getFileName() + TEMP_SUFFIX);
+		// A compaction interrupted after its snapshot was written holds the newest state
+		if (Files.exists(tempFile)) {
+			StringBuilder text = replay(ByteBuffer.wrap(Files.readAllBytes(tempFile)));
+			if (text != null) {
+				return text.toString();
+			}
+		}
+		if (!Files.exists(file)) {
+			return null;
+		}
+		StringBuilder text = replay(ByteBuffer.wrap(Files.readAllBytes(file)));
+		return text != null ? text.toString() : null;
+	}
+
+	/**
+	 * Records an insertion.
+	 *
+	 * @param offset The offset of the inserted text
+	 * @param text   The inserted text
+	 */
+	public void inserted(int offset, String text) {
+		bytesSinceCheckpoint += RECORD_HEADER + 4 + text.length();
+		enqueue(new Record(TYPE_INSERT, offset, text.length(), text));
+	}
+
+	/**
+	 * Records a removal.
+	 *
+	 * @param offset The offset of the removed text
+	 * @param length The length of the removed text
+	 */
+	public void removed(int offset, int length) {
+		bytesSinceCheckpoint += RECORD_HEADER + 8;
+		enqueue(new Record(TYPE_REMOVE, offset, length, null));
+	}
+
+	/**
+	 * Checks whether the edits since the last checkpoint take more space than a new snapshot would.
+	 * <p>
+	 * Also true after a failed write, since the journal is only consistent again from a new snapshot.
+	 * Never true while a snapshot is waiting to be committed, and after repeated failures only once
+	 * a delay doubling up to {@value #MAX_RETRY_DELAY_MILLIS}ms has passed, so a failing disk does not
+	 * cost a copy of the text on every edit.
+	 *
+	 * @return true if {@link #checkpoint} should be called
+	 */
+	public boolean shouldCheckpoint() {
+		if (pendingSnapshots.get() > 0) {
+			return false;
+		}
+		if (broken) {
+			return System.nanoTime() - retryAt >= 0;
+		}
+		return bytesSinceCheckpoint > Math.max(MIN_CHECKPOINT_BYTES, checkpointBytes);
+	}
+
+	/**
+	 * Compacts the journal into a snapshot of the given text, which must include every recorded edit.
+	 *
+	 * @param content The current text of the document
+	 */
+	public void checkpoint(String content) {
+		bytesSinceCheckpoint = 0;
+		checkpointBytes = content.length();
+		if (closed) {
+			return;
+		}
+		pendingSnapshots.incrementAndGet();
+		enqueue(new Record(TYPE_SNAPSHOT, 0, content.length(), content));
+	}
+
+	/**
+	 * Writes and syncs every recorded edit, waiting at most five seconds.
+	 */
+	public void flush() {
+		try {
+			WRITER.submit(this::commit).get(FLUSH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException | TimeoutException e) {
+			System.err.println("Failed to flush edit journal: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Writes the remaining edits and closes the journal, keeping it for recovery.
+	 */
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		flush();
+		closed = true;
+		OPEN_JOURNALS.remove(this);
+		synchronized (this) {
+			closeChannel();
+			unlock();
+		}
+	}
+
+	/**
+	 * Closes the journal and deletes it, once the document has been saved or discarded.
+	 */
+	public void discard() {
+		closed = true;
+		OPEN_JOURNALS.remove(this);
+		pending.clear();
+		synchronized (this) {
+			closeChannel();
+			try {
+				Files.deleteIfExists(file);
+				Files.deleteIfExists(tempFile);
+				// Deleted while still held, so no other editor can lock the old file in between
+				Files.deleteIfExists(lockFile);
+			} catch (IOException e) {
+				System.err.println("Failed to delete edit journal: " + e.getMessage());
+			}
+			unlock();
+		}
+	}
+
+	/**
+	 * Takes the lock of the journal without waiting.
+	 *
+	 * @return true if the lock was taken, false if another editor holds it
+	 */
+	private synchronized boolean lock() throws IOException {
+		lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		FileLock lock;
+		try {
+			lock = lockChannel.tryLock();
+		} catch (OverlappingFileLockException e) {
+			// Held by another journal of this process
+			lock = null;
+		} catch (IOException e) {
+			unlock();
+			throw e;
+		}
+		if (lock == null) {
+			unlock();
+			return false;
+		}
+		return true;
+	}
+
+	private void unlock() {
+		if (lockChannel == null) {
+			return;
+		}
+		try {
+			// Closing the channel releases the lock
+			lockChannel.close();
+		} catch (IOException e) {
+			System.err.println("Failed to release edit journal lock: " + e.getMessage());
+		}
+		lockChannel = null;
+	}
+
+	private void enqueue(Record record) {
+		if (closed) {
+			return;
+		}
+		pending.add(record);
+		if (commitScheduled.compareAndSet(false, true)) {
+			WRITER.schedule(this::commit, COMMIT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Writes every queued record with one write and one sync. A snapshot discards the records
+	 * before it and starts the replacement file, which is moved over the journal once synced.
+	 */
+	private synchronized void commit() {
+		commitScheduled.set(false);
+		if (closed && channel == null) {
+			return;
+		}
+		boolean replacing = false;
+		int snapshots = 0;
+		try {
+			Record record;
+			while ((record = pending.poll()) != null) {
+				if (record.type() == TYPE_SNAPSHOT) {
+					snapshots++;
+					// Everything before the snapshot is superseded
+					broken = false;
+					buffer.clear();
+					closeChannel();
+					channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+						StandardOpenOption.TRUNCATE_EXISTING);
+					replacing = true;
+				} else if (broken) {
+					continue;
+				}
+				encode(record);
+			}
+			if (channel == null) {
+				channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.APPEND);
+			}
+
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			buffer.clear();
+			channel.force(false);
+
+			if (replacing) {
+				// Reopened after the move, an open file cannot be replaced on every platform
+				closeChannel();
+				Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+				retryDelayMillis = 0;
+			}
+		} catch (IOException e) {
+			if (retryDelayMillis == 0) {
+				System.err.println("Failed to write edit journal: " + e.getMessage());
+			}
+			retryDelayMillis = Math.min(Math.max(COMMIT_INTERVAL_MILLIS, retryDelayMillis * 2), MAX_RETRY_DELAY_MILLIS);
+			retryAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(retryDelayMillis);
+			broken = true;
+			buffer.clear();
+			closeChannel();
+		} finally {
+			pendingSnapshots.addAndGet(-snapshots);
+		}
+	}
+
+	private void encode(Record record) {
+		byte[] text = record.text() != null ? record.text().getBytes(StandardCharsets.UTF_8) : null;
+		int payload = switch (record.type()) {
+			case TYPE_SNAPSHOT -> text.length;
+			case TYPE_INSERT -> 4 + text.length;
+			default -> 8;
+		};
+		ensureCapacity(RECORD_HEADER + payload);
+
+		int start = buffer.position();
+		buffer.putInt(payload).putInt(0).put(record.type());
+		if (record.type() != TYPE_SNAPSHOT) {
+			buffer.putInt(record.offset());
+		}
+		if (record.type() == TYPE_REMOVE) {
+			buffer.putInt(record.length());
+		} else {
+			buffer.put(text);
+		}
+
+		crc.reset();
+		crc.update(buffer.array(), start + 8, 1 + payload);
+		buffer.putInt(start + 4, (int) crc.getValue());
+	}
+
+	private void ensureCapacity(int length) {
+		if (buffer.remaining() < length) {
+			ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + length));
+			buffer.flip();
+			larger.put(buffer);
+			buffer = larger;
+		}
+	}
+
+	private void closeChannel() {
+		if (channel == null) {
+			return;
+		}
+		try {
+			channel.close();
+		} catch (IOException e) {
+			System.err.println("Failed to close edit journal: " + e.getMessage());
+		}
+		channel = null;
+	}
+
+	/**
+	 * Applies the valid records of a journal.
+	 *
+	 * @return The text, or null if the journal does not start with a valid snapshot
+	 */
+	private static StringBuilder replay(ByteBuffer data) {
+		StringBuilder text = null;
+		CRC32 crc = new CRC32();
+		while (data.remaining() >= RECORD_HEADER) {
+			int start = data.position();
+			int payload = data.getInt();
+			int checksum = data.getInt();
+			if (payload < 0 || data.remaining() < 1 + payload) {
+				break;
+			}
+			crc.reset();
+			crc.update(data.array(), start + 8, 1 + payload);
+			if ((int) crc.getValue() != checksum) {
+				break;
+			}
+
+			byte type = data.get();
+			if (type == TYPE_SNAPSHOT) {
+				text = new StringBuilder(decode(data, payload));
+			} else if (text == null) {
+				break;
+			} else if (type == TYPE_INSERT) {
+				int offset = data.getInt();
+				String inserted = decode(data, payload - 4);
+				if (offset < 0 || offset > text.length()) {
+					break;
+				}
+				text.insert(offset, inserted);
+			} else if (type == TYPE_REMOVE) {
+				int offset = data.getInt();
+				int length = data.getInt();
+				if (offset < 0 || length < 0 || offset + length > text.length()) {
+					break;
+				}
+				text.delete(offset, offset + length);
+			} else {
+				break;
+			}
+		}
+		return text;
+	}
+
+	private static String decode(ByteBuffer data, int length) {
+		String value = new String(data.array(), data.position(), length, StandardCharsets.UTF_8);
+		data.position(data.position() + length);
+		return value;
+	}
+}
@@ -0,0 +1,349 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.logging;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Background writer of an asynchronous {@link Logger}.
+ * <p>
+ * Callers only publish message templates and arguments into a {@link LogRingBuffer}. A single daemon
+ * thread drains it in batches, formats and encodes the messages into reusable buffers and writes them to a {@link FileChannel}
+ * that stays open between batches. Disk space and permissions are checked when the file is opened,
+ * not per message.
+ * <p>
+ * A failure to open, write or rotate the file never stops the writer, only {@link #close()} does.
+ * The file is closed and opened again after a delay doubling from {@value #MIN_RETRY_DELAY_MILLIS}ms
+ * to {@value #MAX_RETRY_DELAY_MILLIS}ms. Messages published meanwhile are counted as dropped, and
+ * their number is logged once the file can be written again.
+ *
+ * @author Slobodan Zivanovic
+ */
+final class AsyncLogWriter implements Runnable {
+
+	private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+	private static final int MAX_RETAINED_LINE = 64 * 1024;
+	private static final long FLUSH_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+	private static final long MIN_RETRY_DELAY_MILLIS = 500;
+	private static final long MAX_RETRY_DELAY_MILLIS = 30_000;
+	private static final LogRingBuffer.EntryHandler DISCARD =
+		(timestamp, level, name, template, args, offset, count, throwable) -> {
+		};
+
+	private final Logger owner;
+	private final LogMetrics metrics;
+	private final Path logFilePath;
+	private final AsyncOptions options;
+	private final LogRingBuffer buffer;
+	private final int wakeThreshold;
+	private final Thread thread;
+
+	private final AtomicLong dropped = new AtomicLong();
+	private volatile boolean closed;
+	private volatile long written;
+
+	// Writer thread state
+	private FileChannel channel;
+	private long fileSize;
+	private StringBuilder line = new StringBuilder(256);
+	private final LineEncoder encoder = new LineEncoder(OUTPUT_BUFFER_SIZE);
+	private final BinaryLogEncoder binaryEncoder;
+	private final TimestampCache timestamps = new TimestampCache();
+	// Messages lost to write errors since the last report
+	private long unwritten;
+	// Delay of the next attempt to open the file, 0 while it is open or was never tried
+	private long retryDelayNanos;
+	private long retryAt;
+
+	AsyncLogWriter(Logger owner, Path logFilePath, AsyncOptions options) {
+		this.owner = owner;
+		this.metrics = owner.getMetrics();
+		this.logFilePath = logFilePath;
+		this.options = options;
+		this.buffer = new LogRingBuffer(options.capacity());
+		this.wakeThreshold = buffer.capacity() / 2;
+		this.binaryEncoder = owner.getFormat() == LogFormat.BINARY ? new BinaryLogEncoder(OUTPUT_BUFFER_SIZE) : null;
+
+		thread = new Thread(this, "jewel-log-writer-" + logFilePath.getFileName());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Publishes a message with up to three arguments from any thread. Apart from
+	 * {@link AsyncOptions.OverflowPolicy#BLOCK} on a full buffer, this neither blocks nor allocates.
+	 */
+	void publish(Logger.LogLevel level, String name, String template, int count, Object arg0, Object arg1,
+				 Object arg2, Throwable throwable) {
+		if (closed) {
+			return;
+		}
+		long timestamp = System.currentTimeMillis();
+		if (buffer.offer(timestamp, level, name, template, count, arg0, arg1, arg2, throwable)) {
+			published();
+		} else {
+			overflow(() -> buffer.offer(timestamp, level, name, template, count, arg0, arg1, arg2, throwable));
+		}
+	}
+
+	/**
+	 * Publishes a message whose arguments are held in an array, which must not be modified afterwards.
+	 */
+	void publish(Logger.LogLevel level, String name, String template, Object[] args, Throwable throwable) {
+		if (closed) {
+			return;
+		}
+		long timestamp = System.currentTimeMillis();
+		if (buffer.offer(timestamp, level, name, template, args, throwable)) {
+			published();
+		} else {
+			overflow(() -> buffer.offer(timestamp, level, name, template, args, throwable));
+		}
+	}
+
+	private void published() {
+		int size = buffer.size();
+		metrics.queueDepth(size);
+		// Only wake the writer early when the buffer fills up, otherwise it drains on its interval
+		if (size >= wakeThreshold) {
+			LockSupport.unpark(thread);
+		}
+	}
+
+	private void overflow(BooleanSupplier retry) {
+		switch (options.overflowPolicy()) {
+			case BLOCK -> {
+				while (!closed && !retry.getAsBoolean()) {
+					LockSupport.unpark(thread);
+					LockSupport.parkNanos(50_000);
+				}
+			}
+			case DROP -> metrics.messageDropped();
+			case COUNT -> {
+				metrics.messageDropped();
+				dropped.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Waits until every message published before this call has been written, for at most five seconds.
+	 */
+	void flush() {
+		long target = buffer.produced();
+		long deadline = System.nanoTime() + FLUSH_TIMEOUT_NANOS;
+		while (written < target && thread.isAlive() && System.nanoTime() < deadline) {
+			LockSupport.unpark(thread);
+			LockSupport.parkNanos(100_000);
+		}
+	}
+
+	/**
+	 * Writes the remaining messages and stops the writer thread.
+	 */
+	void close() {
+		if (closed) {
+			return;
+		}
+		flush();
+		closed = true;
+		LockSupport.unpark(thread);
+		try {
+			thread.join(TimeUnit.NANOSECONDS.toMillis(FLUSH_TIMEOUT_NANOS));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void run() {
+		long intervalNanos = TimeUnit.MILLISECONDS.toNanos(options.flushIntervalMillis());
+		try {
+			while (true) {
+				boolean stopping = closed;
+				// A last attempt when closing, whatever the delay
+				if (channel == null && (stopping || retryDelayNanos == 0 || System.nanoTime() - retryAt >= 0)) {
+					reopen();
+				}
+				if (channel != null) {
+					try {
+						writeBatch();
+					} catch (IOException e) {
+						failed(e);
+					}
+				} else {
+					discardBatch();
+				}
+				if (stopping) {
+					break;
+				}
+				if (buffer.size() == 0) {
+					LockSupport.parkNanos(this, intervalNanos);
+				}
+			}
+		} finally {
+			closeChannel();
+		}
+	}
+
+	private void reopen() {
+		try {
+			open();
+			retryDelayNanos = 0;
+		} catch (IOException e) {
+			failed(e);
+		}
+	}
+
+	/**
+	 * Closes the file after an error and schedules the next attempt to open it.
+	 */
+	private void failed(IOException e) {
+		if (retryDelayNanos == 0) {
+			System.err.println("Failed to write to log file, retrying: " + e.getMessage());
+		}
+		closeChannel();
+		retryDelayNanos = Math.min(Math.max(TimeUnit.MILLISECONDS.toNanos(MIN_RETRY_DELAY_MILLIS), retryDelayNanos * 2),
+			TimeUnit.MILLISECONDS.toNanos(MAX_RETRY_DELAY_MILLIS));
+		retryAt = System.nanoTime() + retryDelayNanos;
+	}
+
+	/**
+	 * Drops the published messages while the file cannot be written.
+	 */
+	private void discardBatch() {
+		int count;
+		while ((count = buffer.drain(DISCARD, buffer.capacity())) > 0) {
+			unwritten += count;
+			metrics.messagesDropped(count);
+			written = buffer.consumed();
+		}
+	}
+
+	private void writeBatch() throws IOException {
+		while (buffer.drain(this::append, buffer.capacity()) > 0) {
+			writeOut();
+			written = buffer.consumed();
+		}
+
+		long lost = dropped.getAndSet(0);
+		if (lost > 0) {
+			append(System.currentTimeMillis(), Logger.LogLevel.WARNING, LogLevels.ROOT,
+				lost + " log messages dropped, the log queue was full", null, 0, 0, null);
+		}
+		// Only reported once the report itself is written
+		long reported = unwritten;
+		if (reported > 0) {
+			append(System.currentTimeMillis(), Logger.LogLevel.WARNING, LogLevels.ROOT,
+				reported + " log messages lost, the log file could not be written", null, 0, 0, null);
+		}
+		writeOut();
+		unwritten -= reported;
+		written = buffer.consumed();
+
+		if (fileSize > owner.getRetentionPolicy().maxFileBytes()) {
+			closeChannel();
+			owner.rotateLog();
+			open();
+		}
+	}
+
+	private void append(long timestamp, Logger.LogLevel level, String name, String template, Object[] args,
+						int offset, int count, Throwable throwable) {
+		if (binaryEncoder != null) {
+			try {
+				long bytes = binaryEncoder.append(timestamp, level, name, template, args, offset, count, throwable);
+				fileSize += bytes;
+				metrics.bytesWritten(bytes);
+			} catch (IOException e) {
+				lost();
+			}
+			return;
+		}
+		if (line.capacity() > MAX_RETAINED_LINE) {
+			line = new StringBuilder(256);
+		}
+		line.setLength(0);
+		LogFormatter.appendLine(line, timestamps.format(timestamp), level, name, template, args, offset, count,
+			throwable);
+		try {
+			long bytes = encoder.append(line, channel);
+			fileSize += bytes;
+			metrics.bytesWritten(bytes);
+		} catch (IOException e) {
+			lost();
+		}
+	}
+
+	/**
+	 * Counts a message that could not be written. The file is reopened after the batch, when the
+	 * buffered output fails to write as well.
+	 */
+	private void lost() {
+		unwritten++;
+		metrics.messageDropped();
+	}
+
+	private void writeOut() throws IOException {
+		long start = System.nanoTime();
+		long bytes = binaryEncoder != null ? binaryEncoder.flushTo() : encoder.flushTo(channel);
+		if (bytes > 0) {
+			fileSize += bytes;
+			metrics.flushed(bytes, System.nanoTime() - start);
+		}
+	}
+
+	private void open() throws IOException {
+		owner.validateSystem();
+		if (binaryEncoder != null) {
+			owner.prepareBinaryFile();
+		}
+		channel = FileChannel.open(logFilePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+			StandardOpenOption.APPEND);
+		fileSize = channel.size();
+		if (binaryEncoder != null) {
+			binaryEncoder.open(logFilePath, channel);
+		}
+	}
+
+	private void closeChannel() {
+		if (channel == null) {
+			return;
+		}
+		try {
+			try {
+				if (binaryEncoder != null) {
+					long bytes = binaryEncoder.close();
+					fileSize += bytes;
+					metrics.bytesWritten(bytes);
+				}
+			} finally {
+				channel.close();
+			}
+		} catch (IOException e) {
+			System.err.println("Failed to close log file: " + e.getMessage());
+		}
+		channel = null;
+	}
+}
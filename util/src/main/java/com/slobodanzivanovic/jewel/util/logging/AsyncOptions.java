@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.logging;
+
+/**
+ * Configuration of an asynchronous {@link Logger}.
+ *
+ * @param capacity            The number of messages the ring buffer holds, rounded up to a power of two
+ * @param flushIntervalMillis How long the writer waits between drains when the buffer is not filling up
+ * @param overflowPolicy      What callers do when the buffer is full
+ * @author Slobodan Zivanovic
+ */
+public record AsyncOptions(int capacity, long flushIntervalMillis, OverflowPolicy overflowPolicy) {
+
+	/**
+	 * Defines what happens to a message published while the ring buffer is full.
+	 */
+	public enum OverflowPolicy {
+		/**
+		 * The caller waits until the writer frees a slot. Never use this for loggers called from the EDT.
+		 */
+		BLOCK,
+		/**
+		 * The message is discarded.
+		 */
+		DROP,
+		/**
+		 * The message is discarded and the writer logs how many messages were lost.
+		 */
+		COUNT
+	}
+
+	public AsyncOptions {
+		if (capacity < 2 || capacity > 1 << 24) {
+			throw new IllegalArgumentException("Capacity must be between 2 and 2^24: " + capacity);
+		}
+		if (flushIntervalMillis <= 0) {
+			throw new IllegalArgumentException("Flush interval must be positive: " + flushIntervalMillis);
+		}
+		if (overflowPolicy == null) {
+			throw new IllegalArgumentException("Overflow policy must not be null");
+		}
+	}
+
+	/**
+	 * Returns the options used by the application loggers: 8192 messages, a 200ms flush
+	 * interval, and counted drops so a flood of messages never stalls the caller.
+	 *
+	 * @return The default options
+	 */
+	public static AsyncOptions defaults() {
+		return new AsyncOptions(8192, 200, OverflowPolicy.COUNT);
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.logging;
+
+import java.nio.file.Path;
+
+/**
+ * Layout of the {@link LogFormat#BINARY} log files.
+ * <p>
+ * A log file starts with {@link #LOG_MAGIC} and {@link #VERSION}, followed by records that each
+ * start with a tag byte. Integers are unsigned LEB128 varints and strings are a varint byte length
+ * followed by UTF-8 bytes.
+ * <ul>
+ *     <li>{@link #TAG_STRING}: string id, string. Defines an interned logger name or message template.</li>
+ *     <li>{@link #TAG_BLOCK}: 8 byte base timestamp. Starts a block, the timestamps of the following
+ *     entries are deltas from the base.</li>
+ *     <li>{@link #TAG_ENTRY}: timestamp delta, flags, name id, template id (0 if the template
+ *     follows inline), argument count, arguments and, if flagged, the formatted throwable.</li>
+ * </ul>
+ * The flags byte holds the level ordinal in its low bits, {@link #FLAG_TEMPLATED} if the message
+ * is a template with placeholders and {@link #FLAG_THROWABLE} if a throwable follows.
+ * <p>
+ * The index file, named after the log file with {@link #INDEX_SUFFIX}, starts with {@link #INDEX_MAGIC}
+ * and {@link #VERSION} and holds a copy of every {@link #TAG_STRING} record and one {@link #TAG_BLOCK}
+ * record per finished block: 8 byte offset, 8 byte length, 8 byte first and last timestamp, a byte
+ * with one bit per level ordinal present in the block and a 4 byte entry count. A reader can
+ * resolve every string and skip blocks by time and level without reading the log itself.
+ *
+ * @author Slobodan Zivanovic
+ */
+final class BinaryLog {
+
+	static final byte[] LOG_MAGIC = {'J', 'L', 'O', 'G'};
+	static final byte[] INDEX_MAGIC = {'J', 'L', 'I', 'X'};
+	static final byte VERSION = 1;
+	static final int HEADER_LENGTH = LOG_MAGIC.length + 1;
+	static final String INDEX_SUFFIX = ".idx";
+
+	static final byte TAG_STRING = 1;
+	static final byte TAG_BLOCK = 2;
+	static final byte TAG_ENTRY = 3;
+
+	static final int LEVEL_MASK = 0x07;
+	static final int FLAG_TEMPLATED = 0x40;
+	static final int FLAG_THROWABLE = 0x80;
+
+	// Offset, length, first and last timestamp, level bits and entry count
+	static final int INDEX_BLOCK_LENGTH = 1 + 8 + 8 + 8 + 8 + 1 + 4;
+
+	private BinaryLog() {
+	}
+
+	/**
+	 * Returns the index file belonging to a binary log file.
+	 */
+	static Path indexFile(Path logFile) {
+		return logFile.resolveSibling(logFile.getFileName() + INDEX_SUFFIX);
+	}
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.logging;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Encodes log messages into the {@link LogFormat#BINARY} format and maintains the index file.
+ * <p>
+ * Logger names and the templates of messages with arguments are interned: the first use writes
+ * the string once, later entries refer to it by id. Messages without arguments are often built
+ * at runtime, so they are written inline. Like {@link LineEncoder}, records are collected in a
+ * reusable buffer and written when it fills up or on {@link #flushTo}. Not thread-safe.
+ *
+ * @author Slobodan Zivanovic
+ */
+final class BinaryLogEncoder {
+
+	private static final int BLOCK_ENTRIES = 4096;
+	// Bounds the table when templates are built at runtime, later strings are written inline
+	private static final int MAX_STRINGS = 1 << 16;
+	private static final int MAX_RETAINED_SCRATCH = 64 * 1024;
+
+	private final ByteBuffer bytes;
+	private final ByteBuffer indexBytes = ByteBuffer.allocate(16 * 1024);
+	private final Map<String, Integer> strings = new HashMap<>();
+	private StringBuilder scratch = new StringBuilder(256);
+
+	private WritableByteChannel channel;
+	private FileChannel index;
+	// Bytes of the current file written to the channel, not counting the buffer
+	private long flushed;
+
+	private boolean blockOpen;
+	private long blockOffset;
+	private long blockBase;
+	private long blockLast;
+	private int blockLevels;
+	private int blockEntries;
+
+	BinaryLogEncoder(int bufferSize) {
+		bytes = ByteBuffer.allocateDirect(bufferSize);
+	}
+
+	/**
+	 * Starts writing an empty log file and creates its index.
+	 *
+	 * @param logFile The path of the log file
+	 * @param channel The channel writing to the log file
+	 */
+	void open(Path logFile, WritableByteChannel channel) throws IOException {
+		this.channel = channel;
+		strings.clear();
+		blockOpen = false;
+		bytes.clear();
+		indexBytes.clear();
+		flushed = 0;
+
+		index = FileChannel.open(BinaryLog.indexFile(logFile), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+			StandardOpenOption.TRUNCATE_EXISTING);
+		indexBytes.put(BinaryLog.INDEX_MAGIC).put(BinaryLog.VERSION);
+		bytes.put(BinaryLog.LOG_MAGIC).put(BinaryLog.VERSION);
+	}
+
+	/**
+	 * Encodes a message into the buffer, writing out full buffers.
+	 *
+	 * @return The number of bytes written to the log file
+	 */
+	long append(long timestamp, Logger.LogLevel level, String name, String template, Object[] args, int offset,
+				int count, Throwable throwable) throws IOException {
+		long start = flushed;
+		boolean templated = count > 0;
+		if (throwable == null && templated && args[offset + count - 1] instanceof Throwable trailing
+			&& LogFormatter.countPlaceholders(template) < count) {
+			throwable = trailing;
+			count--;
+		}
+
+		if (!blockOpen || blockEntries >= BLOCK_ENTRIES || timestamp < blockBase) {
+			startBlock(timestamp);
+		}
+		int nameId = intern(name);
+		int templateId = templated ? intern(template) : 0;
+
+		int flags = level.ordinal();
+		if (templated) {
+			flags |= BinaryLog.FLAG_TEMPLATED;
+		}
+		if (throwable != null) {
+			flags |= BinaryLog.FLAG_THROWABLE;
+		}
+		ensure(32);
+		bytes.put(BinaryLog.TAG_ENTRY);
+		putVarLong(bytes, timestamp - blockBase);
+		bytes.put((byte) flags);
+		putVarLong(bytes, nameId);
+		putVarLong(bytes, templateId);
+		if (templateId == 0) {
+			putString(template);
+		}
+		ensure(5);
+		putVarLong(bytes, count);
+		for (int i = 0; i < count; i++) {
+			scratch.setLength(0);
+			LogFormatter.appendArgument(scratch, args[offset + i]);
+			putString(scratch);
+		}
+		if (throwable != null) {
+			scratch.setLength(0);
+			LogFormatter.appendThrowable(scratch, throwable);
+			putString(scratch);
+		}
+
+		blockLast = Math.max(blockLast, timestamp);
+		blockLevels |= 1 << level.ordinal();
+		blockEntries++;
+		return flushed - start;
+	}
+
+	/**
+	 * Writes the buffered records to the log file and the buffered index records to the index.
+	 * The log is written first, so the index never refers to data missing from the log.
+	 *
+	 * @return The number of bytes written to the log file
+	 */
+	long flushTo() throws IOException {
+		long written = flush(bytes, channel);
+		flushed += written;
+		flush(indexBytes, index);
+		return written;
+	}
+
+	/**
+	 * Finishes the current block, writes out everything buffered and closes the index.
+	 * Does nothing if no file is open.
+	 *
+	 * @return The number of bytes written to the log file
+	 */
+	long close() throws IOException {
+		if (index == null) {
+			return 0;
+		}
+		try {
+			finishBlock();
+			return flushTo();
+		} finally {
+			index.close();
+			index = null;
+			channel = null;
+			if (scratch.capacity() > MAX_RETAINED_SCRATCH) {
+				scratch = new StringBuilder(256);
+			}
+		}
+	}
+
+	private void startBlock(long timestamp) throws IOException {
+		finishBlock();
+		ensure(9);
+		blockOpen = true;
+		blockOffset = position();
+		blockBase = timestamp;
+		blockLast = timestamp;
+		blockLevels = 0;
+		blockEntries = 0;
+		bytes.put(BinaryLog.TAG_BLOCK).putLong(timestamp);
+	}
+
+	private void finishBlock() throws IOException {
+		if (!blockOpen) {
+			return;
+		}
+		blockOpen = false;
+		ensureIndex(BinaryLog.INDEX_BLOCK_LENGTH);
+		indexBytes.put(BinaryLog.TAG_BLOCK)
+			.putLong(blockOffset)
+			.putLong(position() - blockOffset)
+			.putLong(blockBase)
+			.putLong(blockLast)
+			.put((byte) blockLevels)
+			.putInt(blockEntries);
+	}
+
+	/**
+	 * Returns the id of an interned string, defining it in the log and the index on first use,
+	 * or 0 if the table is full.
+	 */
+	private int intern(String string) throws IOException {
+		Integer id = strings.get(string);
+		if (id != null) {
+			return id;
+		}
+		if (strings.size() >= MAX_STRINGS) {
+			return 0;
+		}
+
+		int newId = strings.size() + 1;
+		strings.put(string, newId);
+
+		ensure(6);
+		bytes.put(BinaryLog.TAG_STRING);
+		putVarLong(bytes, newId);
+		putString(string);
+
+		byte[] utf8 = string.getBytes(StandardCharsets.UTF_8);
+		int length = utf8.length + 11;
+		ByteBuffer target = indexBytes;
+		if (length > indexBytes.capacity()) {
+			// Too long for the index buffer, written directly after everything buffered
+			target = ByteBuffer.allocate(length);
+		}
+		ensureIndex(length);
+		target.put(BinaryLog.TAG_STRING);
+		putVarLong(target, newId);
+		putVarLong(target, utf8.length);
+		target.put(utf8);
+		if (target != indexBytes) {
+			flush(target, index);
+		}
+		return newId;
+	}
+
+	private long position() {
+		return flushed + bytes.position();
+	}
+
+	private void ensure(int length) throws IOException {
+		if (bytes.remaining() < length) {
+			flushed += flush(bytes, channel);
+		}
+	}
+
+	private void ensureIndex(int length) throws IOException {
+		if (indexBytes.remaining() < length) {
+			// Keep the index behind the log
+			flushed += flush(bytes, channel);
+			flush(indexBytes, index);
+		}
+	}
+
+	/**
+	 * Writes a string as its UTF-8 length and bytes, encoding directly into the buffer.
+	 * Unpaired surrogates are written as '?'.
+	 */
+	private void putString(CharSequence text) throws IOException {
+		int length = text.length();
+		int utf8Length = 0;
+		for (int i = 0; i < length; i++) {
+			char c = text.charAt(i);
+			if (c < 0x80) {
+				utf8Length++;
+			} else if (c < 0x800) {
+				utf8Length += 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+				utf8Length += 4;
+				i++;
+			} else if (Character.isSurrogate(c)) {
+				utf8Length++;
+			} else {
+				utf8Length += 3;
+			}
+		}
+
+		ensure(5);
+		putVarLong(bytes, utf8Length);
+		for (int i = 0; i < length; i++) {
+			ensure(4);
+			char c = text.charAt(i);
+			if (c < 0x80) {
+				bytes.put((byte) c);
+			} else if (c < 0x800) {
+				bytes.put((byte) (0xC0 | c >> 6)).put((byte) (0x80 | c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, text.charAt(++i));
+				bytes.put((byte) (0xF0 | codePoint >> 18))
+					.put((byte) (0x80 | codePoint >> 12 & 0x3F))
+					.put((byte) (0x80 | codePoint >> 6 & 0x3F))
+					.put((byte) (0x80 | codePoint & 0x3F));
+			} else if (Character.isSurrogate(c)) {
+				bytes.put((byte) '?');
+			} else {
+				bytes.put((byte) (0xE0 | c >> 12))
+					.put((byte) (0x80 | c >> 6 & 0x3F))
+					.put((byte) (0x80 | c & 0x3F));
+			}
+		}
+	}
+
+	private static void putVarLong(ByteBuffer buffer, long value) {
+		while ((value & ~0x7FL) != 0) {
+			buffer.put((byte) (value & 0x7F | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	private static long flush(ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+		long written = 0;
+		buffer.flip();
+		try {
+			while (buffer.hasRemaining()) {
+				written += channel.write(buffer);
+			}
+		} finally {
+			buffer.clear();
+		}
+		return written;
+	}
+}
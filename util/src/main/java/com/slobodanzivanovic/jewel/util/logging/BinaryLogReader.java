@@ -0,0 +1,487 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.logging;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Reads {@link LogFormat#BINARY} logs, including logs still being written.
+ * <p>
+ * The file is memory mapped and entries are decoded on demand. The index written alongside the
+ * log provides the string table and the time range and levels of every finished block, so a query
+ * only decodes the blocks that can match. Data past the last indexed block, or the whole file if
+ * the index is missing, is scanned once and remembered. {@link #scan} reports the offsets of
+ * matching entries without decoding their text, {@link #read} decodes a single entry.
+ * <p>
+ * Files larger than 2GB are not supported. The reader is safe to use from several threads, a
+ * {@link #refresh} is seen by queries started afterwards.
+ *
+ * @author Slobodan Zivanovic
+ */
+public final class BinaryLogReader implements AutoCloseable {
+
+	private static final Logger.LogLevel[] LEVELS = Logger.LogLevel.values();
+
+	private final Path logFile;
+	private final FileChannel channel;
+	private volatile Layout layout;
+
+	/**
+	 * The mapped file with its known strings and blocks. Replaced as a whole on refresh, arrays
+	 * are only appended to beyond the counts of earlier layouts.
+	 */
+	private static final class Layout {
+		private ByteBuffer data;
+		private String[] strings = new String[64];
+		private int blockCount;
+		private long[] offsets = new long[64];
+		private long[] ends = new long[64];
+		private long[] firsts = new long[64];
+		private long[] lasts = new long[64];
+		private byte[] levels = new byte[64];
+		private int[] entries = new int[64];
+		private long scannedTo = BinaryLog.HEADER_LENGTH;
+
+		private Layout copy() {
+			Layout copy = new Layout();
+			copy.data = data;
+			copy.strings = strings.clone();
+			copy.blockCount = blockCount;
+			copy.offsets = offsets.clone();
+			copy.ends = ends.clone();
+			copy.firsts = firsts.clone();
+			copy.lasts = lasts.clone();
+			copy.levels = levels.clone();
+			copy.entries = entries.clone();
+			copy.scannedTo = scannedTo;
+			return copy;
+		}
+
+		private void setString(int id, String value) {
+			if (id >= strings.length) {
+				strings = Arrays.copyOf(strings, Math.max(id + 1, strings.length * 2));
+			}
+			strings[id] = value;
+		}
+
+		private String string(int id) {
+			return id < strings.length && strings[id] != null ? strings[id] : "?";
+		}
+
+		private void addBlock(long offset, long end, long first, long last, int levelBits, int count) {
+			if (blockCount == offsets.length) {
+				int capacity = blockCount * 2;
+				offsets = Arrays.copyOf(offsets, capacity);
+				ends = Arrays.copyOf(ends, capacity);
+				firsts = Arrays.copyOf(firsts, capacity);
+				lasts = Arrays.copyOf(lasts, capacity);
+				levels = Arrays.copyOf(levels, capacity);
+				entries = Arrays.copyOf(entries, capacity);
+			}
+			offsets[blockCount] = offset;
+			ends[blockCount] = end;
+			firsts[blockCount] = first;
+			lasts[blockCount] = last;
+			levels[blockCount] = (byte) levelBits;
+			entries[blockCount] = count;
+			blockCount++;
+		}
+
+		/**
+		 * Returns the block containing the given offset.
+		 */
+		private int blockAt(long offset) {
+			int index = Arrays.binarySearch(offsets, 0, blockCount, offset);
+			return index >= 0 ? index : -index - 2;
+		}
+	}
+
+	/**
+	 * A read position in the mapped file. Reading past the mapped data throws
+	 * {@link IndexOutOfBoundsException}, which marks a record still being written.
+	 */
+	private static final class Cursor {
+		private final ByteBuffer data;
+		private int position;
+		private byte[] scratch = new byte[256];
+
+		private Cursor(ByteBuffer data, long position) {
+			this.data = data;
+			this.position = (int) position;
+		}
+
+		private byte readByte() {
+			return data.get(position++);
+		}
+
+		private long readLong() {
+			long value = data.getLong(position);
+			position += 8;
+			return value;
+		}
+
+		private int readInt() {
+			int value = data.getInt(position);
+			position += 4;
+			return value;
+		}
+
+		private long readVarLong() {
+			long value = 0;
+			for (int shift = 0; ; shift += 7) {
+				byte b = data.get(position++);
+				value |= (long) (b & 0x7F) << shift;
+				if (b >= 0) {
+					return value;
+				}
+			}
+		}
+
+		private int readVarInt() {
+			return (int) readVarLong();
+		}
+
+		private String readString() {
+			int length = readVarInt();
+			if (length > scratch.length) {
+				scratch = new byte[Math.max(length, scratch.length * 2)];
+			}
+			data.get(position, scratch, 0, length);
+			position += length;
+			return new String(scratch, 0, length, StandardCharsets.UTF_8);
+		}
+
+		private void skipString() {
+			int length = readVarInt();
+			if (position + length > data.limit()) {
+				throw new IndexOutOfBoundsException(position + length);
+			}
+			position += length;
+		}
+	}
+
+	private BinaryLogReader(Path logFile, FileChannel channel) {
+		this.logFile = logFile;
+		this.channel = channel;
+	}
+
+	/**
+	 * Opens a binary log and its index, if present.
+	 *
+	 * @param logFile The log file
+	 * @return The reader
+	 * @throws IOException If the file cannot be read or is not a binary log
+	 */
+	public static BinaryLogReader open(Path logFile) throws IOException {
+		FileChannel channel = FileChannel.open(logFile, StandardOpenOption.READ);
+		BinaryLogReader reader = new BinaryLogReader(logFile, channel);
+		try {
+			reader.load();
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+		return reader;
+	}
+
+	/**
+	 * Maps data appended since the last refresh and scans it for new blocks and strings.
+	 *
+	 * @return true if the log has grown
+	 * @throws IOException If the file cannot be read
+	 */
+	public synchronized boolean refresh() throws IOException {
+		Layout current = layout;
+		long size = checkSize();
+		if (size == current.data.limit()) {
+			return false;
+		}
+		Layout next = current.copy();
+		next.data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		scanTail(next);
+		layout = next;
+		return true;
+	}
+
+	/**
+	 * Returns the path of the log file.
+	 *
+	 * @return The log file
+	 */
+	public Path getLogFile() {
+		return logFile;
+	}
+
+	/**
+	 * Returns the number of entries known since the last refresh.
+	 *
+	 * @return The number of entries
+	 */
+	public long getEntryCount() {
+		Layout current = layout;
+		long count = 0;
+		for (int i = 0; i < current.blockCount; i++) {
+			count += current.entries[i];
+		}
+		return count;
+	}
+
+	/**
+	 * Reports the offsets of the entries matching a query, in file order, without decoding their text.
+	 *
+	 * @param query   The query
+	 * @param offsets Receives the offset of each matching entry, to be passed to {@link #read}
+	 */
+	public void scan(LogQuery query, LongConsumer offsets) {
+		Layout current = layout;
+		int levelBits = query.levelBits();
+		for (int block = 0; block < current.blockCount; block++) {
+			if ((current.levels[block] & levelBits) == 0 || current.lasts[block] < query.fromMillis()
+				|| current.firsts[block] > query.toMillis()) {
+				continue;
+			}
+
+			long base = current.firsts[block];
+			Cursor cursor = new Cursor(current.data, current.offsets[block]);
+			long end = current.ends[block];
+			while (cursor.position < end) {
+				int start = cursor.position;
+				byte tag = cursor.readByte();
+				switch (tag) {
+					case BinaryLog.TAG_BLOCK -> base = cursor.readLong();
+					case BinaryLog.TAG_STRING -> {
+						cursor.readVarInt();
+						cursor.skipString();
+					}
+					case BinaryLog.TAG_ENTRY -> {
+						long timestamp = base + cursor.readVarLong();
+						int flags = cursor.readByte();
+						if (query.matches(LEVELS[flags & BinaryLog.LEVEL_MASK], timestamp)) {
+							offsets.accept(start);
+						}
+						skipEntry(cursor, flags);
+					}
+					default -> {
+						return;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Decodes every entry matching a query, in file order.
+	 *
+	 * @param query  The query
+	 * @param action Receives the matching entries
+	 */
+	public void forEach(LogQuery query, Consumer<LogEntry> action) {
+		scan(query, offset -> action.accept(read(offset)));
+	}
+
+	/**
+	 * Decodes the entry at an offset reported by {@link #scan}.
+	 *
+	 * @param offset The offset of the entry
+	 * @return The entry
+	 * @throws IllegalArgumentException If no entry starts at the offset
+	 */
+	public LogEntry read(long offset) {
+		Layout current = layout;
+		int block = current.blockAt(offset);
+		if (block < 0 || offset >= current.ends[block]) {
+			throw new IllegalArgumentException("No log entry at offset " + offset);
+		}
+
+		Cursor cursor = new Cursor(current.data, offset);
+		if (cursor.readByte() != BinaryLog.TAG_ENTRY) {
+			throw new IllegalArgumentException("No log entry at offset " + offset);
+		}
+		long timestamp = current.firsts[block] + cursor.readVarLong();
+		int flags = cursor.readByte();
+		String name = current.string(cursor.readVarInt());
+		int templateId = cursor.readVarInt();
+		String template = templateId == 0 ? cursor.readString() : current.string(templateId);
+		int count = cursor.readVarInt();
+
+		String message;
+		if ((flags & BinaryLog.FLAG_TEMPLATED) != 0) {
+			Object[] args = new Object[count];
+			for (int i = 0; i < count; i++) {
+				args[i] = cursor.readString();
+			}
+			StringBuilder out = new StringBuilder(template.length() + 16 * count);
+			LogFormatter.appendMessage(out, template, args, 0, count);
+			message = out.toString();
+		} else {
+			message = template;
+		}
+		String throwable = (flags & BinaryLog.FLAG_THROWABLE) != 0 ? cursor.readString() : null;
+		return new LogEntry(timestamp, LEVELS[flags & BinaryLog.LEVEL_MASK], name, message, throwable);
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private void load() throws IOException {
+		Layout initial = new Layout();
+		long size = checkSize();
+		initial.data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		if (size < BinaryLog.HEADER_LENGTH || !hasMagic(initial.data, BinaryLog.LOG_MAGIC)) {
+			throw new IOException("Not a binary log: " + logFile);
+		}
+		if (initial.data.get(BinaryLog.LOG_MAGIC.length) != BinaryLog.VERSION) {
+			throw new IOException("Unsupported binary log version: " + logFile);
+		}
+
+		loadIndex(initial, size);
+		scanTail(initial);
+		layout = initial;
+	}
+
+	/**
+	 * Reads the strings and finished blocks from the index, ignoring blocks beyond the mapped data.
+	 */
+	private void loadIndex(Layout target, long size) throws IOException {
+		Path indexFile = BinaryLog.indexFile(logFile);
+		if (!Files.isRegularFile(indexFile)) {
+			return;
+		}
+		ByteBuffer index = ByteBuffer.wrap(Files.readAllBytes(indexFile));
+		if (index.limit() < BinaryLog.HEADER_LENGTH || !hasMagic(index, BinaryLog.INDEX_MAGIC)
+			|| index.get(BinaryLog.INDEX_MAGIC.length) != BinaryLog.VERSION) {
+			return;
+		}
+
+		Cursor cursor = new Cursor(index, BinaryLog.HEADER_LENGTH);
+		try {
+			while (cursor.position < index.limit()) {
+				byte tag = cursor.readByte();
+				if (tag == BinaryLog.TAG_STRING) {
+					int id = cursor.readVarInt();
+					target.setString(id, cursor.readString());
+				} else if (tag == BinaryLog.TAG_BLOCK) {
+					long offset = cursor.readLong();
+					long end = offset + cursor.readLong();
+					long first = cursor.readLong();
+					long last = cursor.readLong();
+					int levelBits = cursor.readByte();
+					int count = cursor.readInt();
+					if (end > size) {
+						break;
+					}
+					target.addBlock(offset, end, first, last, levelBits, count);
+					target.scannedTo = end;
+				} else {
+					break;
+				}
+			}
+		} catch (IndexOutOfBoundsException e) {
+			// The last record is still being written
+		}
+	}
+
+	/**
+	 * Scans the records after the last known one, adding blocks and strings.
+	 */
+	private static void scanTail(Layout target) {
+		Cursor cursor = new Cursor(target.data, target.scannedTo);
+		int limit = target.data.limit();
+		try {
+			while (cursor.position < limit) {
+				byte tag = cursor.readByte();
+				switch (tag) {
+					case BinaryLog.TAG_BLOCK -> {
+						long base = cursor.readLong();
+						target.addBlock(target.scannedTo, cursor.position, base, base, 0, 0);
+					}
+					case BinaryLog.TAG_STRING -> {
+						int id = cursor.readVarInt();
+						String value = cursor.readString();
+						target.setString(id, value);
+					}
+					case BinaryLog.TAG_ENTRY -> {
+						int block = target.blockCount - 1;
+						if (block < 0) {
+							return;
+						}
+						long timestamp = target.firsts[block] + cursor.readVarLong();
+						int flags = cursor.readByte();
+						skipEntry(cursor, flags);
+						target.lasts[block] = Math.max(target.lasts[block], timestamp);
+						target.levels[block] |= (byte) (1 << (flags & BinaryLog.LEVEL_MASK));
+						target.entries[block]++;
+					}
+					default -> {
+						return;
+					}
+				}
+				if (target.blockCount > 0) {
+					target.ends[target.blockCount - 1] = cursor.position;
+				}
+				target.scannedTo = cursor.position;
+			}
+		} catch (IndexOutOfBoundsException e) {
+			// The last record is still being written, scanned again on the next refresh
+		}
+	}
+
+	/**
+	 * Skips the rest of an entry after its timestamp and flags.
+	 */
+	private static void skipEntry(Cursor cursor, int flags) {
+		cursor.readVarInt();
+		if (cursor.readVarInt() == 0) {
+			cursor.skipString();
+		}
+		int count = cursor.readVarInt();
+		for (int i = 0; i < count; i++) {
+			cursor.skipString();
+		}
+		if ((flags & BinaryLog.FLAG_THROWABLE) != 0) {
+			cursor.skipString();
+		}
+	}
+
+	private long checkSize() throws IOException {
+		long size = channel.size();
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("Binary log too large to map: " + logFile);
+		}
+		return size;
+	}
+
+	private static boolean hasMagic(ByteBuffer buffer, byte[] magic) {
+		for (int i = 0; i < magic.length; i++) {
+			if (buffer.get(i) != magic[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
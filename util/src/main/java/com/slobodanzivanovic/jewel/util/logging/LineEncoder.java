@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.logging;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes text as UTF-8 into a reusable byte buffer and writes it to a channel when the buffer
+ * fills up or on {@link #flushTo}. Not thread-safe, each writing thread owns its own instance.
+ *
+ * @author Slobodan Zivanovic
+ */
+final class LineEncoder {
+
+	private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+		.onMalformedInput(CodingErrorAction.REPLACE)
+		.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	private final ByteBuffer bytes;
+
+	LineEncoder(int bufferSize) {
+		bytes = ByteBuffer.allocateDirect(bufferSize);
+	}
+
+	/**
+	 * Encodes the text into the buffer, writing out full buffers.
+	 *
+	 * @return The number of bytes written to the channel
+	 */
+	long append(CharSequence text, WritableByteChannel channel) throws IOException {
+		long written = 0;
+		CharBuffer chars = CharBuffer.wrap(text);
+		encoder.reset();
+		while (encoder.encode(chars, bytes, true) == CoderResult.OVERFLOW) {
+			written += flushTo(channel);
+		}
+		while (encoder.flush(bytes) == CoderResult.OVERFLOW) {
+			written += flushTo(channel);
+		}
+		return written;
+	}
+
+	/**
+	 * Writes the buffered bytes to the channel. The buffer is emptied even if writing fails.
+	 *
+	 * @return The number of bytes written
+	 */
+	long flushTo(WritableByteChannel channel) throws IOException {
+		long written = 0;
+		bytes.flip();
+		try {
+			while (bytes.hasRemaining()) {
+				written += channel.write(bytes);
+			}
+		} finally {
+			bytes.clear();
+		}
+		return written;
+	}
+}
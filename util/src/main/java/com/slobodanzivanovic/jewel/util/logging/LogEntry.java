@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.logging;
+
+/**
+ * A message read back from a binary log.
+ *
+ * @param timestamp The time the message was logged, in milliseconds since the epoch
+ * @param level     The level of the message
+ * @param name      The name of the logger, empty for the root logger
+ * @param message   The message with its arguments substituted
+ * @param throwable The formatted throwable with its stack trace, or null
+ * @author Slobodan Zivanovic
+ */
+public record LogEntry(long timestamp, Logger.LogLevel level, String name, String message, String throwable) {
+
+	private static final TimestampCache TIMESTAMPS = new TimestampCache();
+
+	/**
+	 * Formats the entry like a line of a text log, without the line separator.
+	 *
+	 * @return The formatted entry
+	 */
+	public String format() {
+		StringBuilder out = new StringBuilder(64 + message.length());
+		out.append('[').append(TIMESTAMPS.format(timestamp)).append("] [").append(level).append("] ");
+		if (!name.isEmpty()) {
+			out.append('[').append(name).append("] ");
+		}
+		out.append(message);
+		if (throwable != null) {
+			out.append(throwable);
+		}
+		return out.toString();
+	}
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.logging;
+
+/**
+ * Defines how a {@link Logger} encodes its file.
+ *
+ * @author Slobodan Zivanovic
+ */
+public enum LogFormat {
+	/**
+	 * One formatted UTF-8 line per message.
+	 */
+	TEXT(".log"),
+	/**
+	 * Compact binary records with interned logger names and message templates, written together
+	 * with a block index. Read with {@link BinaryLogReader}.
+	 */
+	BINARY(".jlog");
+
+	private final String extension;
+
+	LogFormat(String extension) {
+		this.extension = extension;
+	}
+
+	/**
+	 * Returns the file extension of logs written in this format.
+	 *
+	 * @return The extension, including the dot
+	 */
+	public String getExtension() {
+		return extension;
+	}
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.logging;
+
+import java.util.Arrays;
+
+/**
+ * Formats log lines into a caller supplied {@link StringBuilder} without intermediate strings.
+ * <p>
+ * Message templates use {@code {}} placeholders, {@code \{}} escapes a literal placeholder. When a
+ * message has more arguments than placeholders and the last one is a {@link Throwable}, it is
+ * logged with its stack trace, like an explicitly passed throwable.
+ *
+ * @author Slobodan Zivanovic
+ */
+final class LogFormatter {
+
+	private static final int MAX_CAUSE_DEPTH = 16;
+
+	private LogFormatter() {
+	}
+
+	/**
+	 * Appends a complete log line, including the line separator.
+	 *
+	 * @param out       The buffer to append to
+	 * @param timestamp The formatted timestamp
+	 * @param level     The level of the message
+	 * @param name      The name of the logger, empty for the root logger
+	 * @param template  The message or message template
+	 * @param args      The array holding the arguments
+	 * @param offset    The index of the first argument in {@code args}
+	 * @param count     The number of arguments, 0 to log the template verbatim
+	 * @param throwable An explicitly passed throwable, or null
+	 */
+	static void appendLine(StringBuilder out, String timestamp, Logger.LogLevel level, String name, String template,
+						   Object[] args, int offset, int count, Throwable throwable) {
+		out.append('[').append(timestamp).append("] [").append(level).append("] ");
+		if (!name.isEmpty()) {
+			out.append('[').append(name).append("] ");
+		}
+		Throwable trailing = null;
+		if (count == 0) {
+			out.append(template);
+		} else {
+			trailing = appendMessage(out, template, args, offset, count);
+		}
+
+		Throwable toPrint = throwable != null ? throwable : trailing;
+		if (toPrint != null) {
+			appendThrowable(out, toPrint);
+		}
+		out.append(System.lineSeparator());
+	}
+
+	/**
+	 * Substitutes the arguments into the template.
+	 *
+	 * @return The trailing throwable argument that was not consumed by a placeholder, or null
+	 */
+	static Throwable appendMessage(StringBuilder out, String template, Object[] args, int offset, int count) {
+		int used = 0;
+		int length = template.length();
+		int start = 0;
+		for (int i = 0; i < length - 1; i++) {
+			char c = template.charAt(i);
+			if (c == '\\' && template.charAt(i + 1) == '{' && i + 2 < length && template.charAt(i + 2) == '}') {
+				out.append(template, start, i).append("{}");
+				i += 2;
+				start = i + 1;
+			} else if (c == '{' && template.charAt(i + 1) == '}' && used < count) {
+				out.append(template, start, i);
+				appendArgument(out, args[offset + used++]);
+				i++;
+				start = i + 1;
+			}
+		}
+		out.append(template, start, length);
+
+		if (used < count && args[offset + count - 1] instanceof Throwable throwable) {
+			return throwable;
+		}
+		return null;
+	}
+
+	/**
+	 * Counts the placeholders of a template, not counting escaped ones.
+	 */
+	static int countPlaceholders(String template) {
+		int placeholders = 0;
+		int length = template.length();
+		for (int i = 0; i < length - 1; i++) {
+			char c = template.charAt(i);
+			if (c == '\\' && template.charAt(i + 1) == '{' && i + 2 < length && template.charAt(i + 2) == '}') {
+				i += 2;
+			} else if (c == '{' && template.charAt(i + 1) == '}') {
+				placeholders++;
+				i++;
+			}
+		}
+		return placeholders;
+	}
+
+	/**
+	 * Appends the throwable, its stack frames and its causes, writing each frame directly.
+	 */
+	static void appendThrowable(StringBuilder out, Throwable throwable) {
+		out.append("\nException: ");
+		Throwable current = throwable;
+		for (int depth = 0; current != null && depth < MAX_CAUSE_DEPTH; depth++) {
+			if (depth > 0) {
+				out.append("\nCaused by: ");
+			}
+			out.append(current.getClass().getName()).append(": ").append(current.getMessage());
+			for (StackTraceElement frame : current.getStackTrace()) {
+				out.append('\n');
+				appendFrame(out, frame);
+			}
+			Throwable cause = current.getCause();
+			current = cause == current ? null : cause;
+		}
+	}
+
+	private static void appendFrame(StringBuilder out, StackTraceElement frame) {
+		out.append(frame.getClassName()).append('.').append(frame.getMethodName()).append('(');
+		if (frame.isNativeMethod()) {
+			out.append("Native Method");
+		} else if (frame.getFileName() == null) {
+			out.append("Unknown Source");
+		} else {
+			out.append(frame.getFileName());
+			if (frame.getLineNumber() >= 0) {
+				out.append(':').append(frame.getLineNumber());
+			}
+		}
+		out.append(')');
+	}
+
+	static void appendArgument(StringBuilder out, Object argument) {
+		// Primitives are appended without going through String.valueOf
+		switch (argument) {
+			case null -> out.append("null");
+			case String s -> out.append(s);
+			case Integer i -> out.append(i.intValue());
+			case Long l -> out.append(l.longValue());
+			case Boolean b -> out.append(b.booleanValue());
+			case Character c -> out.append(c.charValue());
+			case Double d -> out.append(d.doubleValue());
+			case Float f -> out.append(f.floatValue());
+			case CharSequence cs -> out.append(cs);
+			case Object[] array -> out.append(Arrays.deepToString(array));
+			case int[] array -> out.append(Arrays.toString(array));
+			case long[] array -> out.append(Arrays.toString(array));
+			default -> out.append(argument);
+		}
+	}
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.logging;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.prefs.BackingStoreException;
+import java.util.prefs.PreferenceChangeListener;
+import java.util.prefs.Preferences;
+
+/**
+ * Level thresholds of the named loggers.
+ * <p>
+ * Logger names are hierarchical, separated by dots. A logger without a configured threshold
+ * inherits the one of its nearest configured ancestor, up to the root logger, whose name is the
+ * empty string and whose default threshold is {@link Logger.LogLevel#INFO}.
+ * <p>
+ * The configuration is an immutable snapshot published through a volatile field. Changing a
+ * threshold replaces the snapshot, and each logger re-resolves its threshold only when it sees a
+ * new snapshot, so the check on the logging path is a volatile read and a reference comparison.
+ * When bound to a preferences node, thresholds are stored there, one key per logger name, and
+ * edits of the node made elsewhere are picked up at runtime.
+ *
+ * @author Slobodan Zivanovic
+ */
+public final class LogLevels {
+
+	/**
+	 * The name of the root logger.
+	 */
+	public static final String ROOT = "";
+
+	// Preferences keys must not be empty, so the root threshold is stored under this key
+	// and a logger named "root" shares its threshold with the root logger
+	private static final String ROOT_KEY = "root";
+	private static final Logger.LogLevel DEFAULT_ROOT_LEVEL = Logger.LogLevel.INFO;
+
+	/**
+	 * An immutable set of configured thresholds.
+	 */
+	static final class Snapshot {
+		private final Map<String, Logger.LogLevel> levels;
+
+		private Snapshot(Map<String, Logger.LogLevel> levels) {
+			this.levels = levels;
+		}
+
+		/**
+		 * Resolves the threshold of a logger from its nearest configured ancestor.
+		 */
+		Logger.LogLevel effectiveLevel(String name) {
+			String current = name;
+			while (true) {
+				Logger.LogLevel level = levels.get(current);
+				if (level != null) {
+					return level;
+				}
+				if (current.isEmpty()) {
+					return DEFAULT_ROOT_LEVEL;
+				}
+				int dot = current.lastIndexOf('.');
+				current = dot < 0 ? ROOT : current.substring(0, dot);
+			}
+		}
+	}
+
+	private static volatile Snapshot snapshot = new Snapshot(Map.of());
+	private static Preferences node;
+	private static final PreferenceChangeListener PREFERENCE_LISTENER = e -> reload();
+
+	private LogLevels() {
+	}
+
+	/**
+	 * Stores the thresholds in the given preferences node and loads the ones already stored there.
+	 * Thresholds set before binding are written to the node.
+	 *
+	 * @param preferences The node holding one key per configured logger name
+	 */
+	public static synchronized void bind(Preferences preferences) {
+		if (node != null) {
+			node.removePreferenceChangeListener(PREFERENCE_LISTENER);
+		}
+		node = preferences;
+
+		for (Map.Entry<String, Logger.LogLevel> entry : snapshot.levels.entrySet()) {
+			node.put(toKey(entry.getKey()), entry.getValue().name());
+		}
+		node.addPreferenceChangeListener(PREFERENCE_LISTENER);
+		reload();
+	}
+
+	/**
+	 * Sets the threshold of a logger and its descendants without their own threshold.
+	 *
+	 * @param name  The logger name, {@link #ROOT} for the root logger
+	 * @param level The least severe level logged, or null to inherit from the parent again
+	 */
+	public static synchronized void setLevel(String name, Logger.LogLevel level) {
+		Map<String, Logger.LogLevel> levels = new HashMap<>(snapshot.levels);
+		if (level != null) {
+			levels.put(name, level);
+		} else {
+			levels.remove(name);
+		}
+		snapshot = new Snapshot(Collections.unmodifiableMap(levels));
+
+		if (node != null) {
+			if (level != null) {
+				node.put(toKey(name), level.name());
+			} else {
+				node.remove(toKey(name));
+			}
+		}
+	}
+
+	/**
+	 * Returns the threshold in effect for a logger.
+	 *
+	 * @param name The logger name
+	 * @return The configured threshold of the logger or of its nearest configured ancestor
+	 */
+	public static Logger.LogLevel getEffectiveLevel(String name) {
+		return snapshot.effectiveLevel(name);
+	}
+
+	/**
+	 * Returns the configured thresholds by logger name.
+	 *
+	 * @return An unmodifiable map of the configured thresholds
+	 */
+	public static Map<String, Logger.LogLevel> getConfiguredLevels() {
+		return snapshot.levels;
+	}
+
+	static Snapshot snapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * Rebuilds the snapshot from the bound preferences node.
+	 */
+	private static synchronized void reload() {
+		if (node == null) {
+			return;
+		}
+
+		Map<String, Logger.LogLevel> levels = new HashMap<>();
+		try {
+			for (String key : node.keys()) {
+				String value = node.get(key, null);
+				if (value == null) {
+					continue;
+				}
+				try {
+					levels.put(ROOT_KEY.equals(key) ? ROOT : key, Logger.LogLevel.valueOf(value));
+				} catch (IllegalArgumentException e) {
+					System.err.println("Ignoring invalid log level " + value + " for " + key);
+				}
+			}
+		} catch (BackingStoreException e) {
+			System.err.println("Failed to read log levels: " + e.getMessage());
+			return;
+		}
+		snapshot = new Snapshot(Collections.unmodifiableMap(levels));
+	}
+
+	private static String toKey(String name) {
+		return name.isEmpty() ? ROOT_KEY : name;
+	}
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.logging;
+
+import com.slobodanzivanovic.jewel.util.task.SerialTaskQueue;
+import com.slobodanzivanovic.jewel.util.task.TaskLane;
+import com.slobodanzivanovic.jewel.util.task.TaskScheduler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Log housekeeping that runs one task at a time in the background lane of the {@link TaskScheduler}:
+ * compressing rotated files, deleting expired session folders and keeping the log directory within
+ * its disk budget.
+ * Startup and logging threads only schedule work here and never wait for it.
+ *
+ * @author Slobodan Zivanovic
+ */
+final class LogMaintenance {
+
+	private static final long STARTUP_CLEANUP_DELAY_SECONDS = 5;
+	private static final String COMPRESSED_SUFFIX = ".gz";
+	private static final String TEMP_SUFFIX = ".tmp";
+	// Rotated files are named <name>-yyyyMMdd-HHmmss[-n].log
+	private static final Pattern ROTATED_FILE = Pattern.compile(".*-\\d{8}-\\d{6}(-\\d+)?\\.log");
+
+	private static final SerialTaskQueue EXECUTOR = TaskScheduler.getInstance().serialQueue(TaskLane.BACKGROUND);
+
+	// Files currently written by a logger, which housekeeping must not touch
+	private static final Set<Path> ACTIVE_FILES = ConcurrentHashMap.newKeySet();
+	private static final AtomicBoolean CLEANUP_SCHEDULED = new AtomicBoolean();
+
+	private LogMaintenance() {
+	}
+
+	/**
+	 * Marks a log file as written by a logger.
+	 */
+	static void register(Path logFile) {
+		ACTIVE_FILES.add(logFile.toAbsolutePath());
+	}
+
+	/**
+	 * Schedules the retention cleanup of the log directory once, shortly after startup.
+	 */
+	static void scheduleStartupCleanup(Path logsDir, DateTimeFormatter sessionFormatter, RetentionPolicy policy) {
+		if (CLEANUP_SCHEDULED.compareAndSet(false, true)) {
+			EXECUTOR.schedule(() -> {
+				deleteExpiredSessions(logsDir, sessionFormatter, policy);
+				if (policy.compress()) {
+					compressOrphans(logsDir);
+				}
+				enforceBudget(logsDir, policy);
+			}, STARTUP_CLEANUP_DELAY_SECONDS, TimeUnit.SECONDS);
+		}
+	}
+
+	/**
+	 * Schedules the compression of a freshly rotated file and a budget check. Binary logs stay
+	 * uncompressed, since their index points into the raw file and the reader opens it directly.
+	 */
+	static void rotated(Path rotatedFile, LogFormat format, Path logsDir, RetentionPolicy policy) {
+		EXECUTOR.execute(() -> {
+			if (policy.compress() && format != LogFormat.BINARY) {
+				compress(rotatedFile);
+			}
+			enforceBudget(logsDir, policy);
+		});
+	}
+
+	/**
+	 * Runs a task periodically with the maintenance tasks until the returned future is cancelled.
+	 */
+	static ScheduledFuture<?> schedulePeriodic(Runnable task, long periodSeconds) {
+		return EXECUTOR.schedulePeriodic(task, periodSeconds, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Compresses a file to {@code <file>.gz} and deletes the original. The archive is written
+	 * under a temporary name first, so an interrupted compression never leaves a truncated archive.
+	 */
+	private static void compress(Path file) {
+		Path target = file.resolveSibling(file.getFileName() + COMPRESSED_SUFFIX);
+		Path temp = file.resolveSibling(file.getFileName() + COMPRESSED_SUFFIX + TEMP_SUFFIX);
+		try {
+			try (InputStream in = Files.newInputStream(file);
+				 OutputStream out = new GZIPOutputStream(Files.newOutputStream(temp), 64 * 1024)) {
+				in.transferTo(out);
+			}
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			Files.delete(file);
+		} catch (IOException e) {
+			System.err.println("Failed to compress " + file + ": " + e.getMessage());
+			try {
+				Files.deleteIfExists(temp);
+			} catch (IOException ignored) {
+			}
+		}
+	}
+
+	/**
+	 * Compresses rotated files left uncompressed by an earlier session, and removes
+	 * temporary files of compressions that were interrupted.
+	 */
+	private static void compressOrphans(Path logsDir) {
+		List<Path> orphans = new ArrayList<>();
+		try (Stream<Path> files = Files.walk(logsDir)) {
+			files.filter(Files::isRegularFile).forEach(file -> {
+				String name = file.getFileName().toString();
+				if (name.endsWith(COMPRESSED_SUFFIX + TEMP_SUFFIX)) {
+					try {
+						Files.deleteIfExists(file);
+					} catch (IOException ignored) {
+					}
+				} else if (ROTATED_FILE.matcher(name).matches() && !ACTIVE_FILES.contains(file.toAbsolutePath())) {
+					orphans.add(file);
+				}
+			});
+		} catch (IOException | UncheckedIOException e) {
+			System.err.println("Failed to scan log directory: " + e.getMessage());
+		}
+		orphans.forEach(LogMaintenance::compress);
+	}
+
+	/**
+	 * Removes session folders older than the maximum age.
+	 */
+	private static void deleteExpiredSessions(Path logsDir, DateTimeFormatter sessionFormatter, RetentionPolicy policy) {
+		LocalDateTime cutoffDate = LocalDateTime.now().minus(policy.maxAge());
+
+		try (Stream<Path> folders = Files.list(logsDir)) {
+			folders.forEach(folder -> {
+				if (Files.isDirectory(folder)) {
+					try {
+						LocalDateTime folderDate = LocalDateTime.parse(folder.getFileName().toString(), sessionFormatter);
+						if (folderDate.isBefore(cutoffDate)) {
+							deleteDirectory(folder);
+						}
+					} catch (Exception e) {
+						System.err.println("Skipping invalid log folder: " + folder.getFileName());
+					}
+				}
+			});
+		} catch (IOException e) {
+			System.err.println("Failed to cleanup old logs: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Deletes the oldest inactive files until the log directory fits its disk budget,
+	 * then removes the session folders left empty.
+	 */
+	private static void enforceBudget(Path logsDir, RetentionPolicy policy) {
+		record LogFile(Path path, long size, long modified) {
+		}
+
+		List<LogFile> candidates = new ArrayList<>();
+		long total = 0;
+		try (Stream<Path> files = Files.walk(logsDir)) {
+			for (Path file : (Iterable<Path>) files::iterator) {
+				BasicFileAttributes attributes;
+				try {
+					attributes = Files.readAttributes(file, BasicFileAttributes.class);
+				} catch (IOException e) {
+					// Deleted or rotated while walking
+					continue;
+				}
+				if (!attributes.isRegularFile()) {
+					continue;
+				}
+				total += attributes.size();
+				if (!ACTIVE_FILES.contains(file.toAbsolutePath())) {
+					candidates.add(new LogFile(file, attributes.size(), attributes.lastModifiedTime().toMillis()));
+				}
+			}
+		} catch (IOException | UncheckedIOException e) {
+			System.err.println("Failed to measure log directory: " + e.getMessage());
+			return;
+		}
+		if (total <= policy.maxTotalBytes()) {
+			return;
+		}
+
+		candidates.sort(Comparator.comparingLong(LogFile::modified));
+		for (LogFile file : candidates) {
+			if (total <= policy.maxTotalBytes()) {
+				break;
+			}
+			try {
+				if (!Files.deleteIfExists(file.path())) {
+					// Already removed along with its binary log
+					continue;
+				}
+				total -= file.size();
+				if (file.path().getFileName().toString().endsWith(LogFormat.BINARY.getExtension())) {
+					// The index is useless without its log
+					Path index = BinaryLog.indexFile(file.path());
+					if (Files.exists(index)) {
+						total -= Files.size(index);
+						Files.delete(index);
+					}
+				}
+				deleteIfEmpty(file.path().getParent(), logsDir);
+			} catch (IOException e) {
+				System.err.println("Failed to delete " + file.path() + ": " + e.getMessage());
+			}
+		}
+	}
+
+	private static void deleteIfEmpty(Path dir, Path logsDir) throws IOException {
+		if (dir == null || dir.equals(logsDir)) {
+			return;
+		}
+		try (Stream<Path> contents = Files.list(dir)) {
+			if (contents.findAny().isEmpty()) {
+				Files.deleteIfExists(dir);
+			}
+		}
+	}
+
+	/**
+	 * Recursively deletes a directory and all its contents.
+	 *
+	 * @param path The path to the directory to be deleted
+	 * @throws IOException If the deletion operation fails
+	 */
+	private static void deleteDirectory(Path path) throws IOException {
+		if (!Files.exists(path)) {
+			return;
+		}
+
+		try (Stream<Path> contents = Files.walk(path)) {
+			contents.sorted(Comparator.reverseOrder()).forEach(subPath -> {
+				try {
+					Files.delete(subPath);
+				} catch (IOException e) {
+					System.err.println("Failed to delete " + subPath + ": " + e.getMessage());
+				}
+			});
+		}
+	}
+}
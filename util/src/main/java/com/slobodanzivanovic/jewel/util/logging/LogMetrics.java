@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.logging;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters describing the cost of logging itself, shared by a logger and its named children.
+ * <p>
+ * Every counter is striped ({@link LongAdder}, {@link LongAccumulator}), so threads logging at
+ * the same time do not contend on a shared cache line, and updating them never allocates. Write
+ * latencies are recorded into a histogram with power of two buckets, percentiles are reported
+ * as the upper bound of their bucket.
+ * <p>
+ * A write is the time until a message reached the file system: the whole logging call for a
+ * synchronous logger, including waiting for the file lock, and each batch flushed by the
+ * background writer of an asynchronous one.
+ *
+ * @author Slobodan Zivanovic
+ */
+public final class LogMetrics {
+
+	private static final int LATENCY_BUCKETS = 64;
+
+	private final int queueCapacity;
+	private final LongAdder[] messages = new LongAdder[Logger.LogLevel.values().length];
+	private final LongAdder bytesWritten = new LongAdder();
+	private final LongAdder batches = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+	private final LongAccumulator queueHighWater = new LongAccumulator(Math::max, 0);
+	private final LongAdder[] latencyBuckets = new LongAdder[LATENCY_BUCKETS];
+	private final LongAccumulator maxLatency = new LongAccumulator(Math::max, 0);
+
+	LogMetrics(int queueCapacity) {
+		this.queueCapacity = queueCapacity;
+		for (int i = 0; i < messages.length; i++) {
+			messages[i] = new LongAdder();
+		}
+		for (int i = 0; i < LATENCY_BUCKETS; i++) {
+			latencyBuckets[i] = new LongAdder();
+		}
+	}
+
+	void messageLogged(Logger.LogLevel level) {
+		messages[level.ordinal()].increment();
+	}
+
+	void messageDropped() {
+		dropped.increment();
+	}
+
+	void messagesDropped(long count) {
+		dropped.add(count);
+	}
+
+	void queueDepth(int depth) {
+		queueHighWater.accumulate(depth);
+	}
+
+	void bytesWritten(long bytes) {
+		bytesWritten.add(bytes);
+	}
+
+	/**
+	 * Records a flush to the file.
+	 *
+	 * @param bytes The bytes written by the flush, also counted in {@link #getBytesWritten()}
+	 * @param nanos How long the write took
+	 */
+	void flushed(long bytes, long nanos) {
+		bytesWritten.add(bytes);
+		batches.increment();
+		latencyBuckets[LATENCY_BUCKETS - Long.numberOfLeadingZeros(Math.max(0, nanos))].increment();
+		maxLatency.accumulate(nanos);
+	}
+
+	/**
+	 * Returns the number of messages logged at a level, including messages dropped afterwards.
+	 *
+	 * @param level The level
+	 * @return The message count
+	 */
+	public long getMessageCount(Logger.LogLevel level) {
+		return messages[level.ordinal()].sum();
+	}
+
+	/**
+	 * Returns the number of messages logged at any level.
+	 *
+	 * @return The message count
+	 */
+	public long getTotalMessageCount() {
+		long total = 0;
+		for (LongAdder counter : messages) {
+			total += counter.sum();
+		}
+		return total;
+	}
+
+	/**
+	 * Returns the number of bytes written to the log files.
+	 *
+	 * @return The byte count
+	 */
+	public long getBytesWritten() {
+		return bytesWritten.sum();
+	}
+
+	/**
+	 * Returns the number of writes to the log file.
+	 *
+	 * @return The number of flushed batches, one per message for a synchronous logger
+	 */
+	public long getBatchCount() {
+		return batches.sum();
+	}
+
+	/**
+	 * Returns the number of messages discarded because the queue of an asynchronous logger was full.
+	 *
+	 * @return The dropped message count
+	 */
+	public long getDroppedCount() {
+		return dropped.sum();
+	}
+
+	/**
+	 * Returns the highest number of queued messages seen by an asynchronous logger.
+	 *
+	 * @return The queue high-water mark, 0 for a synchronous logger
+	 */
+	public long getQueueHighWaterMark() {
+		return queueHighWater.get();
+	}
+
+	/**
+	 * Returns the capacity of the queue of an asynchronous logger.
+	 *
+	 * @return The capacity, 0 for a synchronous logger
+	 */
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	/**
+	 * Returns the write latency below which the given share of writes completed.
+	 *
+	 * @param percentile The percentile, between 0 and 100
+	 * @return The latency in nanoseconds, rounded up to a power of two and capped at the maximum
+	 */
+	public long getWriteLatencyPercentile(double percentile) {
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+		}
+		long[] counts = new long[LATENCY_BUCKETS];
+		long total = 0;
+		for (int i = 0; i < LATENCY_BUCKETS; i++) {
+			counts[i] = latencyBuckets[i].sum();
+			total += counts[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+		long seen = 0;
+		for (int i = 0; i < LATENCY_BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.min((1L << i) - 1, getMaxWriteLatency());
+			}
+		}
+		return getMaxWriteLatency();
+	}
+
+	/**
+	 * Returns the slowest write.
+	 *
+	 * @return The latency in nanoseconds
+	 */
+	public long getMaxWriteLatency() {
+		return maxLatency.get();
+	}
+
+	/**
+	 * Writes the current values to a file, replacing it atomically.
+	 */
+	void dump(Path file) {
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		try {
+			Files.writeString(temp, toString(), StandardCharsets.UTF_8);
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			System.err.println("Failed to write log metrics: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Returns the values as {@code key=value} lines, latencies in microseconds.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder out = new StringBuilder(512);
+		out.append("# Logger metrics at ").append(LocalDateTime.now()).append('\n');
+		for (Logger.LogLevel level : Logger.LogLevel.values()) {
+			out.append("messages.").append(level.name().toLowerCase(Locale.ROOT)).append('=')
+				.append(getMessageCount(level)).append('\n');
+		}
+		out.append("messages.dropped=").append(getDroppedCount()).append('\n');
+		out.append("bytes.written=").append(getBytesWritten()).append('\n');
+		out.append("batches.flushed=").append(getBatchCount()).append('\n');
+		out.append("queue.capacity=").append(getQueueCapacity()).append('\n');
+		out.append("queue.highWaterMark=").append(getQueueHighWaterMark()).append('\n');
+		out.append("write.latency.p50.us=").append(getWriteLatencyPercentile(50) / 1000).append('\n');
+		out.append("write.latency.p99.us=").append(getWriteLatencyPercentile(99) / 1000).append('\n');
+		out.append("write.latency.max.us=").append(getMaxWriteLatency() / 1000).append('\n');
+		return out.toString();
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.logging;
+
+/**
+ * Selects log entries by level and time range.
+ *
+ * @param minLevel   The least severe level included
+ * @param fromMillis The earliest timestamp included
+ * @param toMillis   The latest timestamp included
+ * @author Slobodan Zivanovic
+ */
+public record LogQuery(Logger.LogLevel minLevel, long fromMillis, long toMillis) {
+
+	public LogQuery {
+		if (minLevel == null) {
+			throw new IllegalArgumentException("Minimum level must not be null");
+		}
+	}
+
+	/**
+	 * Returns a query matching every entry.
+	 *
+	 * @return The query
+	 */
+	public static LogQuery all() {
+		return new LogQuery(Logger.LogLevel.DEBUG, Long.MIN_VALUE, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Checks whether an entry with the given level and timestamp is selected.
+	 *
+	 * @param level     The level of the entry
+	 * @param timestamp The timestamp of the entry
+	 * @return true if the entry matches
+	 */
+	public boolean matches(Logger.LogLevel level, long timestamp) {
+		return level.getSeverity() >= minLevel.getSeverity() && timestamp >= fromMillis && timestamp <= toMillis;
+	}
+
+	/**
+	 * Returns one bit per level ordinal included by this query.
+	 */
+	int levelBits() {
+		int bits = 0;
+		for (Logger.LogLevel level : Logger.LogLevel.values()) {
+			if (level.getSeverity() >= minLevel.getSeverity()) {
+				bits |= 1 << level.ordinal();
+			}
+		}
+		return bits;
+	}
+}
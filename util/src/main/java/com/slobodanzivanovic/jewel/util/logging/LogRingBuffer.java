@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.logging;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded lock-free queue of log messages with many producers and a single consumer.
+ * <p>
+ * Each slot carries a sequence number. A producer claims a position with one CAS on the tail,
+ * fills the slot and then publishes it by advancing the slot sequence, so the consumer never
+ * sees a half-written message and producers never wait on each other or on the consumer.
+ * <p>
+ * Messages are stored as a template and its arguments, which are only formatted by the consumer.
+ * Up to {@link #INLINE_ARGS} arguments are copied into preallocated slot storage, so publishing
+ * a message does not allocate.
+ *
+ * @author Slobodan Zivanovic
+ */
+final class LogRingBuffer {
+
+	static final int INLINE_ARGS = 3;
+
+	/**
+	 * Receives the messages drained from the buffer. The argument array is only valid during the call.
+	 */
+	@FunctionalInterface
+	interface EntryHandler {
+		void onEntry(long timestamp, Logger.LogLevel level, String name, String template, Object[] args, int offset,
+					 int count, Throwable throwable);
+	}
+
+	private final int mask;
+	private final long[] timestamps;
+	private final Logger.LogLevel[] levels;
+	private final String[] names;
+	private final String[] templates;
+	private final Object[] inlineArgs;
+	private final Object[][] varArgs;
+	private final int[] argCounts;
+	private final Throwable[] throwables;
+	private final AtomicLongArray sequences;
+
+	private final AtomicLong tail = new AtomicLong();
+	// Written only by the consumer, read by producers estimating the size
+	private final AtomicLong head = new AtomicLong();
+
+	LogRingBuffer(int capacity) {
+		int size = capacityFor(capacity);
+		mask = size - 1;
+		timestamps = new long[size];
+		levels = new Logger.LogLevel[size];
+		names = new String[size];
+		templates = new String[size];
+		inlineArgs = new Object[size * INLINE_ARGS];
+		varArgs = new Object[size][];
+		argCounts = new int[size];
+		throwables = new Throwable[size];
+		sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			sequences.set(i, i);
+		}
+	}
+
+	int capacity() {
+		return mask + 1;
+	}
+
+	/**
+	 * Returns the capacity of a buffer created with the requested capacity, the next power of two.
+	 */
+	static int capacityFor(int capacity) {
+		return Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+	}
+
+	/**
+	 * Publishes a message with up to {@link #INLINE_ARGS} arguments.
+	 *
+	 * @return false if the buffer is full
+	 */
+	boolean offer(long timestamp, Logger.LogLevel level, String name, String template, int count, Object arg0,
+				  Object arg1, Object arg2, Throwable throwable) {
+		long position = claim();
+		if (position < 0) {
+			return false;
+		}
+
+		int index = (int) (position & mask);
+		int base = index * INLINE_ARGS;
+		inlineArgs[base] = arg0;
+		inlineArgs[base + 1] = arg1;
+		inlineArgs[base + 2] = arg2;
+		publish(position, index, timestamp, level, name, template, count, null, throwable);
+		return true;
+	}
+
+	/**
+	 * Publishes a message whose arguments are held in an array.
+	 *
+	 * @return false if the buffer is full
+	 */
+	boolean offer(long timestamp, Logger.LogLevel level, String name, String template, Object[] args,
+				  Throwable throwable) {
+		long position = claim();
+		if (position < 0) {
+			return false;
+		}
+
+		int index = (int) (position & mask);
+		publish(position, index, timestamp, level, name, template, args.length, args, throwable);
+		return true;
+	}
+
+	/**
+	 * Removes up to {@code max} published messages in order. Only the consumer thread may call this.
+	 *
+	 * @return The number of messages drained
+	 */
+	int drain(EntryHandler handler, int max) {
+		long position = head.get();
+		int count = 0;
+		while (count < max) {
+			int index = (int) (position & mask);
+			if (sequences.get(index) != position + 1) {
+				break;
+			}
+
+			Object[] args = varArgs[index];
+			if (args != null) {
+				handler.onEntry(timestamps[index], levels[index], names[index], templates[index], args, 0,
+					argCounts[index], throwables[index]);
+			} else {
+				handler.onEntry(timestamps[index], levels[index], names[index], templates[index], inlineArgs,
+					index * INLINE_ARGS, argCounts[index], throwables[index]);
+			}
+
+			// Release the references so queued arguments are not kept alive
+			int base = index * INLINE_ARGS;
+			inlineArgs[base] = null;
+			inlineArgs[base + 1] = null;
+			inlineArgs[base + 2] = null;
+			varArgs[index] = null;
+			names[index] = null;
+			templates[index] = null;
+			throwables[index] = null;
+
+			sequences.set(index, position + mask + 1);
+			position++;
+			count++;
+		}
+		head.lazySet(position);
+		return count;
+	}
+
+	/**
+	 * Returns the number of positions claimed by producers so far.
+	 */
+	long produced() {
+		return tail.get();
+	}
+
+	/**
+	 * Returns the number of messages drained so far.
+	 */
+	long consumed() {
+		return head.get();
+	}
+
+	/**
+	 * Returns the approximate number of queued messages. The head is only advanced after a drain,
+	 * so the difference can briefly exceed the capacity.
+	 */
+	int size() {
+		return (int) Math.min(mask + 1, Math.max(0, tail.get() - head.get()));
+	}
+
+	/**
+	 * Claims the next position, or returns -1 if the buffer is full.
+	 */
+	private long claim() {
+		long position = tail.get();
+		while (true) {
+			long difference = sequences.get((int) (position & mask)) - position;
+			if (difference == 0) {
+				if (tail.compareAndSet(position, position + 1)) {
+					return position;
+				}
+				position = tail.get();
+			} else if (difference < 0) {
+				return -1;
+			} else {
+				position = tail.get();
+			}
+		}
+	}
+
+	private void publish(long position, int index, long timestamp, Logger.LogLevel level, String name,
+						 String template, int count, Object[] args, Throwable throwable) {
+		timestamps[index] = timestamp;
+		levels[index] = level;
+		names[index] = name;
+		templates[index] = template;
+		argCounts[index] = count;
+		varArgs[index] = args;
+		throwables[index] = throwable;
+		sequences.set(index, position + 1);
+	}
+}
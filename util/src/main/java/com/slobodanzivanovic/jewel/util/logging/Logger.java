@@ -19,14 +19,15 @@ package com.slobodanzivanovic.jewel.util.logging;
 import com.slobodanzivanovic.jewel.util.platform.PlatformInfo;
 
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
-import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.function.Supplier;
 
 /**
  * A thread-safe logging utility that provides file-based logging capabilities with automatic log rotation
@@ -34,21 +35,61 @@ import java.util.stream.Stream;
  * file size and retention periods. Key features include thread-safe logging operations, automatic log
  * rotation when size limit is reached, automatic cleanup of old log files, platform-specific log
  * directory locations, and session-based log organization.
+ * <p>
+ * Housekeeping never runs on the logging or startup path. Rotation only renames the file, while
+ * compressing rotated files and applying the {@link RetentionPolicy} age and disk budget limits
+ * run on a low priority background thread.
+ * <p>
+ * A logger created with {@link AsyncOptions} does not touch the file on the caller's thread. Messages
+ * are published into a lock-free ring buffer and written in batches by a background thread, so logging
+ * from the EDT costs a timestamp and a slot claim. Call {@link #close()} on shutdown to write out the
+ * remaining messages.
+ * <p>
+ * Messages can be logged with {@code {}} placeholders, as in {@code info("x={} y={}", x, y)}, or
+ * built lazily through a {@link Supplier}. Arguments are only formatted if the level is enabled, into
+ * reusable per-thread buffers, or on the writer thread in async mode, so a disabled call with up to
+ * three arguments allocates nothing. Async loggers format arguments after the call returns, so pass
+ * values that are not modified afterwards.
+ * <p>
+ * {@link #getChild} returns named loggers sharing this logger's file. Each logger's level threshold
+ * comes from {@link LogLevels}, configured per hierarchical name and changeable at runtime.
+ * <p>
+ * {@link #getMetrics()} reports message counts, bytes written, queue usage, drops and write
+ * latency. They are also written to {@code <filename>.metrics} in the session directory
+ * every {@value #METRICS_DUMP_SECONDS} seconds and on close.
+ * <p>
+ * With {@link LogFormat#BINARY} the file holds compact records with interned names and templates
+ * and an index of its blocks, read back with {@link BinaryLogReader}.
  *
  * @author Slobodan Zivanovic
  */
-public class Logger {
+public class Logger implements AutoCloseable {
 
 	private final Path logFilePath;
+	private final AsyncLogWriter asyncWriter;
 	private final ReentrantLock lock = new ReentrantLock();
-	private final DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+	private FileChannel channel;
+
+	// The logger owning the file, and the named loggers writing to it
+	private final Logger root;
+	private final String name;
+	private final ConcurrentHashMap<String, Logger> children;
+	private Threshold threshold = new Threshold(null, LogLevel.INFO.severity);
+	private final RetentionPolicy retentionPolicy;
+	private final LogFormat format;
+	private BinaryLogEncoder binaryEncoder;
+	private final LogMetrics metrics;
+	private final ScheduledFuture<?> metricsDump;
+	private final Path metricsFile;
+	private static final long METRICS_DUMP_SECONDS = 30;
 	private static final long MIN_REQUIRED_SPACE = 10 * 1024 * 1024;
-	private static final int MAX_LOG_SIZE = 10 * 1024 * 1024;
-	private static final long MAX_LOG_AGE_DAYS = 15;
 
 	private static final String SESSION_FOLDER;
 	private static final DateTimeFormatter SESSION_FOLDER_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss");
 
+	private static final TimestampCache TIMESTAMPS = new TimestampCache();
+	private static final ThreadLocal<SyncBuffers> SYNC_BUFFERS = ThreadLocal.withInitial(SyncBuffers::new);
+
 	static {
 		SESSION_FOLDER = LocalDateTime.now().format(SESSION_FOLDER_FORMATTER);
 	}
@@ -57,7 +98,72 @@ public class Logger {
 	 * Defines the available logging levels.
 	 */
 	public enum LogLevel {
-		INFO, WARNING, ERROR, DEBUG
+		INFO(1), WARNING(2), ERROR(3), DEBUG(0);
+
+		private final int severity;
+
+		LogLevel(int severity) {
+			this.severity = severity;
+		}
+
+		/**
+		 * Returns the severity of the level, higher is more severe.
+		 *
+		 * @return The severity, from 0 for DEBUG to 3 for ERROR
+		 */
+		public int getSeverity() {
+			return severity;
+		}
+	}
+
+	/**
+	 * The threshold severity resolved from a {@link LogLevels} snapshot. Immutable, so a logger can
+	 * publish it through a plain field and only resolve again once the snapshot changed.
+	 */
+	private record Threshold(LogLevels.Snapshot snapshot, int severity) {
+	}
+
+	/**
+	 * Per-thread buffers used to format and encode messages of synchronous loggers.
+	 * A message logged while the thread's buffers are in use, by an argument's toString or a
+	 * supplier, gets fresh buffers, see {@link #acquire()}.
+	 */
+	private static final class SyncBuffers {
+		private static final int MAX_RETAINED_LINE = 64 * 1024;
+
+		private StringBuilder line = new StringBuilder(256);
+		private final LineEncoder encoder = new LineEncoder(8 * 1024);
+		private final Object[] args = new Object[LogRingBuffer.INLINE_ARGS];
+		private final StringBuilder scratch = new StringBuilder(64);
+		// Messages of this thread being logged, more than one when logging re-entered
+		private int depth;
+
+		/**
+		 * Returns the buffers of the calling thread, or fresh ones if they are in use further up the stack.
+		 * Must be paired with {@link #release()}.
+		 */
+		private static SyncBuffers acquire() {
+			SyncBuffers buffers = SYNC_BUFFERS.get();
+			return buffers.depth++ == 0 ? buffers : new SyncBuffers();
+		}
+
+		private void release() {
+			SyncBuffers owned = SYNC_BUFFERS.get();
+			owned.depth--;
+			if (owned == this) {
+				reset();
+			}
+		}
+
+		private void reset() {
+			Arrays.fill(args, null);
+			scratch.setLength(0);
+			if (line.capacity() > MAX_RETAINED_LINE) {
+				line = new StringBuilder(256);
+			} else {
+				line.setLength(0);
+			}
+		}
 	}
 
 	/**
@@ -68,17 +174,114 @@ public class Logger {
 	 *                     or if there's insufficient disk space
 	 */
 	public Logger(String filename) throws IOException {
-		Path logDir = getSystemLogDirectory().resolve(SESSION_FOLDER);
+		this(filename, null);
+	}
+
+	/**
+	 * Constructs a new Logger instance with the specified filename that writes on a background thread.
+	 *
+	 * @param filename     The base name for the log file (without extension)
+	 * @param asyncOptions The ring buffer and writer configuration, or null to write synchronously
+	 * @throws IOException If the log directory cannot be created or accessed,
+	 *                     or if there's insufficient disk space
+	 */
+	public Logger(String filename, AsyncOptions asyncOptions) throws IOException {
+		this(filename, asyncOptions, RetentionPolicy.defaults());
+	}
+
+	/**
+	 * Constructs a new Logger instance with the specified filename, write mode and retention policy.
+	 * Rotated files are compressed and expired logs are deleted on a background thread.
+	 *
+	 * @param filename        The base name for the log file (without extension)
+	 * @param asyncOptions    The ring buffer and writer configuration, or null to write synchronously
+	 * @param retentionPolicy The rotation and retention limits
+	 * @throws IOException If the log directory cannot be created or accessed,
+	 *                     or if there's insufficient disk space
+	 */
+	public Logger(String filename, AsyncOptions asyncOptions, RetentionPolicy retentionPolicy) throws IOException {
+		this(filename, asyncOptions, retentionPolicy, LogFormat.TEXT);
+	}
+
+	/**
+	 * Constructs a new Logger instance with the specified filename, write mode, retention policy and file format.
+	 *
+	 * @param filename        The base name for the log file (without extension)
+	 * @param asyncOptions    The ring buffer and writer configuration, or null to write synchronously
+	 * @param retentionPolicy The rotation and retention limits
+	 * @param format          The encoding of the log file
+	 * @throws IOException If the log directory cannot be created or accessed,
+	 *                     or if there's insufficient disk space
+	 */
+	public Logger(String filename, AsyncOptions asyncOptions, RetentionPolicy retentionPolicy, LogFormat format)
+		throws IOException {
+		Path logsDir = getSystemLogDirectory();
+		Path logDir = logsDir.resolve(SESSION_FOLDER);
 		Files.createDirectories(logDir);
 
-		this.logFilePath = logDir.resolve(filename + ".log");
+		this.logFilePath = logDir.resolve(filename + format.getExtension());
+		this.retentionPolicy = retentionPolicy;
+		this.format = format;
 
 		validateSystem();
 		if (!Files.exists(logFilePath)) {
 			Files.createFile(logFilePath);
 		}
 
-		cleanupOldLogs();
+		LogMaintenance.register(logFilePath);
+		if (format == LogFormat.BINARY) {
+			LogMaintenance.register(BinaryLog.indexFile(logFilePath));
+		}
+		LogMaintenance.scheduleStartupCleanup(logsDir, SESSION_FOLDER_FORMATTER, retentionPolicy);
+
+		metrics = new LogMetrics(asyncOptions != null ? LogRingBuffer.capacityFor(asyncOptions.capacity()) : 0);
+		asyncWriter = asyncOptions != null ? new AsyncLogWriter(this, logFilePath, asyncOptions) : null;
+
+		LogMetrics dumpedMetrics = metrics;
+		Path dumpFile = logDir.resolve(filename + ".metrics");
+		LogMaintenance.register(dumpFile);
+		metricsFile = dumpFile;
+		metricsDump = LogMaintenance.schedulePeriodic(() -> dumpedMetrics.dump(dumpFile), METRICS_DUMP_SECONDS);
+		root = this;
+		name = LogLevels.ROOT;
+		children = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Constructs a named logger writing to the file of the given root logger.
+	 */
+	private Logger(Logger root, String name) {
+		this.logFilePath = root.logFilePath;
+		this.retentionPolicy = root.retentionPolicy;
+		this.format = root.format;
+		this.metrics = root.metrics;
+		this.metricsDump = root.metricsDump;
+		this.metricsFile = root.metricsFile;
+		this.asyncWriter = root.asyncWriter;
+		this.root = root;
+		this.name = name;
+		this.children = null;
+	}
+
+	/**
+	 * Returns the named logger below this one that writes to the same file. Its level threshold
+	 * is configured through {@link LogLevels} and inherited from this logger until set.
+	 *
+	 * @param childName The name relative to this logger, may contain dots
+	 * @return The logger named {@code <this name>.<childName>}
+	 */
+	public Logger getChild(String childName) {
+		String fullName = name.isEmpty() ? childName : name + "." + childName;
+		return root.children.computeIfAbsent(fullName, n -> new Logger(root, n));
+	}
+
+	/**
+	 * Returns the name of this logger.
+	 *
+	 * @return The hierarchical name, empty for the logger owning the file
+	 */
+	public String getName() {
+		return name;
 	}
 
 	/**
@@ -87,7 +290,81 @@ public class Logger {
 	 * @param message The info message to be logged
 	 */
 	public void info(String message) {
-		log(LogLevel.INFO, message);
+		if (isEnabled(LogLevel.INFO)) {
+			log(LogLevel.INFO, message, 0, null, null, null, null);
+		}
+	}
+
+	/**
+	 * Logs a info message, substituting the argument for the {@code {}} placeholder.
+	 *
+	 * @param template The message template
+	 * @param arg      The argument
+	 */
+	public void info(String template, Object arg) {
+		if (isEnabled(LogLevel.INFO)) {
+			log(LogLevel.INFO, template, 1, arg, null, null, null);
+		}
+	}
+
+	/**
+	 * Logs a info message, substituting the arguments for the {@code {}} placeholders.
+	 *
+	 * @param template The message template
+	 * @param arg1     The first argument
+	 * @param arg2     The second argument
+	 */
+	public void info(String template, Object arg1, Object arg2) {
+		if (isEnabled(LogLevel.INFO)) {
+			log(LogLevel.INFO, template, 2, arg1, arg2, null, null);
+		}
+	}
+
+	/**
+	 * Logs a info message, substituting the arguments for the {@code {}} placeholders.
+	 *
+	 * @param template The message template
+	 * @param arg1     The first argument
+	 * @param arg2     The second argument
+	 * @param arg3     The third argument
+	 */
+	public void info(String template, Object arg1, Object arg2, Object arg3) {
+		if (isEnabled(LogLevel.INFO)) {
+			log(LogLevel.INFO, template, 3, arg1, arg2, arg3, null);
+		}
+	}
+
+	/**
+	 * Logs a info message, substituting the arguments for the {@code {}} placeholders.
+	 * The varargs array is allocated even when the level is disabled, prefer the fixed arity overloads.
+	 *
+	 * @param template The message template
+	 * @param args     The arguments
+	 */
+	public void info(String template, Object... args) {
+		if (isEnabled(LogLevel.INFO)) {
+			log(LogLevel.INFO, template, args, null);
+		}
+	}
+
+	/**
+	 * Logs a info message that is only built if the level is enabled.
+	 *
+	 * @param message Supplies the info message to be logged
+	 */
+	public void info(Supplier<String> message) {
+		if (isEnabled(LogLevel.INFO)) {
+			log(LogLevel.INFO, message.get(), 0, null, null, null, null);
+		}
+	}
+
+	/**
+	 * Checks whether info messages are logged.
+	 *
+	 * @return true if info messages are written
+	 */
+	public boolean isInfoEnabled() {
+		return isEnabled(LogLevel.INFO);
 	}
 
 	/**
@@ -96,16 +373,155 @@ public class Logger {
 	 * @param message The warning message to be logged
 	 */
 	public void warning(String message) {
-		log(LogLevel.WARNING, message);
+		if (isEnabled(LogLevel.WARNING)) {
+			log(LogLevel.WARNING, message, 0, null, null, null, null);
+		}
 	}
 
 	/**
-	 * Logs a error message.
+	 * Logs a warning message, substituting the argument for the {@code {}} placeholder.
+	 *
+	 * @param template The message template
+	 * @param arg      The argument
+	 */
+	public void warning(String template, Object arg) {
+		if (isEnabled(LogLevel.WARNING)) {
+			log(LogLevel.WARNING, template, 1, arg, null, null, null);
+		}
+	}
+
+	/**
+	 * Logs a warning message, substituting the arguments for the {@code {}} placeholders.
+	 *
+	 * @param template The message template
+	 * @param arg1     The first argument
+	 * @param arg2     The second argument
+	 */
+	public void warning(String template, Object arg1, Object arg2) {
+		if (isEnabled(LogLevel.WARNING)) {
+			log(LogLevel.WARNING, template, 2, arg1, arg2, null, null);
+		}
+	}
+
+	/**
+	 * Logs a warning message, substituting the arguments for the {@code {}} placeholders.
+	 *
+	 * @param template The message template
+	 * @param arg1     The first argument
+	 * @param arg2     The second argument
+	 * @param arg3     The third argument
+	 */
+	public void warning(String template, Object arg1, Object arg2, Object arg3) {
+		if (isEnabled(LogLevel.WARNING)) {
+			log(LogLevel.WARNING, template, 3, arg1, arg2, arg3, null);
+		}
+	}
+
+	/**
+	 * Logs a warning message, substituting the arguments for the {@code {}} placeholders.
+	 * The varargs array is allocated even when the level is disabled, prefer the fixed arity overloads.
+	 *
+	 * @param template The message template
+	 * @param args     The arguments
+	 */
+	public void warning(String template, Object... args) {
+		if (isEnabled(LogLevel.WARNING)) {
+			log(LogLevel.WARNING, template, args, null);
+		}
+	}
+
+	/**
+	 * Logs a warning message that is only built if the level is enabled.
+	 *
+	 * @param message Supplies the warning message to be logged
+	 */
+	public void warning(Supplier<String> message) {
+		if (isEnabled(LogLevel.WARNING)) {
+			log(LogLevel.WARNING, message.get(), 0, null, null, null, null);
+		}
+	}
+
+	/**
+	 * Checks whether warning messages are logged.
+	 *
+	 * @return true if warning messages are written
+	 */
+	public boolean isWarningEnabled() {
+		return isEnabled(LogLevel.WARNING);
+	}
+
+	/**
+	 * Logs an error message.
 	 *
 	 * @param message The error message to be logged
 	 */
 	public void error(String message) {
-		log(LogLevel.ERROR, message);
+		if (isEnabled(LogLevel.ERROR)) {
+			log(LogLevel.ERROR, message, 0, null, null, null, null);
+		}
+	}
+
+	/**
+	 * Logs an error message, substituting the argument for the {@code {}} placeholder.
+	 *
+	 * @param template The message template
+	 * @param arg      The argument
+	 */
+	public void error(String template, Object arg) {
+		if (isEnabled(LogLevel.ERROR)) {
+			log(LogLevel.ERROR, template, 1, arg, null, null, null);
+		}
+	}
+
+	/**
+	 * Logs an error message, substituting the arguments for the {@code {}} placeholders.
+	 *
+	 * @param template The message template
+	 * @param arg1     The first argument
+	 * @param arg2     The second argument
+	 */
+	public void error(String template, Object arg1, Object arg2) {
+		if (isEnabled(LogLevel.ERROR)) {
+			log(LogLevel.ERROR, template, 2, arg1, arg2, null, null);
+		}
+	}
+
+	/**
+	 * Logs an error message, substituting the arguments for the {@code {}} placeholders.
+	 *
+	 * @param template The message template
+	 * @param arg1     The first argument
+	 * @param arg2     The second argument
+	 * @param arg3     The third argument
+	 */
+	public void error(String template, Object arg1, Object arg2, Object arg3) {
+		if (isEnabled(LogLevel.ERROR)) {
+			log(LogLevel.ERROR, template, 3, arg1, arg2, arg3, null);
+		}
+	}
+
+	/**
+	 * Logs an error message, substituting the arguments for the {@code {}} placeholders.
+	 * The varargs array is allocated even when the level is disabled, prefer the fixed arity overloads.
+	 *
+	 * @param template The message template
+	 * @param args     The arguments
+	 */
+	public void error(String template, Object... args) {
+		if (isEnabled(LogLevel.ERROR)) {
+			log(LogLevel.ERROR, template, args, null);
+		}
+	}
+
+	/**
+	 * Logs an error message that is only built if the level is enabled.
+	 *
+	 * @param message Supplies the error message to be logged
+	 */
+	public void error(Supplier<String> message) {
+		if (isEnabled(LogLevel.ERROR)) {
+			log(LogLevel.ERROR, message.get(), 0, null, null, null, null);
+		}
 	}
 
 	/**
@@ -115,11 +531,18 @@ public class Logger {
 	 * @param throwable The exception to be logged
 	 */
 	public void error(String message, Throwable throwable) {
-		log(LogLevel.ERROR, message + "\nException: " +
-			throwable.getClass().getName() + ": " + throwable.getMessage() + "\n" +
-			Arrays.stream(throwable.getStackTrace())
-				.map(StackTraceElement::toString)
-				.collect(Collectors.joining("\n")));
+		if (isEnabled(LogLevel.ERROR)) {
+			log(LogLevel.ERROR, message, 0, null, null, null, throwable);
+		}
+	}
+
+	/**
+	 * Checks whether error messages are logged.
+	 *
+	 * @return true if error messages are written
+	 */
+	public boolean isErrorEnabled() {
+		return isEnabled(LogLevel.ERROR);
 	}
 
 	/**
@@ -128,99 +551,351 @@ public class Logger {
 	 * @param message The debug message to be logged
 	 */
 	public void debug(String message) {
-		log(LogLevel.DEBUG, message);
+		if (isEnabled(LogLevel.DEBUG)) {
+			log(LogLevel.DEBUG, message, 0, null, null, null, null);
+		}
 	}
 
 	/**
-	 * Internal method to handle the actual logging process.
-	 * Thread-safe implementation using ReentrantLock.
+	 * Logs a debug message, substituting the argument for the {@code {}} placeholder.
+	 *
+	 * @param template The message template
+	 * @param arg      The argument
+	 */
+	public void debug(String template, Object arg) {
+		if (isEnabled(LogLevel.DEBUG)) {
+			log(LogLevel.DEBUG, template, 1, arg, null, null, null);
+		}
+	}
+
+	/**
+	 * Logs a debug message, substituting the arguments for the {@code {}} placeholders.
 	 *
-	 * @param level   The logging level of the message
-	 * @param message The message to be logged
+	 * @param template The message template
+	 * @param arg1     The first argument
+	 * @param arg2     The second argument
+	 */
+	public void debug(String template, Object arg1, Object arg2) {
+		if (isEnabled(LogLevel.DEBUG)) {
+			log(LogLevel.DEBUG, template, 2, arg1, arg2, null, null);
+		}
+	}
+
+	/**
+	 * Logs a debug message, substituting the arguments for the {@code {}} placeholders.
+	 *
+	 * @param template The message template
+	 * @param arg1     The first argument
+	 * @param arg2     The second argument
+	 * @param arg3     The third argument
+	 */
+	public void debug(String template, Object arg1, Object arg2, Object arg3) {
+		if (isEnabled(LogLevel.DEBUG)) {
+			log(LogLevel.DEBUG, template, 3, arg1, arg2, arg3, null);
+		}
+	}
+
+	/**
+	 * Logs a debug message, substituting the arguments for the {@code {}} placeholders.
+	 * The varargs array is allocated even when the level is disabled, prefer the fixed arity overloads.
+	 *
+	 * @param template The message template
+	 * @param args     The arguments
+	 */
+	public void debug(String template, Object... args) {
+		if (isEnabled(LogLevel.DEBUG)) {
+			log(LogLevel.DEBUG, template, args, null);
+		}
+	}
+
+	/**
+	 * Logs a debug message that is only built if the level is enabled.
+	 *
+	 * @param message Supplies the debug message to be logged
+	 */
+	public void debug(Supplier<String> message) {
+		if (isEnabled(LogLevel.DEBUG)) {
+			log(LogLevel.DEBUG, message.get(), 0, null, null, null, null);
+		}
+	}
+
+	/**
+	 * Checks whether debug messages are logged.
+	 *
+	 * @return true if debug messages are written
+	 */
+	public boolean isDebugEnabled() {
+		return isEnabled(LogLevel.DEBUG);
+	}
+
+	/**
+	 * Checks whether messages of the given level are logged.
+	 *
+	 * @param level The level to check
+	 * @return true if messages of the level are written
+	 */
+	public boolean isEnabled(LogLevel level) {
+		LogLevels.Snapshot snapshot = LogLevels.snapshot();
+		Threshold current = threshold;
+		if (current.snapshot != snapshot) {
+			current = new Threshold(snapshot, snapshot.effectiveLevel(name).severity);
+			threshold = current;
+		}
+		return level.severity >= current.severity;
+	}
+
+	/**
+	 * Sets the least severe level logged by this logger and by its children without their own threshold.
+	 * The threshold is stored through {@link LogLevels} and applies immediately.
+	 *
+	 * @param level The threshold level, or null to inherit it from the parent logger
+	 */
+	public void setLevel(LogLevel level) {
+		LogLevels.setLevel(name, level);
+	}
+
+	/**
+	 * Returns the least severe level logged by this logger.
+	 *
+	 * @return The effective threshold level
+	 */
+	public LogLevel getLevel() {
+		return LogLevels.getEffectiveLevel(name);
+	}
+
+	/**
+	 * Returns the counters of the file this logger writes to, shared with its parent and children.
+	 *
+	 * @return The metrics
+	 */
+	public LogMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Checks whether this logger writes on a background thread.
+	 *
+	 * @return true if the logger was created with {@link AsyncOptions}
+	 */
+	public boolean isAsync() {
+		return asyncWriter != null;
+	}
+
+	/**
+	 * Waits until every message logged before this call has been written to the file.
+	 * Does nothing for a synchronous logger.
+	 */
+	public void flush() {
+		if (asyncWriter != null) {
+			asyncWriter.flush();
+		}
+	}
+
+	/**
+	 * Writes the remaining messages and stops the background writer, or closes the log file
+	 * of a synchronous logger. An asynchronous logger discards messages logged afterwards.
+	 * Does nothing on a named logger, the file is shared with every other logger of the root
+	 * and only closed by the root.
+	 */
+	@Override
+	public void close() {
+		if (root != this) {
+			return;
+		}
+		if (asyncWriter != null) {
+			asyncWriter.close();
+		} else {
+			lock.lock();
+			try {
+				closeChannel();
+			} finally {
+				lock.unlock();
+			}
+		}
+		metricsDump.cancel(false);
+		metrics.dump(metricsFile);
+	}
+
+	/**
+	 * Internal method to handle the actual logging process for messages with up to three arguments.
+	 * Hands the message to the background writer in async mode, otherwise formats it into
+	 * the calling thread's buffers and writes it directly.
 	 */
-	private void log(LogLevel level, String message) {
+	private void log(LogLevel level, String template, int count, Object arg0, Object arg1, Object arg2,
+					 Throwable throwable) {
+		metrics.messageLogged(level);
+		if (asyncWriter != null) {
+			asyncWriter.publish(level, name, template, count, arg0, arg1, arg2, throwable);
+			return;
+		}
+
+		SyncBuffers buffers = SyncBuffers.acquire();
+		try {
+			Object[] args = buffers.args;
+			args[0] = arg0;
+			args[1] = arg1;
+			args[2] = arg2;
+			root.write(level, name, template, args, count, throwable, buffers);
+		} finally {
+			buffers.release();
+		}
+	}
+
+	/**
+	 * Internal method to handle the actual logging process for messages with an argument array.
+	 */
+	private void log(LogLevel level, String template, Object[] args, Throwable throwable) {
+		metrics.messageLogged(level);
+		if (asyncWriter != null) {
+			asyncWriter.publish(level, name, template, args, throwable);
+		} else {
+			SyncBuffers buffers = SyncBuffers.acquire();
+			try {
+				root.write(level, name, template, args, args.length, throwable, buffers);
+			} finally {
+				buffers.release();
+			}
+		}
+	}
+
+	/**
+	 * Writes a message on the calling thread.
+	 * Thread-safe implementation using ReentrantLock.
+	 * The whole call, including waiting for the lock, is recorded as the write latency.
+	 */
+	private void write(LogLevel level, String loggerName, String template, Object[] args, int count,
+					   Throwable throwable, SyncBuffers buffers) {
+		long start = System.nanoTime();
+		long timestamp = System.currentTimeMillis();
+		long bytes = 0;
+		StringBuilder line = buffers.line;
+		if (format == LogFormat.TEXT) {
+			LogFormatter.appendLine(line, TIMESTAMPS.format(timestamp), level, loggerName, template, args, 0, count,
+				throwable);
+		} else {
+			// A message logged by an argument's toString must not be encoded in the middle of this record
+			args = renderArguments(args, count, buffers);
+		}
+
 		lock.lock();
 		try {
 			validateSystem();
 
-			if (Files.size(logFilePath) > MAX_LOG_SIZE) {
+			if (channel != null && channel.size() > retentionPolicy.maxFileBytes()) {
+				closeChannel();
 				rotateLog();
 			}
+			if (channel == null) {
+				openChannel();
+			}
 
-			String timestamp = LocalDateTime.now().format(dateFormatter);
-			String formattedMessage = String.format("[%s] [%s] %s%n", timestamp, level, message);
-
-			Files.write(logFilePath, formattedMessage.getBytes(), StandardOpenOption.APPEND);
-
+			if (binaryEncoder != null) {
+				// The string table is shared by all threads, so binary records are encoded under the lock
+				bytes += binaryEncoder.append(timestamp, level, loggerName, template, args, 0, count, throwable);
+				bytes += binaryEncoder.flushTo();
+			} else {
+				bytes += buffers.encoder.append(line, channel);
+				bytes += buffers.encoder.flushTo(channel);
+			}
 		} catch (IOException e) {
 			System.err.println("Failed to write to log file: " + e.getMessage());
 		} finally {
 			lock.unlock();
+			metrics.flushed(bytes, System.nanoTime() - start);
 		}
 	}
 
 	/**
-	 * Rotates the current log file by renaming it with a timestamp
-	 * and creating a new empty log file.
-	 *
-	 * @throws IOException If the file rotation operation fails
+	 * Replaces the arguments whose string form runs code of their own by that string, copying
+	 * the array unless it is the buffers' own.
 	 */
-	private void rotateLog() throws IOException {
-		String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
-		Path rotatedFile = logFilePath
-			.resolveSibling(logFilePath.getFileName().toString().replace(".log", "-" + timestamp + ".log"));
+	private static Object[] renderArguments(Object[] args, int count, SyncBuffers buffers) {
+		Object[] rendered = args;
+		for (int i = 0; i < count; i++) {
+			Object argument = args[i];
+			if (argument == null || argument instanceof String || argument instanceof Integer
+				|| argument instanceof Long || argument instanceof Boolean || argument instanceof Character
+				|| argument instanceof Double || argument instanceof Float || argument instanceof Throwable) {
+				continue;
+			}
+			if (rendered == args && args != buffers.args) {
+				rendered = Arrays.copyOf(args, count);
+			}
+			buffers.scratch.setLength(0);
+			LogFormatter.appendArgument(buffers.scratch, argument);
+			rendered[i] = buffers.scratch.toString();
+		}
+		return rendered;
+	}
 
-		Files.move(logFilePath, rotatedFile, StandardCopyOption.REPLACE_EXISTING);
-		Files.createFile(logFilePath);
+	private void openChannel() throws IOException {
+		if (format == LogFormat.BINARY) {
+			prepareBinaryFile();
+		}
+		channel = FileChannel.open(logFilePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+			StandardOpenOption.APPEND);
+		if (format == LogFormat.BINARY) {
+			if (binaryEncoder == null) {
+				binaryEncoder = new BinaryLogEncoder(8 * 1024);
+			}
+			binaryEncoder.open(logFilePath, channel);
+		}
 	}
 
-	/**
-	 * Removes log folders older than MAX_LOG_AGE_DAYS.
-	 */
-	private void cleanupOldLogs() {
+	private void closeChannel() {
+		if (channel == null) {
+			return;
+		}
 		try {
-			Path logsDir = getSystemLogDirectory();
-			LocalDateTime cutoffDate = LocalDateTime.now().minusDays(MAX_LOG_AGE_DAYS);
-
-			try (Stream<Path> folders = Files.list(logsDir)) {
-				folders.forEach(folder -> {
-					if (Files.isDirectory(folder)) {
-						try {
-							LocalDateTime folderDate = LocalDateTime.parse(folder.getFileName().toString(),
-								SESSION_FOLDER_FORMATTER);
-							if (folderDate.isBefore(cutoffDate)) {
-								deleteDirectory(folder);
-							}
-						} catch (Exception e) {
-							System.err.println("Skipping invalid log folder: " + folder.getFileName());
-						}
-					}
-				});
+			try {
+				if (binaryEncoder != null) {
+					binaryEncoder.close();
+				}
+			} finally {
+				channel.close();
 			}
 		} catch (IOException e) {
-			System.err.println("Failed to cleanup old logs: " + e.getMessage());
+			System.err.println("Failed to close log file: " + e.getMessage());
 		}
+		channel = null;
 	}
 
 	/**
-	 * Recursively deletes a directory and all its contents.
+	 * Rotates the current log file by renaming it with a timestamp
+	 * and creating a new empty log file. Compression of a rotated
+	 * text file and the disk budget check run in the background.
 	 *
-	 * @param path The path to the directory to be deleted
-	 * @throws IOException If the deletion operation fails
+	 * @throws IOException If the file rotation operation fails
 	 */
-	private void deleteDirectory(Path path) throws IOException {
-		if (!Files.exists(path)) {
-			return;
+	void rotateLog() throws IOException {
+		String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+		String extension = format.getExtension();
+		String fileName = logFilePath.getFileName().toString();
+		String baseName = fileName.substring(0, fileName.length() - extension.length()) + "-" + timestamp;
+		Path rotatedFile = logFilePath.resolveSibling(baseName + extension);
+		// Several rotations can happen within one second, never overwrite an earlier one
+		for (int i = 1; Files.exists(rotatedFile); i++) {
+			rotatedFile = logFilePath.resolveSibling(baseName + "-" + i + extension);
 		}
 
-		try (Stream<Path> contents = Files.walk(path)) {
-			contents.sorted(Comparator.reverseOrder()).forEach(subPath -> {
-				try {
-					Files.delete(subPath);
-				} catch (IOException e) {
-					System.err.println("Failed to delete " + subPath + ": " + e.getMessage());
-				}
-			});
+		Files.move(logFilePath, rotatedFile);
+		if (format == LogFormat.BINARY && Files.exists(BinaryLog.indexFile(logFilePath))) {
+			Files.move(BinaryLog.indexFile(logFilePath), BinaryLog.indexFile(rotatedFile));
+		}
+		Files.createFile(logFilePath);
+
+		LogMaintenance.rotated(rotatedFile, format, getSystemLogDirectory(), retentionPolicy);
+	}
+
+	/**
+	 * Rotates a binary log file that already has content, since its string table is only known
+	 * to the encoder that wrote it. Called before opening the file for writing.
+	 *
+	 * @throws IOException If the file rotation operation fails
+	 */
+	void prepareBinaryFile() throws IOException {
+		if (Files.exists(logFilePath) && Files.size(logFilePath) > 0) {
+			rotateLog();
 		}
 	}
 
@@ -232,7 +907,7 @@ public class Logger {
 	 *
 	 * @return Path to the system's log directory
 	 */
-	private Path getSystemLogDirectory() {
+	public static Path getSystemLogDirectory() {
 		String userHome = System.getProperty("user.home");
 
 		if (PlatformInfo.IS_WINDOWS) {
@@ -245,6 +920,24 @@ public class Logger {
 		}
 	}
 
+	/**
+	 * Returns the rotation and retention limits of this logger.
+	 *
+	 * @return The retention policy
+	 */
+	public RetentionPolicy getRetentionPolicy() {
+		return retentionPolicy;
+	}
+
+	/**
+	 * Returns the encoding of the log file.
+	 *
+	 * @return The log format
+	 */
+	public LogFormat getFormat() {
+		return format;
+	}
+
 	/**
 	 * Returns the path to the current log file.
 	 *
@@ -269,7 +962,7 @@ public class Logger {
 	 *
 	 * @throws IOException If system requirements are not met
 	 */
-	private void validateSystem() throws IOException {
+	void validateSystem() throws IOException {
 		FileStore store = Files.getFileStore(logFilePath.getParent());
 		long usableSpace = store.getUsableSpace();
 
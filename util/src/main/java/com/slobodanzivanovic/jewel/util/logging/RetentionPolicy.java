@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.logging;
+
+import java.time.Duration;
+
+/**
+ * Rotation and retention limits of the log files.
+ *
+ * @param maxFileBytes  The size at which a log file is rotated
+ * @param maxAge        How long session folders are kept
+ * @param maxTotalBytes The disk budget of the whole log directory, the oldest files are deleted beyond it
+ * @param compress      Whether rotated files are compressed with GZIP
+ * @author Slobodan Zivanovic
+ */
+public record RetentionPolicy(long maxFileBytes, Duration maxAge, long maxTotalBytes, boolean compress) {
+
+	public RetentionPolicy {
+		if (maxFileBytes <= 0) {
+			throw new IllegalArgumentException("Maximum file size must be positive: " + maxFileBytes);
+		}
+		if (maxAge == null || maxAge.isNegative() || maxAge.isZero()) {
+			throw new IllegalArgumentException("Maximum age must be positive: " + maxAge);
+		}
+		if (maxTotalBytes < maxFileBytes) {
+			throw new IllegalArgumentException("Disk budget must be at least the maximum file size: " + maxTotalBytes);
+		}
+	}
+
+	/**
+	 * Returns the policy used by the application loggers: 10MB files, 15 days of sessions
+	 * and a 256MB budget, with rotated files compressed.
+	 *
+	 * @return The default policy
+	 */
+	public static RetentionPolicy defaults() {
+		return new RetentionPolicy(10 * 1024 * 1024, Duration.ofDays(15), 256L * 1024 * 1024, true);
+	}
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.logging;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Formats log timestamps with second precision, formatting each second only once.
+ * Safe to share between threads.
+ *
+ * @author Slobodan Zivanovic
+ */
+final class TimestampCache {
+
+	private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
+		.withZone(ZoneId.systemDefault());
+
+	private record Entry(long second, String text) {
+	}
+
+	private volatile Entry last = new Entry(Long.MIN_VALUE, "");
+
+	/**
+	 * Returns the formatted timestamp of the given time.
+	 *
+	 * @param millis The time in milliseconds since the epoch
+	 * @return The timestamp text
+	 */
+	String format(long millis) {
+		long second = Math.floorDiv(millis, 1000);
+		Entry entry = last;
+		if (entry.second != second) {
+			entry = new Entry(second, FORMATTER.format(Instant.ofEpochSecond(second)));
+			last = entry;
+		}
+		return entry.text;
+	}
+}
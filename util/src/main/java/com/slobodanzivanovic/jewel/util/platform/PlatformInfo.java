@@ -199,18 +199,27 @@ public class PlatformInfo {
 
 	public void logSystemInfo() {
 		try {
-			Logger sysLogger = new Logger("platform-info");
-			sysLogger.info("System Information:");
-			sysLogger.info("OS Type: " + osType.getDisplayName());
-			sysLogger.info("OS Name: " + osName);
-			sysLogger.info("OS Version: " + osVersion);
-			sysLogger.info("OS Architecture: " + osArch);
-			sysLogger.info("Java Version: " + javaVersion);
-			sysLogger.info("Java Major Version: " + javaMajorVersion);
-			sysLogger.info("ARM64 Architecture: " + isAarch64());
+			logSystemInfo(new Logger("platform-info"));
 		} catch (IOException e) {
 			// TODO: in future probably should be moved in logger anyway
 			System.err.println("Failed to log system information: " + e.getMessage());
 		}
 	}
+
+	/**
+	 * Logs the system information to an existing logger, such as the session logger,
+	 * instead of opening a logger of its own.
+	 *
+	 * @param logger The logger to write to
+	 */
+	public void logSystemInfo(Logger logger) {
+		logger.info("System Information:");
+		logger.info("OS Type: " + osType.getDisplayName());
+		logger.info("OS Name: " + osName);
+		logger.info("OS Version: " + osVersion);
+		logger.info("OS Architecture: " + osArch);
+		logger.info("Java Version: " + javaVersion);
+		logger.info("Java Major Version: " + javaMajorVersion);
+		logger.info("ARM64 Architecture: " + isAarch64());
+	}
 }
@@ -0,0 +1,366 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.platform;
+
+import com.slobodanzivanovic.jewel.util.logging.Logger;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * Tracks heap occupancy, garbage collection pauses and the allocation rate of the running JVM,
+ * and asks registered caches to shrink when memory runs short.
+ * <p>
+ * The monitor listens to the notifications every {@link GarbageCollectorMXBean} emits at the end of
+ * a collection. The heap used after a collection, summed over the heap {@link MemoryPoolMXBean}s,
+ * against the maximum heap gives the occupancy, which maps to a {@link Pressure}. When the pressure
+ * rises, and again every {@value #RESHRINK_SECONDS} seconds while it stays elevated, the registered
+ * caches are shrunk on the monitor thread, so a large session gives up recomputable memory instead
+ * of failing with an {@link OutOfMemoryError}. The pressure falls back only once the occupancy is
+ * clearly below the threshold, so a heap hovering around it does not flap.
+ * <p>
+ * Caches owned by a component register with the component as the owner, which is referenced weakly
+ * like the owners of {@code UIEventBus} subscriptions.
+ *
+ * @author Slobodan Zivanovic
+ */
+public final class RuntimeMonitor {
+
+	private static final RuntimeMonitor INSTANCE = new RuntimeMonitor();
+
+	private static final double MODERATE_OCCUPANCY = 0.75;
+	private static final double CRITICAL_OCCUPANCY = 0.90;
+	private static final double HYSTERESIS = 0.10;
+	private static final long RESHRINK_SECONDS = 10;
+	private static final long SAMPLE_SECONDS = 1;
+
+	/**
+	 * How short the heap is on memory after the latest collection.
+	 */
+	public enum Pressure {
+		/**
+		 * Less than 75% of the heap is in use, caches may grow.
+		 */
+		NORMAL,
+		/**
+		 * At least 75% of the heap is in use, caches should drop what is cheap to recompute.
+		 */
+		MODERATE,
+		/**
+		 * At least 90% of the heap is in use, caches should drop everything they can.
+		 */
+		CRITICAL
+	}
+
+	/**
+	 * A cache that gives up memory on request.
+	 */
+	@FunctionalInterface
+	public interface Shrinkable {
+		/**
+		 * Called on the monitor thread when the pressure is above {@link Pressure#NORMAL}.
+		 *
+		 * @param pressure The current pressure
+		 */
+		void shrink(Pressure pressure);
+	}
+
+	/**
+	 * A registration of a cache, which is no longer shrunk once unregistered.
+	 */
+	public interface Registration {
+		void unregister();
+	}
+
+	/**
+	 * The state of the JVM at one moment.
+	 *
+	 * @param heapUsed           The bytes currently used on the heap
+	 * @param heapMax            The maximum heap size in bytes
+	 * @param occupancyAfterGc   The fraction of the heap used after the latest collection
+	 * @param allocationRate     The bytes allocated per second over the latest sample period
+	 * @param collections        The number of collections observed
+	 * @param totalPauseMillis   The summed duration of the stop-the-world collections
+	 * @param longestPauseMillis The duration of the longest stop-the-world collection
+	 * @param pressure           The current pressure
+	 */
+	public record Snapshot(long heapUsed, long heapMax, double occupancyAfterGc, long allocationRate,
+		long collections, long totalPauseMillis, long longestPauseMillis, Pressure pressure) {
+	}
+
+	private final List<Entry> caches = new CopyOnWriteArrayList<>();
+	private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "jewel-runtime-monitor");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private final List<Runnable> removals = new ArrayList<>();
+
+	private volatile Logger logger;
+	private volatile double occupancyAfterGc;
+	private volatile Pressure pressure = Pressure.NORMAL;
+	private volatile long allocationRate;
+	private long collections;
+	private long totalPauseMillis;
+	private long longestPauseMillis;
+	private long lastShrink;
+	private long lastAllocated = -1;
+	private boolean started;
+
+	private RuntimeMonitor() {
+	}
+
+	/**
+	 * Get the singleton instance of RuntimeMonitor
+	 *
+	 * @return The RuntimeMonitor instance
+	 */
+	public static RuntimeMonitor getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Starts listening to the collections of the JVM. Calling it again only replaces the logger.
+	 *
+	 * @param logger The logger pressure changes are written to, or null
+	 */
+	public synchronized void start(Logger logger) {
+		this.logger = logger;
+		if (started) {
+			return;
+		}
+		started = true;
+
+		Set<String> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+			.filter(pool -> pool.getType() == MemoryType.HEAP)
+			.map(MemoryPoolMXBean::getName)
+			.collect(Collectors.toUnmodifiableSet());
+		NotificationListener listener = (notification, handback) -> onNotification(notification, heapPools);
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			if (collector instanceof NotificationEmitter emitter) {
+				emitter.addNotificationListener(listener, null, null);
+				removals.add(() -> {
+					try {
+						emitter.removeNotificationListener(listener);
+					} catch (Exception e) {
+						System.err.println("Failed to remove GC listener: " + e.getMessage());
+					}
+				});
+			}
+		}
+		executor.scheduleWithFixedDelay(this::sampleAllocation, 0, SAMPLE_SECONDS, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Stops listening to the collections. Registered caches stay registered.
+	 */
+	public synchronized void stop() {
+		removals.forEach(Runnable::run);
+		removals.clear();
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Registers a cache, held strongly until it is unregistered.
+	 *
+	 * @param name  The name used in log messages
+	 * @param cache The cache
+	 * @return The registration
+	 */
+	public Registration register(String name, Shrinkable cache) {
+		return add(new Entry(name, null, (owner, pressure) -> cache.shrink(pressure)));
+	}
+
+	/**
+	 * Registers a cache on behalf of an owner that is referenced weakly. The cache receives the owner
+	 * with every request and must not reference the owner itself, otherwise the owner is never collected.
+	 *
+	 * @param name   The name used in log messages
+	 * @param owner  The owner of the cache, usually a component
+	 * @param shrink Shrinks the cache of the owner
+	 * @return The registration, which also ends when the owner is collected
+	 */
+	public <T> Registration register(String name, T owner, BiConsumer<? super T, Pressure> shrink) {
+		return add(new Entry(name, new WeakReference<>(owner), shrink));
+	}
+
+	/**
+	 * Returns the current pressure.
+	 *
+	 * @return The pressure after the latest collection
+	 */
+	public Pressure getPressure() {
+		return pressure;
+	}
+
+	/**
+	 * Returns the current state of the JVM.
+	 *
+	 * @return The snapshot
+	 */
+	public Snapshot snapshot() {
+		MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+		synchronized (this) {
+			return new Snapshot(heap.getUsed(), heapMax(heap), occupancyAfterGc, allocationRate,
+				collections, totalPauseMillis, longestPauseMillis, pressure);
+		}
+	}
+
+	private Registration add(Entry entry) {
+		// Pressure can stay normal for a whole session, so collected owners are also dropped here
+		caches.removeIf(existing -> !existing.isAlive());
+		caches.add(entry);
+		return () -> caches.remove(entry);
+	}
+
+	// Called on a JMX notification thread, which is left as soon as possible
+	private void onNotification(Notification notification, Set<String> heapPools) {
+		if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+			return;
+		}
+		GarbageCollectionNotificationInfo info =
+			GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+		GcInfo gc = info.getGcInfo();
+
+		long used = 0;
+		for (Map.Entry<String, MemoryUsage> pool : gc.getMemoryUsageAfterGc().entrySet()) {
+			if (heapPools.contains(pool.getKey())) {
+				used += pool.getValue().getUsed();
+			}
+		}
+		double occupancy = (double) used / heapMax(ManagementFactory.getMemoryMXBean().getHeapMemoryUsage());
+		// ZGC and Shenandoah also report their concurrent cycles, which do not pause the application
+		boolean pause = !info.getGcName().endsWith("Cycles");
+
+		synchronized (this) {
+			occupancyAfterGc = occupancy;
+			if (pause) {
+				collections++;
+				totalPauseMillis += gc.getDuration();
+				longestPauseMillis = Math.max(longestPauseMillis, gc.getDuration());
+			}
+		}
+		executor.execute(() -> updatePressure(occupancy));
+	}
+
+	private void updatePressure(double occupancy) {
+		Pressure previous = pressure;
+		Pressure current;
+		if (occupancy >= CRITICAL_OCCUPANCY) {
+			current = Pressure.CRITICAL;
+		} else if (occupancy >= MODERATE_OCCUPANCY) {
+			current = previous == Pressure.CRITICAL && occupancy >= CRITICAL_OCCUPANCY - HYSTERESIS
+				? Pressure.CRITICAL : Pressure.MODERATE;
+		} else if (previous != Pressure.NORMAL && occupancy >= MODERATE_OCCUPANCY - HYSTERESIS) {
+			current = Pressure.MODERATE;
+		} else {
+			current = Pressure.NORMAL;
+		}
+		pressure = current;
+
+		Logger log = logger;
+		if (current != previous && log != null) {
+			if (current == Pressure.NORMAL) {
+				log.info("Memory pressure back to normal, {}% of the heap in use", Math.round(occupancy * 100));
+			} else {
+				log.warning("Memory pressure {}, {}% of the heap in use after GC", current, Math.round(occupancy * 100));
+			}
+		}
+
+		long now = System.nanoTime();
+		if (current != Pressure.NORMAL
+			&& (current.compareTo(previous) > 0 || now - lastShrink >= TimeUnit.SECONDS.toNanos(RESHRINK_SECONDS))) {
+			lastShrink = now;
+			shrinkCaches(current);
+		}
+	}
+
+	private void shrinkCaches(Pressure current) {
+		for (Entry entry : caches) {
+			Object owner = entry.owner != null ? entry.owner.get() : null;
+			if (entry.owner != null && owner == null) {
+				caches.remove(entry);
+				continue;
+			}
+			try {
+				entry.shrink(owner, current);
+			} catch (RuntimeException e) {
+				System.err.println("Failed to shrink " + entry.name + ": " + e.getMessage());
+			}
+		}
+	}
+
+	private void sampleAllocation() {
+		if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads)
+			|| !threads.isThreadAllocatedMemoryEnabled()) {
+			return;
+		}
+		// Includes the allocations of threads that have terminated since the previous sample
+		long allocated = threads.getTotalThreadAllocatedBytes();
+		if (allocated >= 0 && lastAllocated >= 0) {
+			allocationRate = (allocated - lastAllocated) / SAMPLE_SECONDS;
+		}
+		lastAllocated = allocated;
+	}
+
+	private static long heapMax(MemoryUsage heap) {
+		return heap.getMax() > 0 ? heap.getMax() : heap.getCommitted();
+	}
+
+	private static final class Entry {
+
+		final String name;
+		final WeakReference<?> owner;
+		private final BiConsumer<Object, Pressure> shrink;
+
+		@SuppressWarnings("unchecked")
+		Entry(String name, WeakReference<?> owner, BiConsumer<?, Pressure> shrink) {
+			this.name = name;
+			this.owner = owner;
+			this.shrink = (BiConsumer<Object, Pressure>) shrink;
+		}
+
+		boolean isAlive() {
+			return owner == null || owner.get() != null;
+		}
+
+		void shrink(Object owner, Pressure pressure) {
+			shrink.accept(owner, pressure);
+		}
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.prefs;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.prefs.AbstractPreferences;
+import java.util.prefs.BackingStoreException;
+
+/**
+ * A preferences implementation that stores the whole preferences tree in a single binary file,
+ * so opening many nodes costs a single file read instead of one file per node.
+ * <p>
+ * Each node loads its entries lazily from the shared {@link BinaryPreferencesStore} and keeps
+ * them in an immutable map published through a volatile field, replaced by a modified copy on
+ * every put or remove, so {@link #get(String, String)} reads without taking the node lock.
+ * Changes are appended to the store file in the background, {@link #flush()} and {@link #sync()}
+ * write pending changes immediately.
+ *
+ * @author Slobodan Zivanovic
+ */
+public class BinaryPreferences extends AbstractPreferences {
+
+	private final BinaryPreferencesStore store;
+	// Null until loaded from the store, then replaced under lock on every change
+	private volatile Map<String, String> entries;
+	private volatile boolean isRemoved = false;
+
+	/**
+	 * Constructs a new BinaryPreferences node.
+	 *
+	 * @param parent The parent preferences node, or null for the root
+	 * @param name   The name of this preferences node
+	 * @param store  The store holding the tree
+	 */
+	BinaryPreferences(BinaryPreferences parent, String name, BinaryPreferencesStore store) {
+		super(parent, name);
+		this.store = store;
+	}
+
+	/**
+	 * Returns the current entries, loading them from the store on first access.
+	 */
+	private Map<String, String> entries() {
+		Map<String, String> current = entries;
+		if (current == null) {
+			synchronized (lock) {
+				current = entries;
+				if (current == null) {
+					current = Collections.unmodifiableMap(store.load(absolutePath()));
+					entries = current;
+				}
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * Returns the value associated with the key, reading the current entries without locking.
+	 *
+	 * @param key The key whose associated value is to be returned
+	 * @param def The value returned if the key has no associated value
+	 * @return The associated value, or def if there is none
+	 * @throws IllegalStateException If this node has been removed
+	 */
+	@Override
+	public String get(String key, String def) {
+		if (key == null) {
+			throw new NullPointerException("Null key");
+		}
+		if (isRemoved) {
+			throw new IllegalStateException("Node has been removed.");
+		}
+		String value = entries().get(key);
+		return value != null ? value : def;
+	}
+
+	@Override
+	protected void putSpi(String key, String value) {
+		Map<String, String> current = entries();
+		if (value.equals(current.get(key))) {
+			return;
+		}
+		Map<String, String> updated = new HashMap<>(current);
+		updated.put(key, value);
+		entries = Collections.unmodifiableMap(updated);
+		store.put(absolutePath(), key, value);
+	}
+
+	@Override
+	protected String getSpi(String key) {
+		return entries().get(key);
+	}
+
+	@Override
+	protected void removeSpi(String key) {
+		Map<String, String> current = entries();
+		if (!current.containsKey(key)) {
+			return;
+		}
+		Map<String, String> updated = new HashMap<>(current);
+		updated.remove(key);
+		entries = Collections.unmodifiableMap(updated);
+		store.remove(absolutePath(), key);
+	}
+
+	@Override
+	protected void removeNodeSpi() throws BackingStoreException {
+		isRemoved = true;
+		entries = Map.of();
+		store.removeNode(absolutePath());
+	}
+
+	@Override
+	protected String[] keysSpi() throws BackingStoreException {
+		return entries().keySet().toArray(new String[0]);
+	}
+
+	@Override
+	protected String[] childrenNamesSpi() throws BackingStoreException {
+		return store.childrenNames(absolutePath());
+	}
+
+	@Override
+	protected AbstractPreferences childSpi(String name) {
+		return new BinaryPreferences(this, name, store);
+	}
+
+	@Override
+	protected void syncSpi() throws BackingStoreException {
+		if (isRemoved) {
+			return;
+		}
+		if (!store.flush()) {
+			throw new BackingStoreException("Failed to write " + store.getFile());
+		}
+	}
+
+	@Override
+	protected void flushSpi() throws BackingStoreException {
+		syncSpi();
+	}
+}
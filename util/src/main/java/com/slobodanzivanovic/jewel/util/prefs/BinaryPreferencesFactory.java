@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.prefs;
+
+import java.nio.file.Path;
+import java.util.prefs.Preferences;
+import java.util.prefs.PreferencesFactory;
+
+/**
+ * A factory for creating preferences stored in a single binary file, an alternative to
+ * {@link XMLPreferencesFactory} for trees with many nodes. Like the XML factory, it returns
+ * the same root node for both the system and user preferences hierarchies.
+ *
+ * @author Slobodan Zivanovic
+ */
+public class BinaryPreferencesFactory implements PreferencesFactory {
+
+	private static final String PREFERENCES_FILE = "preferences.jprefs";
+
+	private static Preferences rootPreferences;
+
+	@Override
+	public Preferences systemRoot() {
+		return userRoot();
+	}
+
+	@Override
+	public synchronized Preferences userRoot() {
+		if (rootPreferences == null) {
+			BinaryPreferencesStore store = BinaryPreferencesStore.open(
+				Path.of(XMLPreferencesFactory.PREFERENCES_DIR, PREFERENCES_FILE));
+			rootPreferences = new BinaryPreferences(null, "", store);
+		}
+		return rootPreferences;
+	}
+}
@@ -0,0 +1,404 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.prefs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * The single file holding a whole {@link BinaryPreferences} tree.
+ * <p>
+ * The file is a header followed by an append-only log of records. Each record is its payload
+ * length, a CRC32 of the type and payload, the type and the payload, which is the absolute node
+ * path and, depending on the type, a key and a value, each as a length prefixed UTF-8 string.
+ * Reading stops at the first incomplete or corrupt record, so a crash during an append loses at
+ * most the unwritten changes.
+ * <p>
+ * On open the file is memory-mapped and scanned once to build a key index, which maps every node
+ * path and key to the offset of its value in the mapping. Values are only decoded when their node
+ * is first accessed. Changes update the index and are appended by the shared preferences writer
+ * thread {@value #FLUSH_DELAY_MILLIS}ms after the first change, in one write and sync. Once the
+ * log holds more than twice as many records as live keys, it is compacted into a new file with
+ * one record per key, which atomically replaces the old one.
+ *
+ * @author Slobodan Zivanovic
+ */
+final class BinaryPreferencesStore {
+
+	private static final int MAGIC = 0x4A505246; // "JPRF"
+	private static final byte VERSION = 1;
+	private static final int HEADER_LENGTH = 4 + 1;
+	private static final int RECORD_HEADER = 4 + 4 + 1;
+
+	private static final byte TYPE_PUT = 1;
+	private static final byte TYPE_REMOVE = 2;
+	private static final byte TYPE_REMOVE_NODE = 3;
+
+	private static final long FLUSH_DELAY_MILLIS = 500;
+	private static final long MAX_RETRY_DELAY_MILLIS = 30_000;
+	private static final int MIN_COMPACT_RECORDS = 1024;
+	private static final String TEMP_SUFFIX = ".tmp";
+	private static final String CORRUPT_SUFFIX = ".corrupt";
+
+	private final Path file;
+	private final CRC32 crc = new CRC32();
+
+	// Path -> key -> value, either the Integer offset of the encoded value in the mapping or a String
+	private final Map<String, Map<String, Object>> index = new HashMap<>();
+	private MappedByteBuffer mapped;
+	private FileChannel channel;
+	// The length of the valid records, where the next append goes
+	private long validLength;
+	private int recordCount;
+
+	private final List<byte[]> pending = new ArrayList<>();
+	private boolean flushScheduled;
+	// Delay of the next retry after failed flushes, 0 after a successful one
+	private long retryDelayMillis;
+
+	private BinaryPreferencesStore(Path file) {
+		this.file = file;
+	}
+
+	/**
+	 * Opens the store file, creating it on the first write if it does not exist yet. A file
+	 * that is not a preferences store is moved aside and replaced.
+	 */
+	static BinaryPreferencesStore open(Path file) {
+		BinaryPreferencesStore store = new BinaryPreferencesStore(file);
+		try {
+			if (Files.exists(file)) {
+				store.map();
+			}
+		} catch (IOException e) {
+			System.err.println("Failed to read preferences " + file + ": " + e.getMessage());
+			store.moveAside();
+		}
+		Runtime.getRuntime().addShutdownHook(new Thread(store::flush, "jewel-prefs-shutdown"));
+		return store;
+	}
+
+	Path getFile() {
+		return file;
+	}
+
+	/**
+	 * Decodes the entries of a node.
+	 */
+	synchronized Map<String, String> load(String path) {
+		Map<String, Object> values = index.get(path);
+		Map<String, String> entries = new HashMap<>();
+		if (values != null) {
+			values.forEach((key, value) -> entries.put(key, decode(value)));
+		}
+		return entries;
+	}
+
+	/**
+	 * Returns the names of the children of a node that have entries or descendants with entries.
+	 */
+	synchronized String[] childrenNames(String path) {
+		String prefix = path.endsWith("/") ? path : path + "/";
+		Set<String> names = new LinkedHashSet<>();
+		for (String candidate : index.keySet()) {
+			if (candidate.length() > prefix.length() && candidate.startsWith(prefix)) {
+				int end = candidate.indexOf('/', prefix.length());
+				names.add(candidate.substring(prefix.length(), end < 0 ? candidate.length() : end));
+			}
+		}
+		return names.toArray(new String[0]);
+	}
+
+	synchronized void put(String path, String key, String value) {
+		index.computeIfAbsent(path, p -> new HashMap<>()).put(key, value);
+		append(TYPE_PUT, path, key, value);
+	}
+
+	synchronized void remove(String path, String key) {
+		Map<String, Object> values = index.get(path);
+		if (values != null && values.remove(key) != null) {
+			if (values.isEmpty()) {
+				index.remove(path);
+			}
+			append(TYPE_REMOVE, path, key, null);
+		}
+	}
+
+	synchronized void removeNode(String path) {
+		if (index.remove(path) != null) {
+			append(TYPE_REMOVE_NODE, path, null, null);
+		}
+	}
+
+	/**
+	 * Appends the pending records and syncs the file, then compacts it if it has grown
+	 * too large. A failed write is retried with a delay doubling up to {@value #MAX_RETRY_DELAY_MILLIS}ms.
+	 *
+	 * @return false if the records could not be written
+	 */
+	synchronized boolean flush() {
+		flushScheduled = false;
+		if (pending.isEmpty()) {
+			return true;
+		}
+
+		try {
+			if (channel == null) {
+				openChannel();
+			}
+			// Overwrite whatever a failed earlier attempt left behind
+			channel.position(validLength);
+			long length = validLength;
+			for (byte[] record : pending) {
+				ByteBuffer buffer = ByteBuffer.wrap(record);
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+				length += record.length;
+			}
+			channel.force(false);
+			validLength = length;
+			recordCount += pending.size();
+			pending.clear();
+		} catch (IOException e) {
+			System.err.println("Failed to write preferences " + file + ": " + e.getMessage());
+			retryDelayMillis = Math.min(Math.max(FLUSH_DELAY_MILLIS, retryDelayMillis * 2), MAX_RETRY_DELAY_MILLIS);
+			if (!flushScheduled) {
+				flushScheduled = true;
+				XMLPreferences.WRITER.schedule(this::flush, retryDelayMillis, TimeUnit.MILLISECONDS);
+			}
+			return false;
+		}
+		retryDelayMillis = 0;
+
+		if (recordCount >= MIN_COMPACT_RECORDS && recordCount > 2 * liveCount()) {
+			compact();
+		}
+		return true;
+	}
+
+	private void append(byte type, String path, String key, String value) {
+		pending.add(encodeRecord(type, path, key, value));
+		if (!flushScheduled) {
+			flushScheduled = true;
+			XMLPreferences.WRITER.schedule(this::flush, FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private int liveCount() {
+		int count = 0;
+		for (Map<String, Object> values : index.values()) {
+			count += values.size();
+		}
+		return count;
+	}
+
+	/**
+	 * Writes one record per live key to a new file, which then replaces the log.
+	 * If the file cannot be replaced, for example while another process maps it,
+	 * the log is kept and compaction is retried after a later flush.
+	 */
+	private void compact() {
+		Path temp = file.resolveSibling(file.getFileName() + TEMP_SUFFIX);
+		try {
+			try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+				writeFully(out, header());
+				for (Map.Entry<String, Map<String, Object>> node : index.entrySet()) {
+					for (Map.Entry<String, Object> entry : node.getValue().entrySet()) {
+						writeFully(out, ByteBuffer.wrap(encodeRecord(TYPE_PUT, node.getKey(), entry.getKey(),
+							decode(entry.getValue()))));
+					}
+				}
+				out.force(false);
+			}
+
+			closeChannel();
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			index.clear();
+			map();
+		} catch (IOException e) {
+			System.err.println("Failed to compact preferences " + file + ": " + e.getMessage());
+			try {
+				Files.deleteIfExists(temp);
+			} catch (IOException ignored) {
+			}
+		}
+	}
+
+	/**
+	 * Maps the file and rebuilds the index from its records.
+	 */
+	private void map() throws IOException {
+		try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+			mapped = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+		}
+		if (mapped.limit() < HEADER_LENGTH || mapped.getInt(0) != MAGIC || mapped.get(4) != VERSION) {
+			throw new IOException("Not a preferences store");
+		}
+
+		int position = HEADER_LENGTH;
+		int limit = mapped.limit();
+		recordCount = 0;
+		while (position + RECORD_HEADER <= limit) {
+			int length = mapped.getInt(position);
+			int end = position + RECORD_HEADER + length;
+			if (length < 0 || end > limit || end < 0) {
+				break;
+			}
+			crc.reset();
+			crc.update(mapped.slice(position + 8, length + 1));
+			if ((int) crc.getValue() != mapped.getInt(position + 4)) {
+				break;
+			}
+
+			replay(mapped.get(position + 8), position + RECORD_HEADER);
+			recordCount++;
+			position = end;
+		}
+		validLength = position;
+	}
+
+	private void replay(byte type, int offset) {
+		String path = decodeString(offset);
+		offset += 4 + mapped.getInt(offset);
+		switch (type) {
+			case TYPE_PUT -> {
+				String key = decodeString(offset);
+				int valueOffset = offset + 4 + mapped.getInt(offset);
+				index.computeIfAbsent(path, p -> new HashMap<>()).put(key, valueOffset);
+			}
+			case TYPE_REMOVE -> {
+				Map<String, Object> values = index.get(path);
+				if (values != null) {
+					values.remove(decodeString(offset));
+					if (values.isEmpty()) {
+						index.remove(path);
+					}
+				}
+			}
+			case TYPE_REMOVE_NODE -> index.remove(path);
+			default -> {
+			}
+		}
+	}
+
+	private void openChannel() throws IOException {
+		Path dir = file.getParent();
+		if (dir != null) {
+			Files.createDirectories(dir);
+		}
+		channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+		if (validLength < HEADER_LENGTH) {
+			channel.truncate(0);
+			writeFully(channel, header());
+			validLength = HEADER_LENGTH;
+		} else if (channel.size() > validLength) {
+			try {
+				// Drop a torn record left by a crash
+				channel.truncate(validLength);
+			} catch (IOException e) {
+				// Still mapped on some platforms, the tail is overwritten instead
+			}
+		}
+	}
+
+	private void closeChannel() {
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				System.err.println("Failed to close preferences " + file + ": " + e.getMessage());
+			}
+			channel = null;
+		}
+	}
+
+	private void moveAside() {
+		mapped = null;
+		index.clear();
+		validLength = 0;
+		try {
+			Files.move(file, file.resolveSibling(file.getFileName() + CORRUPT_SUFFIX),
+				StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			System.err.println("Failed to move aside preferences " + file + ": " + e.getMessage());
+		}
+	}
+
+	private static ByteBuffer header() {
+		return ByteBuffer.allocate(HEADER_LENGTH).putInt(MAGIC).put(VERSION).flip();
+	}
+
+	private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			out.write(buffer);
+		}
+	}
+
+	private byte[] encodeRecord(byte type, String path, String key, String value) {
+		byte[] pathBytes = path.getBytes(StandardCharsets.UTF_8);
+		byte[] keyBytes = key != null ? key.getBytes(StandardCharsets.UTF_8) : null;
+		byte[] valueBytes = value != null ? value.getBytes(StandardCharsets.UTF_8) : null;
+		int length = 4 + pathBytes.length;
+		if (keyBytes != null) {
+			length += 4 + keyBytes.length;
+		}
+		if (valueBytes != null) {
+			length += 4 + valueBytes.length;
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER + length);
+		buffer.putInt(length).putInt(0).put(type);
+		buffer.putInt(pathBytes.length).put(pathBytes);
+		if (keyBytes != null) {
+			buffer.putInt(keyBytes.length).put(keyBytes);
+		}
+		if (valueBytes != null) {
+			buffer.putInt(valueBytes.length).put(valueBytes);
+		}
+		crc.reset();
+		crc.update(buffer.array(), 8, length + 1);
+		buffer.putInt(4, (int) crc.getValue());
+		return buffer.array();
+	}
+
+	private String decode(Object value) {
+		return value instanceof Integer offset ? decodeString(offset) : (String) value;
+	}
+
+	private String decodeString(int offset) {
+		byte[] bytes = new byte[mapped.getInt(offset)];
+		mapped.get(offset + 4, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -16,25 +16,29 @@
 
 package com.slobodanzivanovic.jewel.util.prefs;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.prefs.AbstractPreferences;
 import java.util.prefs.BackingStoreException;
 
@@ -43,15 +47,66 @@ import java.util.prefs.BackingStoreException;
  * This class extends AbstractPreferences to provide persistent storage of
  * preferences data in XML files, with each preferences node stored in a separate
  * XML file within a designated preferences directory.
+ * <p>
+ * Changes are written behind: a put or remove only updates the in-memory map and marks the node
+ * dirty, and a background thread writes the file once, {@value #WRITE_DELAY_MILLIS}ms after the
+ * first change, so a burst of changes costs a single write and never blocks the caller on disk I/O.
+ * The file is written to a temporary file first and then atomically moved into place, so a crash
+ * never leaves a truncated file. A failed write is retried with a delay doubling up to
+ * {@value #MAX_RETRY_DELAY_MILLIS}ms. {@link #flush()}, {@link #sync()} and JVM shutdown write pending
+ * changes immediately.
+ * <p>
+ * Files are read and written with StAX streams from factories created once, so loading a node
+ * neither builds a DOM tree nor initialises the XSLT stack.
+ * <p>
+ * A node reads its file lazily, on the first access of its entries, so creating the nodes of a
+ * path costs nothing. The entries are an immutable map published through a volatile field and
+ * replaced by a modified copy on every put or remove, so {@link #get(String, String)} and the
+ * typed getters built on it read without taking the node lock.
  *
  * @author Slobodan Zivanovic
  */
 public class XMLPreferences extends AbstractPreferences {
 
-	private Map<String, String> root;
-	private Map<String, XMLPreferences> children;
-	private boolean isRemoved = false;
-	private File preferencesFile;
+	private static final long WRITE_DELAY_MILLIS = 500;
+	private static final long MAX_RETRY_DELAY_MILLIS = 30_000;
+
+	// Shared with BinaryPreferencesStore
+	static final ScheduledExecutorService WRITER = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "jewel-prefs-writer");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private static final String ENCODING = "UTF-8";
+	private static final String ROOT_ELEMENT = "preferences";
+	private static final String ENTRY_ELEMENT = "entry";
+	private static final String KEY_ATTRIBUTE = "key";
+
+	// The factories are thread safe once configured, creating them is the expensive part
+	private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+	private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+	private static final Set<XMLPreferences> DIRTY_NODES = ConcurrentHashMap.newKeySet();
+
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> DIRTY_NODES.forEach(XMLPreferences::writeIfDirty),
+			"jewel-prefs-shutdown"));
+	}
+
+	// Null until the file is loaded, then replaced under lock on every change
+	private volatile Map<String, String> entries;
+	private final Map<String, XMLPreferences> children = new ConcurrentHashMap<>();
+	private volatile boolean isRemoved = false;
+	private final File preferencesFile;
+
+	// Incremented under lock after every change of entries; the node is dirty while it differs from writtenCount
+	private volatile long modCount;
+	// Guards the file, taken after lock when both are needed
+	private final Object fileLock = new Object();
+	private long writtenCount;
+	// Delay of the next retry after failed writes, 0 after a successful one, guarded by fileLock
+	private long retryDelayMillis;
+	private final AtomicBoolean writeScheduled = new AtomicBoolean();
 
 	/**
 	 * Constructs a new XMLPreferences node.
@@ -62,125 +117,233 @@ public class XMLPreferences extends AbstractPreferences {
 	public XMLPreferences(XMLPreferences parent, String name) {
 		super(parent, name);
 
-		root = new HashMap<>();
-		children = new HashMap<>();
+		preferencesFile = new File(XMLPreferencesFactory.PREFERENCES_DIR, name + ".xml");
+	}
 
-		try {
-			File dir = new File(XMLPreferencesFactory.PREFERENCES_DIR);
-			if (!dir.exists()) {
-				dir.mkdirs();
-			}
+	private static XMLInputFactory createInputFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+		return factory;
+	}
 
-			preferencesFile = new File(dir, name + ".xml");
-			if (preferencesFile.exists()) {
-				loadPreferences();
+	/**
+	 * Returns the current entries, loading them from the file on first access.
+	 */
+	private Map<String, String> entries() {
+		Map<String, String> current = entries;
+		if (current == null) {
+			synchronized (lock) {
+				current = entries;
+				if (current == null) {
+					Map<String, String> loaded = new HashMap<>();
+					if (preferencesFile.exists()) {
+						try {
+							loadPreferences(loaded);
+						} catch (IOException e) {
+							e.printStackTrace();
+						}
+					}
+					current = Collections.unmodifiableMap(loaded);
+					entries = current;
+				}
 			}
-		} catch (Exception e) {
-			e.printStackTrace();
 		}
+		return current;
 	}
 
 	/**
 	 * Loads preferences from the XML file associated with this node.
-	 * The file is parsed and its contents are stored in the root map.
+	 * The file is streamed and each entry is stored in the given map as it is read.
 	 *
+	 * @param preferences The map receiving the entries
 	 * @throws IOException If there an error reading or parsing the XML file
 	 */
-	private void loadPreferences() throws IOException {
-		try {
-			DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-			DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-			Document doc = dBuilder.parse(preferencesFile);
-			doc.getDocumentElement().normalize();
-
-			NodeList entries = doc.getElementsByTagName("entry");
-			for (int i = 0; i < entries.getLength(); i++) {
-				Node node = entries.item(i);
-				if (node.getNodeType() == Node.ELEMENT_NODE) {
-					Element element = (Element) node;
-					String key = element.getAttribute("key");
-					String value = element.getTextContent();
-					root.put(key, value);
+	private void loadPreferences(Map<String, String> preferences) throws IOException {
+		try (InputStream in = new BufferedInputStream(Files.newInputStream(preferencesFile.toPath()))) {
+			XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(in);
+			try {
+				while (reader.hasNext()) {
+					if (reader.next() == XMLStreamConstants.START_ELEMENT
+						&& ENTRY_ELEMENT.equals(reader.getLocalName())) {
+						String key = reader.getAttributeValue(null, KEY_ATTRIBUTE);
+						String value = reader.getElementText();
+						preferences.put(key != null ? key : "", value);
+					}
 				}
+			} finally {
+				reader.close();
 			}
-		} catch (ParserConfigurationException | SAXException e) {
+		} catch (XMLStreamException e) {
 			throw new IOException("Error loading preferences", e);
 		}
 	}
 
 	/**
-	 * Saves the current preferences to the XML file.
-	 * Creates a new XML document containing all preferences in the root map
-	 * and writes it to the file with proper formatting.
+	 * Marks the node dirty and schedules a background write unless one is pending.
+	 * Called while holding lock.
+	 */
+	private void changed() {
+		modCount++;
+		DIRTY_NODES.add(this);
+		if (writeScheduled.compareAndSet(false, true)) {
+			WRITER.schedule(this::writeIfDirty, WRITE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Writes the preferences if they changed since the last write. The immutable entries are
+	 * written under fileLock only, so a slow write never blocks readers or writers of the node.
+	 * A snapshot older than the one already written is skipped. A failed write schedules a retry.
 	 *
-	 * @throws IOException If there an error creating or writing the XML file
+	 * @return false if the write failed
 	 */
-	private void savePreferences() throws IOException {
-		try {
-			DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-			DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-			Document doc = dBuilder.newDocument();
-
-			Element rootElement = doc.createElement("preferences");
-			doc.appendChild(rootElement);
-
-			for (Map.Entry<String, String> entry : root.entrySet()) {
-				Element entryElement = doc.createElement("entry");
-				entryElement.setAttribute("key", entry.getKey());
-				entryElement.setTextContent(entry.getValue());
-				rootElement.appendChild(entryElement);
+	private boolean writeIfDirty() {
+		writeScheduled.set(false);
+		// Read the version before the entries: the entries are replaced before the version is
+		// incremented, so the snapshot is at least as new as the version it is recorded under
+		long version = modCount;
+		Map<String, String> snapshot = entries;
+		if (isRemoved || snapshot == null) {
+			DIRTY_NODES.remove(this);
+			return true;
+		}
+
+		synchronized (fileLock) {
+			if (version <= writtenCount || isRemoved) {
+				return true;
+			}
+			try {
+				savePreferences(snapshot);
+				writtenCount = version;
+				retryDelayMillis = 0;
+			} catch (IOException e) {
+				e.printStackTrace();
+				scheduleRetry();
+				return false;
 			}
+		}
+		if (version == modCount) {
+			DIRTY_NODES.remove(this);
+		}
+		return true;
+	}
 
-			TransformerFactory transformerFactory = TransformerFactory.newInstance();
-			Transformer transformer = transformerFactory.newTransformer();
-			transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-			transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
+	/**
+	 * Schedules another write after a failed one, unless a write is already pending, waiting twice
+	 * as long as before each time. Called while holding fileLock.
+	 */
+	private void scheduleRetry() {
+		retryDelayMillis = Math.min(Math.max(WRITE_DELAY_MILLIS, retryDelayMillis * 2), MAX_RETRY_DELAY_MILLIS);
+		if (writeScheduled.compareAndSet(false, true)) {
+			WRITER.schedule(this::writeIfDirty, retryDelayMillis, TimeUnit.MILLISECONDS);
+		}
+	}
 
-			DOMSource source = new DOMSource(doc);
-			StreamResult result = new StreamResult(preferencesFile);
-			transformer.transform(source, result);
+	/**
+	 * Saves the given preferences to the XML file.
+	 * Streams one entry element per preference, indented, to a temporary file,
+	 * which then replaces the XML file.
+	 *
+	 * @param preferences The preferences to save
+	 * @throws IOException If there an error creating or writing the XML file
+	 */
+	private void savePreferences(Map<String, String> preferences) throws IOException {
+		File dir = preferencesFile.getParentFile();
+		if (!dir.exists()) {
+			dir.mkdirs();
+		}
 
-		} catch (ParserConfigurationException | TransformerException e) {
+		File tempFile = new File(preferencesFile.getPath() + ".tmp");
+		try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tempFile.toPath()))) {
+			XMLStreamWriter writer = OUTPUT_FACTORY.createXMLStreamWriter(out, ENCODING);
+			try {
+				writer.writeStartDocument(ENCODING, "1.0");
+				writer.writeCharacters("\n");
+				writer.writeStartElement(ROOT_ELEMENT);
+				for (Map.Entry<String, String> entry : preferences.entrySet()) {
+					writer.writeCharacters("\n  ");
+					writer.writeStartElement(ENTRY_ELEMENT);
+					writer.writeAttribute(KEY_ATTRIBUTE, entry.getKey());
+					writer.writeCharacters(entry.getValue());
+					writer.writeEndElement();
+				}
+				writer.writeCharacters("\n");
+				writer.writeEndElement();
+				writer.writeCharacters("\n");
+				writer.writeEndDocument();
+			} finally {
+				writer.close();
+			}
+		} catch (XMLStreamException e) {
 			throw new IOException("Error saving preferences", e);
 		}
+		Files.move(tempFile.toPath(), preferencesFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+			StandardCopyOption.ATOMIC_MOVE);
 	}
 
+	/**
+	 * Returns the value associated with the key, reading the current entries without locking.
+	 *
+	 * @param key The key whose associated value is to be returned
+	 * @param def The value returned if the key has no associated value
+	 * @return The associated value, or def if there is none
+	 * @throws IllegalStateException If this node has been removed
+	 */
 	@Override
-	protected void putSpi(String key, String value) {
-		root.put(key, value);
+	public String get(String key, String def) {
+		if (key == null) {
+			throw new NullPointerException("Null key");
+		}
+		if (isRemoved) {
+			throw new IllegalStateException("Node has been removed.");
+		}
+		String value = entries().get(key);
+		return value != null ? value : def;
+	}
 
-		try {
-			savePreferences();
-		} catch (IOException e) {
-			e.printStackTrace();
+	@Override
+	protected void putSpi(String key, String value) {
+		Map<String, String> current = entries();
+		if (value.equals(current.get(key))) {
+			return;
 		}
+		Map<String, String> updated = new HashMap<>(current);
+		updated.put(key, value);
+		entries = Collections.unmodifiableMap(updated);
+		changed();
 	}
 
 	@Override
 	protected String getSpi(String key) {
-		return root.get(key);
+		return entries().get(key);
 	}
 
 	@Override
 	protected void removeSpi(String key) {
-		root.remove(key);
-
-		try {
-			savePreferences();
-		} catch (IOException e) {
-			e.printStackTrace();
+		Map<String, String> current = entries();
+		if (!current.containsKey(key)) {
+			return;
 		}
+		Map<String, String> updated = new HashMap<>(current);
+		updated.remove(key);
+		entries = Collections.unmodifiableMap(updated);
+		changed();
 	}
 
 	@Override
 	protected void removeNodeSpi() throws BackingStoreException {
 		isRemoved = true;
-		preferencesFile.delete();
+		DIRTY_NODES.remove(this);
+		synchronized (fileLock) {
+			preferencesFile.delete();
+		}
 	}
 
 	@Override
 	protected String[] keysSpi() throws BackingStoreException {
-		return root.keySet().toArray(new String[0]);
+		return entries().keySet().toArray(new String[0]);
 	}
 
 	@Override
@@ -203,10 +366,8 @@ public class XMLPreferences extends AbstractPreferences {
 		if (isRemoved) {
 			return;
 		}
-		try {
-			savePreferences();
-		} catch (IOException e) {
-			throw new BackingStoreException(e);
+		if (!writeIfDirty()) {
+			throw new BackingStoreException("Failed to write " + preferencesFile);
 		}
 	}
 
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.task;
+
+/**
+ * Hands out the cancellation tokens of one document and cancels them when they are superseded.
+ * <p>
+ * Only the latest token of a scope is live: requesting a new token cancels the previous one, and
+ * a change of the document version cancels the token created for the older version. A document
+ * therefore never has more than one task of a scope producing results for it.
+ *
+ * @author Slobodan Zivanovic
+ */
+public final class CancellationScope {
+
+	private long version;
+	private CancellationToken current;
+
+	/**
+	 * Creates a scope for a document at version 0.
+	 */
+	public CancellationScope() {
+	}
+
+	/**
+	 * Cancels the current token and returns a new one for the current document version.
+	 *
+	 * @return The new token
+	 */
+	public synchronized CancellationToken next() {
+		cancel();
+		current = new CancellationToken(version);
+		return current;
+	}
+
+	/**
+	 * Records the current document version, cancelling the current token if it was created
+	 * for another version.
+	 *
+	 * @param version The document version
+	 */
+	public synchronized void setVersion(long version) {
+		this.version = version;
+		if (current != null && current.getVersion() != version) {
+			cancel();
+		}
+	}
+
+	/**
+	 * Returns the current document version.
+	 *
+	 * @return The version
+	 */
+	public synchronized long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Cancels the current token.
+	 */
+	public synchronized void cancel() {
+		if (current != null) {
+			current.cancel();
+			current = null;
+		}
+	}
+}
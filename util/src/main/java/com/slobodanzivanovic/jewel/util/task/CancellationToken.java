@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.task;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Tells a task whether its result is still wanted. Tasks check it between units of work and stop
+ * early once it is cancelled, and results published for a cancelled token are never delivered.
+ * <p>
+ * Tokens of a document come from its {@link CancellationScope} and carry the document version
+ * the task works on.
+ *
+ * @author Slobodan Zivanovic
+ */
+public final class CancellationToken {
+
+	/**
+	 * A token that is never cancelled, for tasks that always run to completion.
+	 */
+	public static final CancellationToken NONE = new CancellationToken(0);
+
+	private final long version;
+	private volatile boolean cancelled;
+
+	/**
+	 * Creates a token for work on a version of a document.
+	 *
+	 * @param version The document version
+	 */
+	public CancellationToken(long version) {
+		this.version = version;
+	}
+
+	/**
+	 * Returns the document version the token was created for.
+	 *
+	 * @return The version
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Checks whether the result of the task is no longer wanted.
+	 *
+	 * @return true if the token was cancelled
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Stops the current task if the token was cancelled.
+	 *
+	 * @throws CancellationException if the token was cancelled
+	 */
+	public void throwIfCancelled() {
+		if (cancelled) {
+			throw new CancellationException();
+		}
+	}
+
+	/**
+	 * Cancels the token. Does nothing for {@link #NONE}.
+	 */
+	public void cancel() {
+		if (this != NONE) {
+			cancelled = true;
+		}
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.task;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs tasks in a {@link TaskLane} of the {@link TaskScheduler} one at a time, in the order they
+ * were submitted. Only the task at the head of the queue is handed to the scheduler, so a serial
+ * queue occupies at most one slot of its lane.
+ *
+ * @author Slobodan Zivanovic
+ */
+public final class SerialTaskQueue implements Executor {
+
+	private final TaskScheduler scheduler;
+	private final TaskLane lane;
+	private final Queue<Runnable> tasks = new ArrayDeque<>();
+	private boolean active;
+
+	SerialTaskQueue(TaskScheduler scheduler, TaskLane lane) {
+		this.scheduler = scheduler;
+		this.lane = lane;
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		synchronized (tasks) {
+			tasks.add(task);
+			if (!active) {
+				active = true;
+				scheduler.submit(lane, this::drain);
+			}
+		}
+	}
+
+	/**
+	 * Queues a task after a delay.
+	 *
+	 * @param task  The task
+	 * @param delay The delay
+	 * @param unit  The unit of the delay
+	 * @return Cancelling the future before the delay has passed keeps the task from being queued
+	 */
+	public ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+		return scheduler.scheduleOnTimer(() -> execute(task), delay, unit);
+	}
+
+	/**
+	 * Queues a task periodically until the returned future is cancelled. A run is skipped
+	 * while the previous one is still queued or running.
+	 *
+	 * @param task   The task
+	 * @param period The time between runs
+	 * @param unit   The unit of the period
+	 * @return The future cancelling the periodic runs
+	 */
+	public ScheduledFuture<?> schedulePeriodic(Runnable task, long period, TimeUnit unit) {
+		AtomicBoolean pending = new AtomicBoolean();
+		return scheduler.scheduleOnTimer(() -> {
+			if (pending.compareAndSet(false, true)) {
+				execute(() -> {
+					try {
+						task.run();
+					} finally {
+						pending.set(false);
+					}
+				});
+			}
+		}, period, period, unit);
+	}
+
+	private void drain() {
+		while (true) {
+			Runnable task;
+			synchronized (tasks) {
+				task = tasks.poll();
+				if (task == null) {
+					active = false;
+					return;
+				}
+			}
+			try {
+				task.run();
+			} catch (RuntimeException e) {
+				System.err.println("Failed to run " + lane + " task: " + e.getMessage());
+			}
+		}
+	}
+}
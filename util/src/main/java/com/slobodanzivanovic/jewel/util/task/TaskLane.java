@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.task;
+
+/**
+ * The priority lanes of the {@link TaskScheduler}, highest priority first.
+ * <p>
+ * Each lane runs at most a bounded number of tasks at once, and the lanes below {@link #INTERACTIVE}
+ * together run at most one task per available processor. When a slot frees up, the queued task of
+ * the highest priority lane with room starts first, so background work never delays what the user
+ * is waiting for.
+ *
+ * @author Slobodan Zivanovic
+ */
+public enum TaskLane {
+	/**
+	 * Work the user is waiting for right now, such as filtering or a search they started.
+	 */
+	INTERACTIVE(1.0),
+	/**
+	 * Work on the visible part of a document, such as highlighting what is on screen.
+	 */
+	VISIBLE_RANGE(1.0),
+	/**
+	 * Everything else: the rest of a document, indexing, saving and housekeeping.
+	 */
+	BACKGROUND(0.25);
+
+	private final int maxConcurrency;
+
+	TaskLane(double share) {
+		this.maxConcurrency = Math.max(1, (int) (Runtime.getRuntime().availableProcessors() * share));
+	}
+
+	/**
+	 * Returns how many tasks of this lane may run at once.
+	 *
+	 * @return The concurrency bound
+	 */
+	public int getMaxConcurrency() {
+		return maxConcurrency;
+	}
+}
@@ -0,0 +1,341 @@
+/*
+ * Copyright (C) 2024 Slobodan Zivanovic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.slobodanzivanovic.jewel.util.task;
+
+import java.awt.*;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * The shared scheduler of the application's background work.
+ * <p>
+ * Tasks are queued in a {@link TaskLane} and run on virtual threads, within the concurrency bounds
+ * of their lane, and the highest priority lane with room starts first. The lanes below
+ * {@link TaskLane#INTERACTIVE} also share one slot per processor, so they never take the slots
+ * interactive work needs.
+ * Every task carries a {@link CancellationToken}: a task cancelled while queued never starts, and a
+ * running task is expected to check its token and stop early. Delays and periodic work wait on a
+ * single timer thread, which only queues the tasks.
+ * <p>
+ * Results for the EDT are collected and delivered together in one event, so a burst of finished
+ * tasks costs the EDT a single pass. A result is delivered only if its token is still live when it
+ * reaches the EDT. Nothing touches AWT until the first result is published.
+ * <p>
+ * {@link #getMetrics(TaskLane)} reports the queue length, the number of tasks by outcome, and how
+ * long tasks waited in the queue and ran.
+ *
+ * @author Slobodan Zivanovic
+ */
+public final class TaskScheduler {
+
+	private static final TaskScheduler INSTANCE = new TaskScheduler();
+
+	/**
+	 * A unit of background work.
+	 *
+	 * @param <T> The type of the result
+	 */
+	@FunctionalInterface
+	public interface Job<T> {
+		/**
+		 * Runs the work off the EDT.
+		 *
+		 * @param token The token to check between units of work
+		 * @return The result, or null if there is nothing to deliver
+		 * @throws Exception if the work failed
+		 */
+		T run(CancellationToken token) throws Exception;
+	}
+
+	/**
+	 * The counters of one lane.
+	 *
+	 * @param queued           The tasks waiting to start
+	 * @param running          The tasks running
+	 * @param completed        The tasks that finished
+	 * @param cancelled        The tasks cancelled before or while running
+	 * @param failed           The tasks that threw an exception
+	 * @param averageWaitNanos The average time tasks waited in the queue
+	 * @param maxWaitNanos     The longest time a task waited in the queue
+	 * @param averageRunNanos  The average time tasks ran
+	 */
+	public record LaneMetrics(int queued, int running, long completed, long cancelled, long failed,
+		long averageWaitNanos, long maxWaitNanos, long averageRunNanos) {
+	}
+
+	private final int maxConcurrency = Runtime.getRuntime().availableProcessors();
+	private final Lane[] lanes = new Lane[TaskLane.values().length];
+	private final ThreadFactory threads = Thread.ofVirtual().name("jewel-task-", 0).factory();
+	private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "jewel-task-timer");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private final Queue<Delivery> deliveries = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean deliveryPosted = new AtomicBoolean();
+
+	// The tasks running in the lanes sharing the processors, guarded by lanes
+	private int running;
+
+	private TaskScheduler() {
+		for (TaskLane lane : TaskLane.values()) {
+			lanes[lane.ordinal()] = new Lane(lane.getMaxConcurrency(), lane != TaskLane.INTERACTIVE);
+		}
+	}
+
+	/**
+	 * Get the singleton instance of TaskScheduler
+	 *
+	 * @return The TaskScheduler instance
+	 */
+	public static TaskScheduler getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Queues a job and delivers its result to a consumer on the EDT.
+	 *
+	 * @param lane  The lane
+	 * @param token The token cancelling the job
+	 * @param job   The job
+	 * @param onEdt Receives a non-null result on the EDT unless the token was cancelled, or null
+	 * @return Completes with the result, or is cancelled with the token
+	 */
+	public <T> CompletableFuture<T> submit(TaskLane lane, CancellationToken token, Job<T> job, Consumer<? super T> onEdt) {
+		Task<T> task = new Task<>(lane, token, job, onEdt);
+		Lane queue = lanes[lane.ordinal()];
+		synchronized (lanes) {
+			task.queuedAt = System.nanoTime();
+			queue.tasks.add(task);
+			dispatch();
+		}
+		return task.future;
+	}
+
+	/**
+	 * Queues a job without a result.
+	 *
+	 * @param lane The lane
+	 * @param task The job
+	 * @return Completes when the job has run
+	 */
+	public CompletableFuture<Void> submit(TaskLane lane, Runnable task) {
+		return submit(lane, CancellationToken.NONE, token -> {
+			task.run();
+			return null;
+		}, null);
+	}
+
+	/**
+	 * Queues a job after a delay.
+	 *
+	 * @param lane  The lane
+	 * @param task  The job
+	 * @param delay The delay
+	 * @param unit  The unit of the delay
+	 * @return Cancelling the future before the delay has passed keeps the job from being queued
+	 */
+	public ScheduledFuture<?> schedule(TaskLane lane, Runnable task, long delay, TimeUnit unit) {
+		return scheduleOnTimer(() -> submit(lane, task), delay, unit);
+	}
+
+	/**
+	 * Returns an executor that runs its tasks in a lane one at a time, in the order they were
+	 * submitted, for work that must not overlap such as writing one file.
+	 *
+	 * @param lane The lane
+	 * @return A new serial queue
+	 */
+	public SerialTaskQueue serialQueue(TaskLane lane) {
+		return new SerialTaskQueue(this, lane);
+	}
+
+	/**
+	 * Delivers a result to the EDT with the next batch, unless the token is cancelled by then.
+	 * Jobs use it to publish partial results before they finish.
+	 *
+	 * @param token  The token of the job
+	 * @param result Applies the result on the EDT
+	 */
+	public void publish(CancellationToken token, Runnable result) {
+		if (token.isCancelled()) {
+			return;
+		}
+		deliveries.add(new Delivery(token, result));
+		if (deliveryPosted.compareAndSet(false, true)) {
+			EventQueue.invokeLater(this::deliver);
+		}
+	}
+
+	/**
+	 * Returns the counters of a lane.
+	 *
+	 * @param lane The lane
+	 * @return The metrics
+	 */
+	public LaneMetrics getMetrics(TaskLane lane) {
+		synchronized (lanes) {
+			Lane l = lanes[lane.ordinal()];
+			long started = l.completed + l.failed + l.cancelledRunning;
+			long dequeued = started + l.cancelledQueued;
+			return new LaneMetrics(l.tasks.size(), l.running, l.completed, l.cancelledQueued + l.cancelledRunning,
+				l.failed, dequeued == 0 ? 0 : l.waitNanos / dequeued, l.maxWaitNanos,
+				started == 0 ? 0 : l.runNanos / started);
+		}
+	}
+
+	ScheduledFuture<?> scheduleOnTimer(Runnable action, long initialDelay, long delay, TimeUnit unit) {
+		return timer.scheduleWithFixedDelay(action, initialDelay, delay, unit);
+	}
+
+	ScheduledFuture<?> scheduleOnTimer(Runnable action, long delay, TimeUnit unit) {
+		return timer.schedule(action, delay, unit);
+	}
+
+	// Called holding the lanes lock
+	private void dispatch() {
+		for (Lane lane : lanes) {
+			while ((!lane.shared || running < maxConcurrency) && lane.running < lane.maxConcurrency
+				&& !lane.tasks.isEmpty()) {
+				Task<?> task = lane.tasks.poll();
+				long waited = System.nanoTime() - task.queuedAt;
+				lane.waitNanos += waited;
+				lane.maxWaitNanos = Math.max(lane.maxWaitNanos, waited);
+				if (task.token.isCancelled()) {
+					lane.cancelledQueued++;
+					task.future.cancel(false);
+					continue;
+				}
+				lane.running++;
+				if (lane.shared) {
+					running++;
+				}
+				threads.newThread(task).start();
+			}
+		}
+	}
+
+	private void finished(TaskLane taskLane, long runNanos, Outcome outcome) {
+		synchronized (lanes) {
+			Lane lane = lanes[taskLane.ordinal()];
+			lane.running--;
+			if (lane.shared) {
+				running--;
+			}
+			lane.runNanos += runNanos;
+			switch (outcome) {
+				case COMPLETED -> lane.completed++;
+				case CANCELLED -> lane.cancelledRunning++;
+				case FAILED -> lane.failed++;
+			}
+			dispatch();
+		}
+	}
+
+	private void deliver() {
+		deliveryPosted.set(false);
+		Delivery delivery;
+		while ((delivery = deliveries.poll()) != null) {
+			if (delivery.token.isCancelled()) {
+				continue;
+			}
+			try {
+				delivery.result.run();
+			} catch (RuntimeException e) {
+				System.err.println("Failed to deliver task result: " + e.getMessage());
+			}
+		}
+	}
+
+	private enum Outcome {
+		COMPLETED, CANCELLED, FAILED
+	}
+
+	private record Delivery(CancellationToken token, Runnable result) {
+	}
+
+	private static final class Lane {
+		final int maxConcurrency;
+		final boolean shared;
+		final Queue<Task<?>> tasks = new ArrayDeque<>();
+		int running;
+		long completed;
+		long cancelledQueued;
+		long cancelledRunning;
+		long failed;
+		long waitNanos;
+		long maxWaitNanos;
+		long runNanos;
+
+		Lane(int maxConcurrency, boolean shared) {
+			this.maxConcurrency = maxConcurrency;
+			this.shared = shared;
+		}
+	}
+
+	private final class Task<T> implements Runnable {
+		final TaskLane lane;
+		final CancellationToken token;
+		final Job<T> job;
+		final Consumer<? super T> onEdt;
+		final CompletableFuture<T> future = new CompletableFuture<>();
+		long queuedAt;
+
+		Task(TaskLane lane, CancellationToken token, Job<T> job, Consumer<? super T> onEdt) {
+			this.lane = lane;
+			this.token = token;
+			this.job = job;
+			this.onEdt = onEdt;
+		}
+
+		@Override
+		public void run() {
+			long start = System.nanoTime();
+			Outcome outcome = Outcome.COMPLETED;
+			try {
+				T result = job.run(token);
+				token.throwIfCancelled();
+				if (result != null && onEdt != null) {
+					publish(token, () -> onEdt.accept(result));
+				}
+				future.complete(result);
+			} catch (CancellationException e) {
+				outcome = Outcome.CANCELLED;
+				future.cancel(false);
+			} catch (Throwable e) {
+				outcome = Outcome.FAILED;
+				// Reported here only if nobody handles the failure of the future
+				if (future.getNumberOfDependents() == 0) {
+					System.err.println("Failed to run " + lane + " task: " + e);
+				}
+				future.completeExceptionally(e);
+			} finally {
+				finished(lane, System.nanoTime() - start, outcome);
+			}
+		}
+	}
+}